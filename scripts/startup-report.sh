@@ -0,0 +1,70 @@
+#!/usr/bin/env bash
+#
+# Reports startup time and resident memory of the default build against the
+# fast-startup (Spring AOT + CDS) build and, when present, the native image.
+#
+# Build first:
+#   mvn -Pfast-startup package          # default jar, AOT classes and CDS archive
+#   mvn -Pnative native:compile         # optional, needs GraalVM
+#
+# Usage: scripts/startup-report.sh [runs] [spring profile]
+#
+set -euo pipefail
+
+RUNS="${1:-3}"
+PROFILE="${2:-local}"
+PORT="${PORT:-8080}"
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+TARGET="$ROOT/target"
+JAR_NAME="$(cd "$TARGET" && ls verified-id-backend-*.jar | grep -v original | head -1)"
+NATIVE="$TARGET/verified-id-backend"
+LOG="$(mktemp)"
+trap 'rm -f "$LOG"' EXIT
+
+# Starts a variant, waits for readiness and prints "<started seconds> <ready seconds> <rss MB>"
+measure() {
+    local dir="$1"; shift
+    local start
+    start=$(date +%s%N)
+    (cd "$dir" && exec "$@" --spring.profiles.active="$PROFILE" --server.port="$PORT" > "$LOG" 2>&1) &
+    local pid=$!
+    until curl -sf -o /dev/null "http://localhost:$PORT/actuator/health/readiness"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "process exited, see output below" >&2
+            cat "$LOG" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    local ready rss started
+    ready=$(( ($(date +%s%N) - start) / 1000000 ))
+    rss=$(awk '/VmRSS/ { print int($2 / 1024) }' "/proc/$pid/status")
+    started=$(grep -a -o 'Started [A-Za-z]* in [0-9.]* seconds' "$LOG" | awk '{ print $4 }')
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo "$started $(awk -v ms="$ready" 'BEGIN { printf "%.3f", ms / 1000 }') $rss"
+}
+
+report() {
+    local name="$1"; shift
+    local results=()
+    for _ in $(seq 1 "$RUNS"); do
+        results+=("$(measure "$@")")
+    done
+    printf '%s\n' "${results[@]}" | awk -v name="$name" '
+        { started += $1; ready += $2; rss += $3; n++ }
+        END { printf "%-14s started %6.3fs   ready %6.3fs   rss %5d MB\n", name, started / n, ready / n, rss / n }'
+}
+
+echo "Averages over $RUNS runs with profile $PROFILE (ready includes the warm-up phase)"
+report "default" "$TARGET" java -jar "$JAR_NAME"
+if [ -f "$TARGET/cds/application.jsa" ]; then
+    report "aot+cds" "$TARGET/cds" java -XX:SharedArchiveFile=application.jsa -Xlog:cds=error -Dspring.aot.enabled=true -jar "$JAR_NAME"
+else
+    echo "aot+cds        skipped: run mvn -Pfast-startup package first"
+fi
+if [ -x "$NATIVE" ]; then
+    report "native" "$TARGET" "$NATIVE"
+else
+    echo "native         skipped: run mvn -Pnative native:compile first"
+fi
@@ -1,14 +1,24 @@
 package com.smoogiee.verifiedidbackend.config;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.NativeDetector;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 
 /**
  * Configuration class used to initialize application beans
  */
 @Configuration
+@ImportRuntimeHints(AppRuntimeHints.class)
 public class AppConfig {
     /**
      * Initializes AzureProperties bean
@@ -31,14 +41,190 @@ public class AppConfig {
     }
 
     /**
-     * Initializes a fasterXML Jackson ObjectMapper bean
+     * Initializes LoggingProperties bean
+     *
+     * @return A LoggingProperties bean
+     */
+    @Bean
+    public LoggingProperties loggingProperties() {
+        return new LoggingProperties();
+    }
+
+    /**
+     * Initializes TenancyProperties bean
+     *
+     * @return A TenancyProperties bean
+     */
+    @Bean
+    public TenancyProperties tenancyProperties() {
+        return new TenancyProperties();
+    }
+
+    /**
+     * Initializes WebhookProperties bean
+     *
+     * @return A WebhookProperties bean
+     */
+    @Bean
+    public WebhookProperties webhookProperties() {
+        return new WebhookProperties();
+    }
+
+    /**
+     * Initializes CallbackProperties bean
+     *
+     * @return A CallbackProperties bean
+     */
+    @Bean
+    public CallbackProperties callbackProperties() {
+        return new CallbackProperties();
+    }
+
+    /**
+     * Initializes CacheProperties bean
+     *
+     * @return A CacheProperties bean
+     */
+    @Bean
+    public CacheProperties cacheProperties() {
+        return new CacheProperties();
+    }
+
+    /**
+     * Initializes VerificationProperties bean
+     *
+     * @return A VerificationProperties bean
+     */
+    @Bean
+    public VerificationProperties verificationProperties() {
+        return new VerificationProperties();
+    }
+
+    /**
+     * Initializes ManifestProperties bean
+     *
+     * @return A ManifestProperties bean
+     */
+    @Bean
+    public ManifestProperties manifestProperties() {
+        return new ManifestProperties();
+    }
+
+    /**
+     * Initializes WarmupProperties bean
+     *
+     * @return A WarmupProperties bean
+     */
+    @Bean
+    public WarmupProperties warmupProperties() {
+        return new WarmupProperties();
+    }
+
+    /**
+     * Initializes FunnelProperties bean
+     *
+     * @return A FunnelProperties bean
+     */
+    @Bean
+    public FunnelProperties funnelProperties() {
+        return new FunnelProperties();
+    }
+
+    /**
+     * Initializes HedgingProperties bean
+     *
+     * @return A HedgingProperties bean
+     */
+    @Bean
+    public HedgingProperties hedgingProperties() {
+        return new HedgingProperties();
+    }
+
+    /**
+     * Initializes SessionProperties bean
+     *
+     * @return A SessionProperties bean
+     */
+    @Bean
+    public SessionProperties sessionProperties() {
+        return new SessionProperties();
+    }
+
+    /**
+     * Initializes ClusterProperties bean
+     *
+     * @return A ClusterProperties bean
+     */
+    @Bean
+    public ClusterProperties clusterProperties() {
+        return new ClusterProperties();
+    }
+
+    /**
+     * Initializes AuditProperties bean
+     *
+     * @return An AuditProperties bean
+     */
+    @Bean
+    public AuditProperties auditProperties() {
+        return new AuditProperties();
+    }
+
+    /**
+     * Initializes CoalescingProperties bean
+     *
+     * @return A CoalescingProperties bean
+     */
+    @Bean
+    public CoalescingProperties coalescingProperties() {
+        return new CoalescingProperties();
+    }
+
+    /**
+     * Initializes a fasterXML Jackson ObjectMapper bean.
+     * Property accessors are generated with the Blackbird module instead of called reflectively,
+     * and the factory recycles its buffers through a pool shared across threads, so buffers
+     * are reused by pipeline workers and reactor threads as well as servlet threads.
+     * Blackbird defines classes at runtime, which a native image cannot do, so native builds
+     * keep Jackson's reflective accessors; the models are registered for reflection in AppRuntimeHints.
      *
      * @return A ObjectMapper bean
      */
     @Bean
     public ObjectMapper objectMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
+        JsonFactory jsonFactory = JsonFactory
+                .builder()
+                .recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+                .build();
+        ObjectMapper objectMapper = new ObjectMapper(jsonFactory);
         objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        if (!NativeDetector.inNativeImage()) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
         return objectMapper;
     }
+
+    /**
+     * Initializes a CBOR message converter, configured like the JSON ObjectMapper.
+     * Served to clients that accept application/cbor.
+     *
+     * @param objectMapper The JSON ObjectMapper bean
+     * @return A MappingJackson2CborHttpMessageConverter bean
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapper.copyWith(new CBORFactory()));
+    }
+
+    /**
+     * Initializes a Smile message converter, configured like the JSON ObjectMapper.
+     * Served to clients that accept application/x-jackson-smile.
+     *
+     * @param objectMapper The JSON ObjectMapper bean
+     * @return A MappingJackson2SmileHttpMessageConverter bean
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2SmileHttpMessageConverter(objectMapper.copyWith(new SmileFactory()));
+    }
 }
@@ -0,0 +1,105 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import com.smoogiee.verifiedidbackend.model.audit.AuditRecord;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.smoogiee.verifiedidbackend.model.error.ErrorResponse;
+import com.smoogiee.verifiedidbackend.model.verifiedid.*;
+import com.smoogiee.verifiedidbackend.model.webhook.WebhookEvent;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.List;
+
+/**
+ * Runtime hints used by AOT-processed and native builds.
+ * Registers the Jackson-bound models, the @Value injected fields of the
+ * property beans and the MSAL classes MSAL binds with Jackson internally.
+ */
+public class AppRuntimeHints implements RuntimeHintsRegistrar {
+    // Verified ID API payloads, the webhook payload, the audit record, dead-lettered callbacks and error bodies, bound by the application ObjectMapper
+    private static final List<Class<?>> BOUND_MODELS = List.of(
+            ApiResponse.class,
+            Callback.class,
+            CallbackError.class,
+            CallbackEvent.class,
+            CallbackTask.class,
+            Claims.class,
+            Configuration.class,
+            CredentialState.class,
+            DomainValidation.class,
+            FaceCheck.class,
+            Headers.class,
+            IssuanceRequest.class,
+            Pin.class,
+            PresentationRequest.class,
+            Receipt.class,
+            Registration.class,
+            RequestedCredential.class,
+            Validation.class,
+            VerifiedCredentialsData.class,
+            WebhookEvent.class,
+            AuditRecord.class,
+            ErrorResponse.class);
+
+    // Property beans are created in AppConfig and have their private fields injected from @Value
+    private static final List<Class<?>> PROPERTY_BEANS = List.of(
+            AzureProperties.class,
+            VerifiedIdProperties.class,
+            LoggingProperties.class,
+            TenancyProperties.class,
+            WebhookProperties.class,
+            CallbackProperties.class,
+            CacheProperties.class,
+            VerificationProperties.class,
+            ManifestProperties.class,
+            WarmupProperties.class,
+            FunnelProperties.class,
+            HedgingProperties.class,
+            SessionProperties.class,
+            ClusterProperties.class,
+            AuditProperties.class,
+            CoalescingProperties.class);
+
+    // MSAL token responses, instance discovery and its token cache are bound with Jackson inside msal4j
+    private static final List<String> MSAL_BOUND_TYPES = List.of(
+            "com.microsoft.aad.msal4j.AadInstanceDiscoveryResponse",
+            "com.microsoft.aad.msal4j.AccessTokenCacheEntity",
+            "com.microsoft.aad.msal4j.AccountCacheEntity",
+            "com.microsoft.aad.msal4j.AppMetadataCacheEntity",
+            "com.microsoft.aad.msal4j.ClientInfo",
+            "com.microsoft.aad.msal4j.Credential",
+            "com.microsoft.aad.msal4j.DeviceCode",
+            "com.microsoft.aad.msal4j.ErrorResponse",
+            "com.microsoft.aad.msal4j.IdToken",
+            "com.microsoft.aad.msal4j.IdTokenCacheEntity",
+            "com.microsoft.aad.msal4j.InstanceDiscoveryMetadataEntry",
+            "com.microsoft.aad.msal4j.ManagedIdentityErrorResponse",
+            "com.microsoft.aad.msal4j.ManagedIdentityResponse",
+            "com.microsoft.aad.msal4j.RefreshTokenCacheEntity",
+            "com.microsoft.aad.msal4j.RequestedClaimAdditionalInfo",
+            "com.microsoft.aad.msal4j.TokenCache",
+            "com.microsoft.aad.msal4j.UserDiscoveryResponse");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+        bindingRegistrar.registerReflectionHints(hints.reflection(), BOUND_MODELS.toArray(Class<?>[]::new));
+
+        for (Class<?> propertyBean : PROPERTY_BEANS) {
+            hints.reflection().registerType(propertyBean,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        for (String msalType : MSAL_BOUND_TYPES) {
+            hints.reflection().registerType(TypeReference.of(msalType),
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_METHODS);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve audit log
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class AuditProperties {
+    @Value("${entra.audit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${entra.audit.events:presentation_verified,issuance_successful}")
+    private String[] events;
+
+    @Value("${entra.audit.directory:audit}")
+    private String directory;
+
+    @Value("${entra.audit.max_file_mb:64}")
+    private long maxFileMb;
+
+    @Value("${entra.audit.queue_capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${entra.audit.batch_size:256}")
+    private int batchSize;
+
+    @Value("${entra.audit.max_attempts:5}")
+    private int maxAttempts;
+
+    @Value("${entra.audit.retry_backoff_ms:100}")
+    private long retryBackoffMs;
+}
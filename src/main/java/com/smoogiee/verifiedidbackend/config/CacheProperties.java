@@ -0,0 +1,45 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve session and token cache
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class CacheProperties {
+    @Value("${entra.cache.ttl_minutes:15}")
+    private long ttlMinutes;
+
+    @Value("${entra.cache.maximum_size:100}")
+    private long maximumSize;
+
+    @Value("${entra.cache.off_heap.enabled:false}")
+    private boolean offHeapEnabled;
+
+    @Value("${entra.cache.off_heap.capacity_mb:256}")
+    private int offHeapCapacityMb;
+
+    @Value("${entra.cache.off_heap.shards:16}")
+    private int offHeapShards;
+
+    @Value("${entra.cache.off_heap.segment_size_kb:1024}")
+    private int offHeapSegmentSizeKb;
+
+    // Off-heap records are written to the file in plaintext; it is created owner-only and deleted on close
+    @Value("${entra.cache.off_heap.file:}")
+    private String offHeapFile;
+
+    @Value("${entra.cache.off_heap.sweep_interval_seconds:30}")
+    private long offHeapSweepIntervalSeconds;
+
+    @Value("${entra.cache.off_heap.promote.enabled:true}")
+    private boolean offHeapPromoteEnabled;
+
+    @Value("${entra.cache.off_heap.promote.maximum_size:1000}")
+    private long offHeapPromoteMaximumSize;
+
+    @Value("${entra.cache.off_heap.promote.ttl_seconds:60}")
+    private long offHeapPromoteTtlSeconds;
+}
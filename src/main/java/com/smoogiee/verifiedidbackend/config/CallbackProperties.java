@@ -0,0 +1,52 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.List;
+
+/**
+ * Property bean used to retrieve callback processing
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class CallbackProperties {
+    @Value("${entra.callbacks.pipeline.enabled:true}")
+    private boolean pipelineEnabled;
+
+    @Value("${entra.callbacks.pipeline.workers:2}")
+    private int pipelineWorkers;
+
+    @Value("${entra.callbacks.pipeline.ring_size:4096}")
+    private int pipelineRingSize;
+
+    @Value("${entra.callbacks.pipeline.batch_size:64}")
+    private int pipelineBatchSize;
+
+    @Value("${entra.callbacks.pipeline.max_attempts:3}")
+    private int pipelineMaxAttempts;
+
+    @Value("${entra.callbacks.pipeline.initial_backoff_ms:100}")
+    private long pipelineInitialBackoffMs;
+
+    @Value("${entra.callbacks.pipeline.dead_letter_file:callback-dead-letter.jsonl}")
+    private String pipelineDeadLetterFile;
+
+    @Value("${entra.callbacks.pipeline.shutdown_timeout_ms:5000}")
+    private long pipelineShutdownTimeoutMs;
+
+    @Value("${entra.callbacks.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${entra.callbacks.dedup.window_seconds:900}")
+    private long dedupWindowSeconds;
+
+    @Value("${entra.callbacks.dedup.generations:4}")
+    private int dedupGenerations;
+
+    @Value("${entra.callbacks.projection.fields:requestId,subject,error,payload,type,issuanceDate,expirationDate,jti}")
+    private List<String> projectionFields;
+
+    @Value("${entra.callbacks.projection.retain_receipts:false}")
+    private boolean projectionRetainReceipts;
+}
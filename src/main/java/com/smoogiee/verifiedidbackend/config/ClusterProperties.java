@@ -0,0 +1,35 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve cluster membership and request forwarding
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class ClusterProperties {
+    @Value("${entra.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${entra.cluster.node_id:}")
+    private String nodeId;
+
+    @Value("${entra.cluster.secret:}")
+    private String secret;
+
+    @Value("${entra.cluster.members:}")
+    private String[] members;
+
+    @Value("${entra.cluster.discovery_file:}")
+    private String discoveryFile;
+
+    @Value("${entra.cluster.discovery_refresh_seconds:5}")
+    private long discoveryRefreshSeconds;
+
+    @Value("${entra.cluster.max_connections:50}")
+    private int maxConnections;
+
+    @Value("${entra.cluster.forward_timeout_ms:2000}")
+    private long forwardTimeoutMs;
+}
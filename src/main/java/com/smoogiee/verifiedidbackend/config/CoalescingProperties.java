@@ -0,0 +1,23 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve issuance request coalescing
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class CoalescingProperties {
+    @Value("${entra.coalescing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${entra.coalescing.window_seconds:30}")
+    private long windowSeconds;
+
+    @Value("${entra.coalescing.header:Idempotency-Key}")
+    private String header;
+
+    @Value("${entra.coalescing.max_entries:10000}")
+    private long maxEntries;
+}
@@ -0,0 +1,23 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve session funnel metrics
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class FunnelProperties {
+    @Value("${entra.funnel.window_seconds:900}")
+    private long windowSeconds;
+
+    @Value("${entra.funnel.buckets:60}")
+    private int buckets;
+
+    @Value("${entra.funnel.max_error_codes:20}")
+    private int maxErrorCodes;
+
+    @Value("${entra.funnel.max_open_sessions:10000}")
+    private int maxOpenSessions;
+}
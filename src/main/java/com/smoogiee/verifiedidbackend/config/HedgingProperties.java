@@ -0,0 +1,32 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve upstream request hedging
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class HedgingProperties {
+    @Value("${entra.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${entra.hedging.percentile:95}")
+    private double percentile;
+
+    @Value("${entra.hedging.min_delay_ms:20}")
+    private long minDelayMs;
+
+    @Value("${entra.hedging.max_delay_ms:2000}")
+    private long maxDelayMs;
+
+    @Value("${entra.hedging.samples:256}")
+    private int samples;
+
+    @Value("${entra.hedging.min_samples:20}")
+    private int minSamples;
+
+    @Value("${entra.hedging.budget_percent:5}")
+    private double budgetPercent;
+}
@@ -0,0 +1,21 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve access log
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class LoggingProperties {
+    @Value("${entra.logging.access_log.enabled:true}")
+    private boolean accessLogEnabled;
+
+    @Value("${entra.logging.access_log.default_sample_rate:1.0}")
+    private double defaultSampleRate;
+
+    // Entries are formatted as <request path>=<sample rate>, e.g. /api/status=0.05
+    @Value("${entra.logging.access_log.sample_rates:}")
+    private String[] sampleRates;
+}
@@ -0,0 +1,20 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve credential manifest cache
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class ManifestProperties {
+    @Value("${entra.manifest.ttl_seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${entra.manifest.timeout_ms:3000}")
+    private long timeoutMs;
+
+    @Value("${entra.manifest.client_max_age_seconds:60}")
+    private long clientMaxAgeSeconds;
+}
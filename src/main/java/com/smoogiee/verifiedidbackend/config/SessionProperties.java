@@ -0,0 +1,20 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve request session
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class SessionProperties {
+    @Value("${entra.session.expiry.enabled:true}")
+    private boolean expiryEnabled;
+
+    @Value("${entra.session.expiry.grace_seconds:60}")
+    private long expiryGraceSeconds;
+
+    @Value("${entra.session.poll_interval_seconds:2}")
+    private long pollIntervalSeconds;
+}
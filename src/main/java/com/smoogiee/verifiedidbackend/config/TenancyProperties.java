@@ -0,0 +1,23 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve multi-tenant routing
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class TenancyProperties {
+    @Value("${entra.tenancy.header:X-Tenant-Id}")
+    private String header;
+
+    @Value("${entra.tenancy.idle_eviction_minutes:30}")
+    private long idleEvictionMinutes;
+
+    @Value("${entra.tenancy.max_tenants:256}")
+    private long maxTenants;
+
+    @Value("${entra.tenancy.max_connections:50}")
+    private int maxConnections;
+}
@@ -0,0 +1,77 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.core.env.Environment;
+
+/**
+ * Resolved Azure and Verified ID configuration for a single tenant.
+ * Values are read from entra.tenants.{tenantId}.ad.* and
+ * entra.tenants.{tenantId}.verified_id.*, falling back to the
+ * top level entra.ad.* and entra.verified_id.* values.
+ */
+@Getter
+@Builder
+public class TenantProperties {
+    private final String tenantId;
+
+    // Entra Active Directory values
+    private final String authority;
+    private final String tenant;
+    private final boolean managedId;
+    private final String clientId;
+    private final String clientSecret;
+    private final String clientCertLocation;
+    private final String clientCertKey;
+    private final String scope;
+
+    // Verified ID values
+    private final String apiEndpoint;
+    private final String didAuthority;
+    private final String clientName;
+    private final String apiKey;
+    private final String credentialType;
+    private final String purpose;
+    private final String manifestUrl;
+    private final int pinCodeLength;
+    private final String photoClaimName;
+    private final String useFaceCheck;
+
+    /**
+     * Resolves the configuration of a tenant
+     *
+     * @param tenantId The tenant identifier
+     * @param environment The environment used to look up tenant overrides
+     * @param azureProperties The default Azure configuration
+     * @param verifiedIdProperties The default Verified ID configuration
+     * @return The resolved tenant configuration
+     */
+    public static TenantProperties resolve(String tenantId,
+                                           Environment environment,
+                                           AzureProperties azureProperties,
+                                           VerifiedIdProperties verifiedIdProperties) {
+        String ad = "entra.tenants." + tenantId + ".ad.";
+        String vid = "entra.tenants." + tenantId + ".verified_id.";
+        return TenantProperties.builder()
+                .tenantId(tenantId)
+                .authority(environment.getProperty(ad + "authority", azureProperties.getAuthority()))
+                .tenant(environment.getProperty(ad + "tenant", azureProperties.getTenant()))
+                .managedId(environment.getProperty(ad + "managed_id", Boolean.class, azureProperties.isManagedId()))
+                .clientId(environment.getProperty(ad + "client_id", azureProperties.getClientId()))
+                .clientSecret(environment.getProperty(ad + "client_secret", azureProperties.getClientSecret()))
+                .clientCertLocation(environment.getProperty(ad + "client_cert_location", azureProperties.getClientCertLocation()))
+                .clientCertKey(environment.getProperty(ad + "client_cert_key", azureProperties.getClientCertKey()))
+                .scope(environment.getProperty(ad + "scope", azureProperties.getScope()))
+                .apiEndpoint(environment.getProperty(vid + "api_endpoint", verifiedIdProperties.getApiEndpoint()))
+                .didAuthority(environment.getProperty(vid + "did_authority", verifiedIdProperties.getDidAuthority()))
+                .clientName(environment.getProperty(vid + "client_name", verifiedIdProperties.getClientName()))
+                .apiKey(environment.getProperty(vid + "api_key", verifiedIdProperties.getApiKey()))
+                .credentialType(environment.getProperty(vid + "credential_type", verifiedIdProperties.getCredentialType()))
+                .purpose(environment.getProperty(vid + "purpose", verifiedIdProperties.getPurpose()))
+                .manifestUrl(environment.getProperty(vid + "manifest_url", verifiedIdProperties.getManifestUrl()))
+                .pinCodeLength(environment.getProperty(vid + "pin_code_length", Integer.class, verifiedIdProperties.getPinCodeLength()))
+                .photoClaimName(environment.getProperty(vid + "photo_claim_name", verifiedIdProperties.getPhotoClaimName()))
+                .useFaceCheck(environment.getProperty(vid + "use_face_check", verifiedIdProperties.getUseFaceCheck()))
+                .build();
+    }
+}
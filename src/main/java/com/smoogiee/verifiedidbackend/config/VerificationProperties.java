@@ -0,0 +1,52 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve receipt signature verification
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class VerificationProperties {
+    @Value("${entra.verification.enabled:false}")
+    private boolean enabled;
+
+    @Value("${entra.verification.enforce:false}")
+    private boolean enforce;
+
+    // Issuers whose credentials are accepted in addition to each tenant's own DID authority
+    @Value("${entra.verification.trusted_issuers:}")
+    private String[] trustedIssuers;
+
+    @Value("${entra.verification.holder_did_jwk:true}")
+    private boolean holderDidJwk;
+
+    @Value("${entra.verification.resolver:did}")
+    private String resolver;
+
+    @Value("${entra.verification.did_resolver_url:}")
+    private String didResolverUrl;
+
+    // Hosts keys may be fetched from besides the resolver and the trusted issuers' own domains
+    @Value("${entra.verification.allowed_hosts:}")
+    private String[] allowedHosts;
+
+    @Value("${entra.verification.key_file:}")
+    private String keyFile;
+
+    @Value("${entra.verification.timeout_ms:2000}")
+    private long timeoutMs;
+
+    @Value("${entra.verification.cache.refresh_seconds:3600}")
+    private long cacheRefreshSeconds;
+
+    @Value("${entra.verification.cache.stale_seconds:86400}")
+    private long cacheStaleSeconds;
+
+    @Value("${entra.verification.cache.negative_seconds:300}")
+    private long cacheNegativeSeconds;
+
+    @Value("${entra.verification.cache.maximum_size:1000}")
+    private long cacheMaximumSize;
+}
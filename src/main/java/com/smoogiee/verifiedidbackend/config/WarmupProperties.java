@@ -0,0 +1,32 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve startup warm-up
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class WarmupProperties {
+    @Value("${entra.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${entra.warmup.tenants:default}")
+    private String[] tenants;
+
+    @Value("${entra.warmup.token:true}")
+    private boolean token;
+
+    @Value("${entra.warmup.connections:4}")
+    private int connections;
+
+    @Value("${entra.warmup.iterations:200}")
+    private int iterations;
+
+    @Value("${entra.warmup.status_requests:50}")
+    private int statusRequests;
+
+    @Value("${entra.warmup.timeout_ms:10000}")
+    private long timeoutMs;
+}
@@ -0,0 +1,36 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import com.smoogiee.verifiedidbackend.interceptor.AccessLogInterceptor;
+import com.smoogiee.verifiedidbackend.interceptor.TenantInterceptor;
+import com.smoogiee.verifiedidbackend.service.TenantService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuration class used to register Spring MVC interceptors
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final LoggingProperties loggingProperties;
+    private final TenantService tenantService;
+
+    /**
+     * Constructor
+     *
+     * @param loggingProperties Property bean containing access log configuration properties
+     * @param tenantService Service used to release the tenant resolved by a request
+     */
+    @Autowired
+    public WebConfig(LoggingProperties loggingProperties, TenantService tenantService) {
+        this.loggingProperties = loggingProperties;
+        this.tenantService = tenantService;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AccessLogInterceptor(loggingProperties));
+        registry.addInterceptor(new TenantInterceptor(tenantService));
+    }
+}
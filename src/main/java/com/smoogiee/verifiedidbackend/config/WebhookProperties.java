@@ -0,0 +1,41 @@
+package com.smoogiee.verifiedidbackend.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Property bean used to retrieve downstream webhook
+ * configuration values from application-{env}.yml
+ */
+@Getter
+public class WebhookProperties {
+    @Value("${entra.webhooks.subscribers:}")
+    private String[] subscribers;
+
+    @Value("${entra.webhooks.events:presentation_verified,issuance_successful,request_expired}")
+    private String[] events;
+
+    @Value("${entra.webhooks.queue_capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${entra.webhooks.subscriber_backlog:256}")
+    private int subscriberBacklog;
+
+    @Value("${entra.webhooks.batch_size:50}")
+    private int batchSize;
+
+    @Value("${entra.webhooks.max_concurrency:4}")
+    private int maxConcurrency;
+
+    @Value("${entra.webhooks.max_attempts:5}")
+    private int maxAttempts;
+
+    @Value("${entra.webhooks.initial_backoff_ms:500}")
+    private long initialBackoffMs;
+
+    @Value("${entra.webhooks.dead_letter_file:webhook-dead-letter.jsonl}")
+    private String deadLetterFile;
+
+    @Value("${entra.webhooks.shutdown_timeout_ms:10000}")
+    private long shutdownTimeoutMs;
+}
@@ -3,25 +3,31 @@ package com.smoogiee.verifiedidbackend.controller;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.smoogiee.verifiedidbackend.config.AppConfig;
-import com.smoogiee.verifiedidbackend.config.VerifiedIdProperties;
-import com.smoogiee.verifiedidbackend.model.verifiedid.CallbackError;
-import com.smoogiee.verifiedidbackend.model.verifiedid.CallbackEvent;
-import com.smoogiee.verifiedidbackend.service.CacheService;
-import com.smoogiee.verifiedidbackend.service.VerifiedIdService;
-import com.smoogiee.verifiedidbackend.utils.LogUtils;
+import com.smoogiee.verifiedidbackend.config.SessionProperties;
+import com.smoogiee.verifiedidbackend.exception.UnknownTenantException;
+import com.smoogiee.verifiedidbackend.jfr.StatusRenderEvent;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.smoogiee.verifiedidbackend.model.error.ErrorResponse;
+import com.smoogiee.verifiedidbackend.service.CallbackDeduplicator;
+import com.smoogiee.verifiedidbackend.service.CallbackPipeline;
+import com.smoogiee.verifiedidbackend.service.CallbackService;
+import com.smoogiee.verifiedidbackend.service.ClusterService;
+import com.smoogiee.verifiedidbackend.service.SerializationService;
+import com.smoogiee.verifiedidbackend.service.SessionService;
+import com.smoogiee.verifiedidbackend.service.TenantContext;
+import com.smoogiee.verifiedidbackend.service.TenantService;
 import com.smoogiee.verifiedidbackend.utils.ServerUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,17 +37,37 @@ import java.util.List;
 @RestController
 @EnableCaching
 public class CallbackController {
+    private static final String POLL_INTERVAL_HEADER = "X-Poll-Interval";
+
     private final ObjectMapper objectMapper;
-    private final CacheService<String, String> cacheService;
-    private final VerifiedIdProperties verifiedIdProperties;
+    private final SerializationService serializationService;
+    private final SessionService sessionService;
+    private final TenantService tenantService;
+    private final CallbackService callbackService;
+    private final CallbackPipeline callbackPipeline;
+    private final CallbackDeduplicator callbackDeduplicator;
+    private final ClusterService clusterService;
+    private final SessionProperties sessionProperties;
 
     @Autowired
     public CallbackController(ObjectMapper objectMapper,
-                              CacheService<String, String> cacheService,
-                              VerifiedIdProperties verifiedIdProperties) {
+                              SerializationService serializationService,
+                              SessionService sessionService,
+                              TenantService tenantService,
+                              CallbackService callbackService,
+                              CallbackPipeline callbackPipeline,
+                              CallbackDeduplicator callbackDeduplicator,
+                              ClusterService clusterService,
+                              SessionProperties sessionProperties) {
         this.objectMapper = objectMapper;
-        this.cacheService = cacheService;
-        this.verifiedIdProperties = verifiedIdProperties;
+        this.serializationService = serializationService;
+        this.sessionService = sessionService;
+        this.tenantService = tenantService;
+        this.callbackService = callbackService;
+        this.callbackPipeline = callbackPipeline;
+        this.callbackDeduplicator = callbackDeduplicator;
+        this.clusterService = clusterService;
+        this.sessionProperties = sessionProperties;
     }
 
     /**
@@ -57,77 +83,67 @@ public class CallbackController {
                                                          @RequestHeader HttpHeaders headers,
                                                          @RequestBody String body,
                                                          String requestType) {
-        LogUtils.logHttpRequest(request);
         try {
+            // Callbacks for non-default tenants carry the tenant on the callback URL
+            TenantContext tenant = tenantService.resolve(request);
+
             // TODO: Securely validate API key
-            if (!request.getHeader("api-key").equals(verifiedIdProperties.getApiKey())) {
+            if (!tenant.getProperties().getApiKey().equals(request.getHeader("api-key"))) {
                 log.error("api-key wrong or missing");
                 return ResponseEntity
                         .status(HttpStatus.UNAUTHORIZED)
                         .body("api-key wrong or missing");
             }
 
-            // Marshal callback event from Microsoft
-            CallbackEvent callbackEvent;
-            try {
-                callbackEvent = objectMapper.readValue(body, CallbackEvent.class);
-            } catch (IOException ex) {
-                log.error(ex.getMessage());
-                JsonNode cb = objectMapper.readTree(body);
-                callbackEvent = new CallbackEvent();
-                callbackEvent.setRequestStatus(cb.path("requestStatus").asText());
-                callbackEvent.setState(cb.path("state").asText());
-            }
+            // Cheap validation: the body is streamed once for state, requestStatus and a payload fingerprint
+            CallbackTask task = callbackService.peek(tenant.getTenantId(), requestType, body);
 
-            // Initialize a list of valid issuance statuses
-            List<String> issuanceStatus = new ArrayList<>() {{
-                add("request_retrieved");
-                add("issuance_successful");
-                add("issuance_error");
-            }};
+            // Redelivered callbacks are acknowledged and dropped before any session is touched
+            long dedupKey = callbackDeduplicator.key(task);
+            if (callbackDeduplicator.isDuplicate(dedupKey)) {
+                log.debug("Dropping duplicate callback");
+                return ResponseEntity
+                        .ok()
+                        .body("{}");
+            }
 
-            // Initialize a list of valid presentation statuses
-            List<String> presentationStatus = new ArrayList<>() {{
-                add("request_retrieved");
-                add("presentation_verified");
-                add("presentation_error");
-            }};
+            // Sessions owned by another node are handled there; its response is relayed as is.
+            // The tenant header and query travel with the request, so the owner checks the tenant again
+            String owner = clusterService.forwardTarget(request, task.getState());
+            if (owner != null) {
+                return clusterService.forward(owner, request, body, String.class);
+            }
 
-            // Initialize a list of valid selfie statuses
-            List<String> selfieStatus = new ArrayList<>() {{
-                add("selfie_taken");
-            }};
+            if (!callbackService.isSupported(requestType, task.getRequestStatus())) {
+                log.error("Unsupported requestStatus: " + task.getRequestStatus());
+                return ResponseEntity
+                        .status(HttpStatus.BAD_REQUEST)
+                        .body("Unsupported requestStatus: " + task.getRequestStatus());
+            }
+            // A session of another tenant is answered exactly like an unknown one
+            String cachedData = task.getState() == null ? null : sessionService.get(task.getState());
+            if (cachedData == null || !SessionService.belongsTo(cachedData, tenant.getTenantId())) {
+                log.info("Unknown state: " + task.getState());
+                return ResponseEntity
+                        .status(HttpStatus.BAD_REQUEST)
+                        .body("Unknown state");
+            }
 
-            // Handle actual callback event
-            if ((requestType.equals("issuance") && issuanceStatus.contains(callbackEvent.getRequestStatus())) ||
-                (requestType.equals("presentation") && presentationStatus.contains(callbackEvent.getRequestStatus())) ||
-                (requestType.equals("selfie") && selfieStatus.contains(callbackEvent.getRequestStatus()))) {
-                String data = cacheService.getIfPresent(callbackEvent.getState());
-                if (data == null) {
-                    log.info("Unknown state: " + callbackEvent.getState());
-                    return ResponseEntity
-                            .status(HttpStatus.BAD_REQUEST)
-                            .body("Unknown state");
-                } else {
-                    JsonNode cachedData = objectMapper.readTree(data);
-                    ((ObjectNode) cachedData).put("status", callbackEvent.getRequestStatus());
-                    ((ObjectNode) cachedData).put("callback", body);
-                    cacheService.put(callbackEvent.getState(),
-                            objectMapper
-                                    .writerWithDefaultPrettyPrinter()
-                                    .writeValueAsString(cachedData));
-                }
-            } else {
-                    log.error("Unsupported requestStatus: " + callbackEvent.getRequestStatus());
-                    return ResponseEntity
-                            .status(HttpStatus.BAD_REQUEST)
-                            .body("Unsupported requestStatus: " + callbackEvent.getRequestStatus());
+            // Acknowledge immediately; the state transition is applied by the callback pipeline.
+            // A concurrent copy of the same callback may have been accepted in the meantime
+            if (callbackDeduplicator.accept(dedupKey)) {
+                callbackPipeline.submit(task);
             }
         } catch (IOException ex) {
             log.error(ex.getMessage());
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body("Technical error");
+        } catch (UnknownTenantException ex) {
+            log.error(ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body("Unknown tenant");
         }
         return ResponseEntity
                 .ok()
@@ -172,121 +188,146 @@ public class CallbackController {
         return handleRequestCallback(request, headers, body, "presentation");
     }
 
+    /**
+     * Request status endpoint, polled by the frontend. The response carries the session version
+     * as its ETag, so a poll repeating it with If-None-Match is answered with 304 Not Modified
+     * straight from the cached session, and a suggested poll interval while the session can still change.
+     * Polls for a session owned by another cluster node are answered by that node.
+     * A session is only reported to the tenant it was created for; for any other tenant it does not exist.
+     * Each poll is recorded as a flight recorder event when these are enabled.
+     *
+     * @param request The request sent by the frontend
+     * @param headers The request headers sent by the frontend
+     * @param id The correlation id of the request
+     * @return A ResponseEntity object representing the request status
+     */
     @GetMapping(
             path = "/api/status",
             consumes = "application/json",
-            produces = "application/json"
+            produces = {"application/json", "application/cbor", "application/x-jackson-smile"}
     )
-    public ResponseEntity<String> requestStatus(HttpServletRequest request,
+    public ResponseEntity<Object> requestStatus(HttpServletRequest request,
                                                 @RequestHeader HttpHeaders headers,
                                                 @RequestParam String id) {
-        LogUtils.logHttpRequest(request);
+        StatusRenderEvent event = new StatusRenderEvent();
+        event.begin();
+        String owner = null;
+        ResponseEntity<Object> response;
+        try {
+            TenantContext tenant = tenantService.resolve(request);
+            owner = clusterService.forwardTarget(request, id);
+            response = owner != null
+                    ? clusterService.forward(owner, request, null, byte[].class)
+                    : renderStatus(headers, tenant.getTenantId(), id);
+        } catch (UnknownTenantException ex) {
+            log.error(ex.getMessage());
+            response = ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(ErrorResponse.of("Unknown tenant"));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.id = id;
+            event.httpStatus = response.getStatusCode().value();
+            event.accept = headers.getFirst(HttpHeaders.ACCEPT);
+            event.forwarded = owner != null;
+            if (response.getBody() instanceof ObjectNode statusResponse) {
+                event.requestStatus = statusResponse.path("status").asText(null);
+            }
+            event.commit();
+        }
+        return response;
+    }
+
+    /**
+     * Private status helper method. Renders the status of a session owned by this node.
+     *
+     * @param headers The request headers sent by the frontend
+     * @param tenantId The tenant the request was received for
+     * @param id The correlation id of the request
+     * @return A ResponseEntity object representing the request status
+     */
+    private ResponseEntity<Object> renderStatus(HttpHeaders headers, String tenantId, String id) {
         HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.set("Content-Type", "application/json");
-        String responseBody = "{'status': 'request_not_created', 'message': 'No data'}";
+        responseHeaders.setVary(List.of(HttpHeaders.ACCEPT));
+        ObjectNode statusResponse = objectMapper.createObjectNode();
         try {
-            String cachedData = cacheService.getIfPresent(id);
-            if (cachedData == null || cachedData.isEmpty()) {
+            String cachedData = sessionService.get(id);
+            if (cachedData == null || !SessionService.belongsTo(cachedData, tenantId)) {
+                statusResponse.put("status", "request_not_created");
+                statusResponse.put("message", "No data");
                 return ResponseEntity
                         .ok()
                         .headers(responseHeaders)
-                        .body(responseBody);
+                        .body(statusResponse);
             }
-            JsonNode cacheData = objectMapper.readTree(cachedData);
-            String requestStatus = cacheData.path("status").asText();
-
-            ObjectNode statusResponse = objectMapper.createObjectNode();
-            statusResponse.put("status", requestStatus);
 
-            CallbackEvent callbackEvent = null;
-            String callBack = cacheData.path("callback").asText();
-            if (callBack != null && !callBack.isEmpty()) {
-                try {
-                    callbackEvent = objectMapper.readValue(callBack, CallbackEvent.class);
-                } catch (IOException ex) {
-                    JsonNode cb = objectMapper.readTree(callBack);
-                    callbackEvent = new CallbackEvent();
-                    callbackEvent.setRequestId(cb.path("requestId").asText());
-                    callbackEvent.setRequestStatus(cb.path("requestStatus").asText());
-                    callbackEvent.setState(cb.path("state").asText());
-                    callbackEvent.setError(new CallbackError());
-                    callbackEvent.getError().setCode(cb.path("error").path("code").asText());
-                    callbackEvent.getError().setMessage(cb.path("error").path("message").asText());
+            // An unchanged session is answered from its version alone, without reading the JSON.
+            // The tag is weak because every negotiated encoding of a version shares it
+            long version = SessionService.version(cachedData);
+            if (version >= 0) {
+                responseHeaders.setETag("W/\"" + version + "\"");
+                responseHeaders.setCacheControl(CacheControl.noCache());
+                if (ServerUtils.ifNoneMatch(headers, responseHeaders.getETag())) {
+                    // A terminal session is not polled again, so its 304 carries no poll interval either
+                    String requestStatus = SessionService.status(cachedData);
+                    if (requestStatus == null) {
+                        requestStatus = serializationService.readTree(cachedData).path("status").asText();
+                    }
+                    if (!SessionService.TERMINAL_STATUS.contains(requestStatus)) {
+                        responseHeaders.set(POLL_INTERVAL_HEADER, String.valueOf(sessionProperties.getPollIntervalSeconds()));
+                    }
+                    return ResponseEntity
+                            .status(HttpStatus.NOT_MODIFIED)
+                            .headers(responseHeaders)
+                            .build();
                 }
             }
 
-            if (callbackEvent == null) {
-                log.error("callbackEvent was unexpectedly null");
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Internal server error");
+            // Callback fields were projected into the session at ingest, so no callback parsing happens here
+            JsonNode session = serializationService.readTree(cachedData);
+            String requestStatus = session.path("status").asText();
+            if (!SessionService.TERMINAL_STATUS.contains(requestStatus)) {
+                responseHeaders.set(POLL_INTERVAL_HEADER, String.valueOf(sessionProperties.getPollIntervalSeconds()));
             }
 
+            statusResponse.put("status", requestStatus);
+
             switch (requestStatus) {
                 case "request_created" -> statusResponse
                         .put("message", "Waiting to scan QR code");
                 case "request_retrieved" -> statusResponse
                         .put("message", "QR code is scanned. Waiting for user action...");
                 case "issuance_error" -> statusResponse
-                        .put("message", "Issuance failed: " + callbackEvent.getError().getMessage());
+                        .put("message", "Issuance failed: " + session.path("error").path("message").asText());
                 case "issuance_successful" -> statusResponse
                         .put("message", "Issuance successful");
+                case "request_expired" -> statusResponse
+                        .put("message", "Request expired");
                 case "presentation_error" -> statusResponse
-                        .put("message", "Presentation failed: " + callbackEvent.getError().getMessage());
+                        .put("message", "Presentation failed: " + session.path("error").path("message").asText());
                 case "presentation_verified" -> {
-                    statusResponse.put("subject", callbackEvent.getSubject());
-                    String vcData = objectMapper
-                            .writerWithDefaultPrettyPrinter()
-                            .writeValueAsString(callbackEvent.getVerifiedCredentialsData());
-                    statusResponse.set("payload", objectMapper.readTree(vcData));
-                    statusResponse.set("type", objectMapper.valueToTree(
-                            callbackEvent
-                                    .getVerifiedCredentialsData()
-                                    .get(0)
-                                    .getType()
-                    ));
-                    statusResponse.put("issuanceDate",
-                            callbackEvent
-                                    .getVerifiedCredentialsData()
-                                    .get(0)
-                                    .getIssuanceDate()
-                    );
-                    statusResponse.put("expirationDate",
-                            callbackEvent
-                                    .getVerifiedCredentialsData()
-                                    .get(0)
-                                    .getExpirationDate()
-                    );
-                    if (callbackEvent.getReceipt() != null && callbackEvent.getReceipt().getVp_token() != null) {
-                        String vp = ServerUtils.decodeBase64(
-                                callbackEvent
-                                        .getReceipt()
-                                        .getVp_token()
-                                        .split("\\.")[1]
-                        );
-                        JsonNode vpToken = objectMapper.readTree(vp);
-                        String vc = ServerUtils.decodeBase64(
-                                vpToken
-                                        .path("vp")
-                                        .path("verifiableCredential")
-                                        .get(0)
-                                        .asText()
-                                        .split("\\.")[1]
-                        );
-                        JsonNode vcToken = objectMapper.readTree(vc);
-                        statusResponse.put("jti", vcToken.path("jti").asText());
+                    statusResponse.set("subject", session.get("subject"));
+                    statusResponse.set("payload", session.get("payload"));
+                    statusResponse.set("type", session.get("type"));
+                    statusResponse.set("issuanceDate", session.get("issuanceDate"));
+                    statusResponse.set("expirationDate", session.get("expirationDate"));
+                    if (session.has("jti")) {
+                        statusResponse.set("jti", session.get("jti"));
+                    }
+                    if (session.has("verification")) {
+                        statusResponse.set("verification", session.get("verification"));
                     }
                 }
             }
-            responseBody = objectMapper
-                    .writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(statusResponse);
         } catch (IOException ex) {
             log.error(ex.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Technical error");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.of("Technical error"));
         }
         return ResponseEntity
                 .ok()
                 .headers(responseHeaders)
-                .body(responseBody);
+                .body(statusResponse);
     }
 
     @GetMapping(
@@ -297,9 +338,8 @@ public class CallbackController {
     public ResponseEntity<String> verifierCache(HttpServletRequest request,
                                                 @RequestHeader HttpHeaders headers,
                                                 @RequestParam String id) {
-        LogUtils.logHttpRequest(request);
-        String responseBody = cacheService.getIfPresent(id);
-        if (responseBody == null) {
+        String responseBody = sessionService.get(id);
+        if (responseBody == null || !SessionService.belongsTo(responseBody, tenantService.tenantId(request))) {
             responseBody = "is null";
         }
         HttpHeaders responseHeaders = new HttpHeaders();
@@ -1,27 +1,42 @@
 package com.smoogiee.verifiedidbackend.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.config.ManifestProperties;
 import com.smoogiee.verifiedidbackend.exception.AuthenticationException;
+import com.smoogiee.verifiedidbackend.exception.IdempotencyConflictException;
+import com.smoogiee.verifiedidbackend.exception.UnknownTenantException;
+import com.smoogiee.verifiedidbackend.model.error.ErrorResponse;
 import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
 import com.smoogiee.verifiedidbackend.model.verifiedid.Claims;
 import com.smoogiee.verifiedidbackend.model.verifiedid.IssuanceRequest;
-import com.smoogiee.verifiedidbackend.service.CacheService;
+import com.smoogiee.verifiedidbackend.service.IssuanceCoalescer;
+import com.smoogiee.verifiedidbackend.service.ManifestService;
+import com.smoogiee.verifiedidbackend.service.SerializationService;
+import com.smoogiee.verifiedidbackend.service.SessionExpiryService;
+import com.smoogiee.verifiedidbackend.service.SessionService;
+import com.smoogiee.verifiedidbackend.service.TenantContext;
+import com.smoogiee.verifiedidbackend.service.TenantService;
 import com.smoogiee.verifiedidbackend.service.VerifiedIdService;
 import com.smoogiee.verifiedidbackend.utils.LogUtils;
+import com.smoogiee.verifiedidbackend.utils.ServerUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller class used for issuing Verified IDs
@@ -31,23 +46,47 @@ import java.io.IOException;
 @EnableCaching
 public class IssuerController {
     private final ObjectMapper objectMapper;
-    private final CacheService<String, String> cacheService;
+    private final SerializationService serializationService;
+    private final SessionService sessionService;
+    private final SessionExpiryService sessionExpiryService;
     private final VerifiedIdService verifiedIdService;
+    private final IssuanceCoalescer issuanceCoalescer;
+    private final TenantService tenantService;
+    private final ManifestService manifestService;
+    private final ManifestProperties manifestProperties;
 
     /**
      * Constructor
      *
      * @param objectMapper A fasterXML Jackson ObjectMapper used for marshaling JSON objects
-     * @param cacheService A cache service with strings as key:value pairs
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param sessionService A SessionService bean used to create cached sessions
+     * @param sessionExpiryService A SessionExpiryService bean used to expire sessions with their upstream request
      * @param verifiedIdService A VerifiedIdService bean used to make calls into Microsoft Verified ID
+     * @param issuanceCoalescer An IssuanceCoalescer bean used to coalesce duplicate issuance requests
+     * @param tenantService A TenantService bean used to resolve the tenant of a request
+     * @param manifestService A ManifestService bean used to serve cached credential manifests
+     * @param manifestProperties Property bean containing manifest cache configuration properties
      */
     @Autowired
     public IssuerController(ObjectMapper objectMapper,
-                            CacheService<String, String> cacheService,
-                            VerifiedIdService verifiedIdService) {
+                            SerializationService serializationService,
+                            SessionService sessionService,
+                            SessionExpiryService sessionExpiryService,
+                            VerifiedIdService verifiedIdService,
+                            IssuanceCoalescer issuanceCoalescer,
+                            TenantService tenantService,
+                            ManifestService manifestService,
+                            ManifestProperties manifestProperties) {
         this.objectMapper = objectMapper;
-        this.cacheService = cacheService;
+        this.serializationService = serializationService;
+        this.sessionService = sessionService;
+        this.sessionExpiryService = sessionExpiryService;
         this.verifiedIdService = verifiedIdService;
+        this.issuanceCoalescer = issuanceCoalescer;
+        this.tenantService = tenantService;
+        this.manifestService = manifestService;
+        this.manifestProperties = manifestProperties;
     }
 
     /**
@@ -60,80 +99,170 @@ public class IssuerController {
     @PostMapping(
             path = "/api/issuer/request",
             consumes = "application/json",
-            produces = "application/json"
+            produces = {"application/json", "application/cbor", "application/x-jackson-smile"}
     )
-    public ResponseEntity<String> issueRequest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
-        // Log the request
-        LogUtils.logHttpRequest(request);
-
-        // Prepare response body
-        String responseBody;
+    public ResponseEntity<Object> issueRequest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
+        // Prepare response body; it is encoded in the format negotiated with the client
+        ApiResponse issuanceResponse;
 
         try {
+            // Resolve the tenant the request is made for
+            TenantContext tenant = tenantService.resolve(request);
+
             // Retrieve request body and
             // marshal into claims object
-            Claims claims = objectMapper.readValue(request.getReader(), Claims.class);
-
-            // Create Issuance Request
-            IssuanceRequest issuanceRequest = verifiedIdService.createIssuanceRequest(request, claims);
-            String correlationId = issuanceRequest.getCallback().getState();
-            String payload = objectMapper
-                    .writer()
-                    .withDefaultPrettyPrinter()
-                    .writeValueAsString(issuanceRequest);
-
-            // Print debug payload
-            log.debug(payload);
-
-            // Cache request correlation id and associated status
-            // This is required for when Microsoft issues the issuance callback
-            ObjectNode data = objectMapper.createObjectNode();
-            data.put("status", "request_created");
-            data.put("message", "Waiting for QR code to be scanned");
-            String cachedData = objectMapper
-                    .writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(data);
-            cacheService.put(correlationId, cachedData);
-
-            // Call Verified ID API
-            responseBody = verifiedIdService.initiateIssuanceRequest(issuanceRequest);
-
-            // Marshal Verified ID API response
-            ApiResponse issuanceResponse = objectMapper.readValue(responseBody, ApiResponse.class);
-            issuanceResponse.setId(correlationId);
-            if (issuanceRequest.getPin() != null) {
-                issuanceResponse.setPin(issuanceRequest.getPin().getValue());
-            }
-            responseBody = objectMapper
-                    .writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(issuanceResponse);
-
-            // Print debug Verified ID API response
-            log.debug(responseBody);
-
-            // Print debug cached data
-            log.debug(cachedData);
+            Claims claims = serializationService.read(request.getReader(), Claims.class);
+
+            // Duplicates of a pending request with the same claims are answered with its response
+            issuanceResponse = issuanceCoalescer.execute(tenant, request, claims, () -> issue(tenant, request, claims));
         } catch (IOException ex) {
             log.error(ex.getMessage());
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
-                    .body("Request may be malformed.");
+                    .body(ErrorResponse.of("Request may be malformed."));
         } catch (AuthenticationException ex) {
             log.error(ex.getMessage());
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Internal authentication failed.");
+                    .body(ErrorResponse.of("Internal authentication failed."));
+        } catch (UnknownTenantException ex) {
+            log.error(ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(ErrorResponse.of("Unknown tenant."));
+        } catch (IdempotencyConflictException ex) {
+            log.error(ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(ErrorResponse.of("Idempotency key was already used with a different request."));
         }
 
         // Set up and return response
         HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        responseHeaders.setVary(List.of(HttpHeaders.ACCEPT));
         return ResponseEntity
                 .ok()
                 .headers(responseHeaders)
-                .body(responseBody);
+                .body(issuanceResponse);
+    }
+
+    /**
+     * Private issuance helper method. Creates the upstream issuance request and its cached session.
+     *
+     * @param tenant The tenant the request is made for
+     * @param request The issuance request from the UI
+     * @param claims The claims of the issuance request
+     * @return The Verified ID API response, carrying the correlation id and PIN
+     * @throws IOException When the Verified ID API response cannot be decoded
+     * @throws AuthenticationException When MSAL service fails to obtain an access token
+     */
+    private ApiResponse issue(TenantContext tenant, HttpServletRequest request, Claims claims)
+            throws IOException, AuthenticationException {
+        // Create Issuance Request
+        IssuanceRequest issuanceRequest = verifiedIdService.createIssuanceRequest(tenant, request, claims);
+        String correlationId = issuanceRequest.getCallback().getState();
+
+        // Print debug payload
+        LogUtils.logPayload("Issuance request", objectMapper, issuanceRequest);
+
+        // Cache request correlation id and associated status
+        // This is required for when Microsoft issues the issuance callback
+        String cachedData = sessionService.create(correlationId, tenant.getTenantId(), "issuance");
+
+        // Call Verified ID API; the response is decoded straight into the ApiResponse model
+        ApiResponse issuanceResponse = verifiedIdService.initiateIssuanceRequest(tenant, issuanceRequest);
+        issuanceResponse.setId(correlationId);
+        sessionService.bind(correlationId, issuanceResponse.getRequestId());
+        sessionExpiryService.schedule(correlationId, tenant.getTenantId(), "issuance", issuanceResponse.getExpiry());
+        if (issuanceRequest.getPin() != null) {
+            issuanceResponse.setPin(issuanceRequest.getPin().getValue());
+        }
+
+        // Print debug Verified ID API response
+        LogUtils.logPayload("Verified ID API response", objectMapper, issuanceResponse);
+
+        // Print debug cached data
+        LogUtils.logPayload("Cached data", objectMapper, cachedData);
+
+        return issuanceResponse;
+    }
+
+    /**
+     * Manifest endpoint. Returns the tenant's credential manifest from the manifest cache.
+     *
+     * @param request The manifest request from the UI
+     * @param headers The request headers
+     * @return A ResponseEntity object containing the credential manifest, or 304 when the client copy is current
+     */
+    @GetMapping(
+            path = "/api/issuer/manifest",
+            produces = "application/json"
+    )
+    public ResponseEntity<Object> getManifest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
+        return manifestResponse(request, headers, false);
     }
 
-    // TODO: Implement getManifest method whenever we have a valid verified ID service
-    // TODO: Implement downloadManifest method whenever we have a valid verified ID service
+    /**
+     * Manifest download endpoint. Returns the tenant's credential manifest as a file attachment.
+     *
+     * @param request The manifest request from the UI
+     * @param headers The request headers
+     * @return A ResponseEntity object containing the credential manifest, or 304 when the client copy is current
+     */
+    @GetMapping(
+            path = "/api/issuer/manifest/download",
+            produces = "application/json"
+    )
+    public ResponseEntity<Object> downloadManifest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
+        return manifestResponse(request, headers, true);
+    }
+
+    /**
+     * Private manifest helper method. This is used by the manifest endpoints.
+     *
+     * @param request The manifest request from the UI
+     * @param headers The request headers
+     * @param attachment Whether the manifest is served as a file attachment
+     * @return A ResponseEntity object containing the credential manifest
+     */
+    private ResponseEntity<Object> manifestResponse(HttpServletRequest request, HttpHeaders headers, boolean attachment) {
+        ManifestService.Manifest manifest;
+        try {
+            manifest = manifestService.get(tenantService.resolve(request));
+        } catch (IOException ex) {
+            log.error(ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.BAD_GATEWAY)
+                    .body(ErrorResponse.of("Manifest unavailable."));
+        } catch (UnknownTenantException ex) {
+            log.error(ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(ErrorResponse.of("Unknown tenant."));
+        }
+
+        // Clients revalidate with the strong ETag, so an unchanged manifest costs a 304 without a body
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setETag(manifest.getEtag());
+        responseHeaders.setCacheControl(CacheControl
+                .maxAge(manifestProperties.getClientMaxAgeSeconds(), TimeUnit.SECONDS)
+                .cachePublic());
+        if (ServerUtils.ifNoneMatch(headers, manifest.getEtag())) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_MODIFIED)
+                    .headers(responseHeaders)
+                    .build();
+        }
+        responseHeaders.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        if (attachment) {
+            responseHeaders.setContentDisposition(ContentDisposition
+                    .attachment()
+                    .filename("manifest.json")
+                    .build());
+        }
+        return ResponseEntity
+                .ok()
+                .headers(responseHeaders)
+                .body(manifest.getBody());
+    }
 }
@@ -3,17 +3,29 @@ package com.smoogiee.verifiedidbackend.controller;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
+import com.smoogiee.verifiedidbackend.utils.ServerUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 
+import java.util.UUID;
+
 @Controller
 public class MockVerifiedIdController {
+    private static final String MOCK_MANIFEST = "{\"id\":\"mock\",\"display\":{\"locale\":\"en-US\",\"contract\":\"mock\","
+            + "\"card\":{\"title\":\"Mock Verified ID\",\"issuedBy\":\"Mock issuer\"}},"
+            + "\"input\":{\"credentialIssuer\":\"mock\",\"issuer\":\"did:web:issuer.example\"}}";
+    private static final String MOCK_MANIFEST_ETAG = "\"mock-manifest-1\"";
+    private static final long MOCK_MANIFEST_LAST_MODIFIED = 1704067200000L;
+    private static final long MOCK_REQUEST_EXPIRY_SECONDS = 300;
+
     private final ObjectMapper objectMapper;
 
     @Autowired
@@ -27,11 +39,36 @@ public class MockVerifiedIdController {
             produces = "application/json"
     )
     public ResponseEntity<String> issueRequest(HttpServletRequest request, @RequestHeader HttpHeaders headers) throws JsonProcessingException {
+        ApiResponse apiResponse = new ApiResponse();
+        apiResponse.setRequestId(UUID.randomUUID().toString());
+        apiResponse.setExpiry((int) (System.currentTimeMillis() / 1000 + MOCK_REQUEST_EXPIRY_SECONDS));
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        return ResponseEntity
+                .ok()
+                .headers(responseHeaders)
+                .body(objectMapper.writeValueAsString(apiResponse));
+    }
+
+    @GetMapping(
+            path = "/mock/manifest",
+            produces = "application/json"
+    )
+    public ResponseEntity<String> manifest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
         HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setETag(MOCK_MANIFEST_ETAG);
+        responseHeaders.setLastModified(MOCK_MANIFEST_LAST_MODIFIED);
+        if (ServerUtils.ifNoneMatch(headers, MOCK_MANIFEST_ETAG)
+                || headers.getIfModifiedSince() >= MOCK_MANIFEST_LAST_MODIFIED) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_MODIFIED)
+                    .headers(responseHeaders)
+                    .build();
+        }
         responseHeaders.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
         return ResponseEntity
                 .ok()
                 .headers(responseHeaders)
-                .body(objectMapper.writeValueAsString(new ApiResponse()));
+                .body(MOCK_MANIFEST);
     }
 }
@@ -2,13 +2,16 @@ package com.smoogiee.verifiedidbackend.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.smoogiee.verifiedidbackend.config.AppConfig;
-import com.smoogiee.verifiedidbackend.config.VerifiedIdProperties;
 import com.smoogiee.verifiedidbackend.exception.AuthenticationException;
+import com.smoogiee.verifiedidbackend.exception.UnknownTenantException;
+import com.smoogiee.verifiedidbackend.model.error.ErrorResponse;
 import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
 import com.smoogiee.verifiedidbackend.model.verifiedid.FaceCheck;
 import com.smoogiee.verifiedidbackend.model.verifiedid.PresentationRequest;
-import com.smoogiee.verifiedidbackend.service.CacheService;
+import com.smoogiee.verifiedidbackend.service.SessionExpiryService;
+import com.smoogiee.verifiedidbackend.service.SessionService;
+import com.smoogiee.verifiedidbackend.service.TenantContext;
+import com.smoogiee.verifiedidbackend.service.TenantService;
 import com.smoogiee.verifiedidbackend.service.VerifiedIdService;
 import com.smoogiee.verifiedidbackend.utils.LogUtils;
 import jakarta.servlet.http.HttpServletRequest;
@@ -17,6 +20,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -24,6 +28,7 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Controller class used for verifying Verified IDs
@@ -33,49 +38,54 @@ import java.io.IOException;
 @EnableCaching
 public class VerifierController {
     private final ObjectMapper objectMapper;
-    private final CacheService<String, String> cacheService;
+    private final SessionService sessionService;
+    private final SessionExpiryService sessionExpiryService;
     private final VerifiedIdService verifiedIdService;
-    private final VerifiedIdProperties verifiedIdProperties;
+    private final TenantService tenantService;
 
     /**
      * Constructor
      *
      * @param objectMapper A fasterXML Jackson ObjectMapper used for marshaling JSON objects
-     * @param cacheService A cache service with strings as key:value pairs
+     * @param sessionService A SessionService bean used to create cached sessions
+     * @param sessionExpiryService A SessionExpiryService bean used to expire sessions with their upstream request
      * @param verifiedIdService A VerifiedIdService bean used to make calls into Microsoft Verified ID
+     * @param tenantService A TenantService bean used to resolve the tenant of a request
      */
     @Autowired
     public VerifierController(ObjectMapper objectMapper,
-                              CacheService<String, String> cacheService,
+                              SessionService sessionService,
+                              SessionExpiryService sessionExpiryService,
                               VerifiedIdService verifiedIdService,
-                              VerifiedIdProperties verifiedIdProperties) {
+                              TenantService tenantService) {
         this.objectMapper = objectMapper;
-        this.cacheService = cacheService;
+        this.sessionService = sessionService;
+        this.sessionExpiryService = sessionExpiryService;
         this.verifiedIdService = verifiedIdService;
-        this.verifiedIdProperties = verifiedIdProperties;
+        this.tenantService = tenantService;
     }
 
     @PostMapping(
             path = "/api/verifier/request",
             consumes = "applciation/json",
-            produces = "application/json"
+            produces = {"application/json", "application/cbor", "application/x-jackson-smile"}
     )
-    public ResponseEntity<String> presentationRequest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
-        //Log the request
-        LogUtils.logHttpRequest(request);
-
-        // Prepare response body
-        String responseBody;
+    public ResponseEntity<Object> presentationRequest(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
+        // Prepare response body; it is encoded in the format negotiated with the client
+        ApiResponse presentationResponse;
 
         try {
+            // Resolve the tenant the request is made for
+            TenantContext tenant = tenantService.resolve(request);
+
             // Create Presentation Request
-            PresentationRequest presentationRequest = verifiedIdService.createPresentationRequest(request);
+            PresentationRequest presentationRequest = verifiedIdService.createPresentationRequest(tenant, request);
             String correlationId = presentationRequest.getCallback().getState();
             String faceCheck  = request.getParameter("faceCheck");
             if (faceCheck.equals("1")) {
                 String photoClaimName = request.getParameter("photoClaimName");
                 if (photoClaimName.isBlank()) {
-                    photoClaimName = verifiedIdProperties.getPhotoClaimName();
+                    photoClaimName = tenant.getProperties().getPhotoClaimName();
                 }
                 FaceCheck fc = new FaceCheck();
                 fc.setSourcePhotoClaimName(photoClaimName);
@@ -87,58 +97,48 @@ public class VerifierController {
                         .getValidation()
                         .setFaceCheck(fc);
             }
-            String payload = objectMapper
-                    .writer()
-                    .withDefaultPrettyPrinter()
-                    .writeValueAsString(presentationRequest);
-
             // Print debug payload
-            log.debug(payload);
+            LogUtils.logPayload("Presentation request", objectMapper, presentationRequest);
 
             // Cache request correlation id and associated status
             // This is required for when Microsoft issues the presentation callback
-            ObjectNode data = objectMapper.createObjectNode();
-            data.put("status", "request_created");
-            data.put("message", "Waiting for QR code to be scanned");
-            String cachedData = objectMapper
-                    .writerWithDefaultPrettyPrinter()
-                            .writeValueAsString(data);
-            cacheService.put(correlationId, cachedData);
-
-            // Call Verified ID API
-            responseBody = verifiedIdService.initiatePresentationRequest(presentationRequest);
+            String cachedData = sessionService.create(correlationId, tenant.getTenantId(), "presentation");
 
-            // Marshal Verified ID API response
-            ApiResponse presentationResponse = objectMapper.readValue(responseBody, ApiResponse.class);
+            // Call Verified ID API; the response is decoded straight into the ApiResponse model
+            presentationResponse = verifiedIdService.initiatePresentationRequest(tenant, presentationRequest);
             presentationResponse.setId(correlationId);
-            responseBody = objectMapper
-                    .writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(presentationResponse);
+            sessionService.bind(correlationId, presentationResponse.getRequestId());
+            sessionExpiryService.schedule(correlationId, tenant.getTenantId(), "presentation", presentationResponse.getExpiry());
 
             // Print debug Verified ID API response
-            log.debug(responseBody);
+            LogUtils.logPayload("Verified ID API response", objectMapper, presentationResponse);
 
             // Print debug cached data
-            log.debug(cachedData);
+            LogUtils.logPayload("Cached data", objectMapper, cachedData);
         } catch (IOException ex) {
             log.error(ex.getMessage());
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
-                    .body("Request may be malformed.");
+                    .body(ErrorResponse.of("Request may be malformed."));
         } catch (AuthenticationException ex) {
             log.error(ex.getMessage());
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Internal authentication failed,.");
+                    .body(ErrorResponse.of("Internal authentication failed,."));
+        } catch (UnknownTenantException ex) {
+            log.error(ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(ErrorResponse.of("Unknown tenant."));
         }
 
         // Set up and return response
         HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.set("Content-Type", "application/json");
+        responseHeaders.setVary(List.of(HttpHeaders.ACCEPT));
         return ResponseEntity
                 .ok()
                 .headers(responseHeaders)
-                .body(responseBody);
+                .body(presentationResponse);
     }
 
     @GetMapping(
@@ -146,33 +146,32 @@ public class VerifierController {
             consumes = "application/json",
             produces = "application/json"
     )
-    public ResponseEntity<String> getPresentationDetails(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
-        LogUtils.logHttpRequest(request);
-        String responseBody = "";
+    public ResponseEntity<Object> getPresentationDetails(HttpServletRequest request, @RequestHeader HttpHeaders headers) {
+        // The tree is streamed straight to the response by the message converter
+        ObjectNode data = objectMapper.createObjectNode();
         try {
-            PresentationRequest presentationRequest = verifiedIdService.createPresentationRequest(request);
-            ObjectNode data = objectMapper.createObjectNode();
+            TenantContext tenant = tenantService.resolve(request);
+            PresentationRequest presentationRequest = verifiedIdService.createPresentationRequest(tenant, request);
             data.put("clientName", presentationRequest.getRegistration().getClientName());
             data.put("purpose", presentationRequest.getRequestedCredentials().get(0).getPurpose());
             data.put("didAuthority", presentationRequest.getAuthority());
             data.put("type", presentationRequest.getRequestedCredentials().get(0).getType());
             data.put("acceptedIssuers", presentationRequest.getRequestedCredentials().get(0).getAcceptedIssuers().get(0));
-            data.put("photoClaimName", verifiedIdProperties.getPhotoClaimName());
-            data.put("useFaceCheck", verifiedIdProperties.getUseFaceCheck());
-            responseBody = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(data);
-        } catch (IOException ex) {
+            data.put("photoClaimName", tenant.getProperties().getPhotoClaimName());
+            data.put("useFaceCheck", tenant.getProperties().getUseFaceCheck());
+        } catch (UnknownTenantException ex) {
             log.error(ex.getMessage());
             return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body("Request may be malformed.");
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(ErrorResponse.of("Unknown tenant."));
         }
 
         // Set up and return response
         HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.set("Content-Type", "application/json");
+        responseHeaders.setContentType(MediaType.APPLICATION_JSON);
         return ResponseEntity
                 .ok()
                 .headers(responseHeaders)
-                .body(responseBody);
+                .body(data);
     }
 }
@@ -0,0 +1,11 @@
+package com.smoogiee.verifiedidbackend.exception;
+
+/**
+ * Exception used whenever an idempotency key is
+ * reused with a different issuance request
+ */
+public class IdempotencyConflictException extends Exception {
+    public IdempotencyConflictException(String errorMessage) {
+        super(errorMessage);
+    }
+}
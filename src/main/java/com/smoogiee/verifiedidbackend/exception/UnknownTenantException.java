@@ -0,0 +1,11 @@
+package com.smoogiee.verifiedidbackend.exception;
+
+/**
+ * Exception used whenever a request references
+ * a tenant that has no configuration
+ */
+public class UnknownTenantException extends Exception {
+    public UnknownTenantException(String errorMessage) {
+        super(errorMessage);
+    }
+}
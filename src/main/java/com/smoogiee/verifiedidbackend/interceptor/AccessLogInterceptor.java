@@ -0,0 +1,84 @@
+package com.smoogiee.verifiedidbackend.interceptor;
+
+import com.smoogiee.verifiedidbackend.config.LoggingProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Interceptor used to write one structured access log line per request.
+ * Lines are written to the "access" logger, which logback-spring.xml routes
+ * through a bounded asynchronous appender. Successful requests are sampled
+ * per endpoint; failed requests are always logged.
+ */
+@Slf4j
+public class AccessLogInterceptor implements HandlerInterceptor {
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("access");
+    private static final String START_ATTRIBUTE = AccessLogInterceptor.class.getName() + ".start";
+
+    private final boolean enabled;
+    private final double defaultSampleRate;
+    private final Map<String, Double> sampleRates;
+
+    /**
+     * Constructor
+     *
+     * @param loggingProperties Property bean containing access log configuration properties
+     */
+    public AccessLogInterceptor(LoggingProperties loggingProperties) {
+        this.enabled = loggingProperties.isAccessLogEnabled();
+        this.defaultSampleRate = loggingProperties.getDefaultSampleRate();
+        this.sampleRates = new HashMap<>();
+        for (String entry : loggingProperties.getSampleRates()) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                log.warn("Ignoring malformed access log sample rate: {}", entry);
+                continue;
+            }
+            sampleRates.put(entry.substring(0, separator).trim(),
+                    Double.parseDouble(entry.substring(separator + 1).trim()));
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (enabled && ACCESS_LOG.isInfoEnabled()) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request,
+                                HttpServletResponse response,
+                                Object handler,
+                                Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+
+        // Always keep failures, otherwise apply the endpoint sample rate
+        int status = response.getStatus();
+        String path = request.getRequestURI();
+        double sampleRate = sampleRates.getOrDefault(path, defaultSampleRate);
+        if (status < 400 && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+
+        long durationMicros = (System.nanoTime() - (long) start) / 1_000;
+        ACCESS_LOG.info("method={} path={} status={} duration_us={} sample_rate={}",
+                request.getMethod(),
+                path,
+                status,
+                durationMicros,
+                sampleRate);
+    }
+}
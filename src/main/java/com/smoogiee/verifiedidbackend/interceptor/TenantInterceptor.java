@@ -0,0 +1,32 @@
+package com.smoogiee.verifiedidbackend.interceptor;
+
+import com.smoogiee.verifiedidbackend.service.TenantService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Interceptor used to release the tenant a request resolved once the
+ * request has completed, so that an idle eviction of the tenant never
+ * closes its connection pool under an in-flight request.
+ */
+public class TenantInterceptor implements HandlerInterceptor {
+    private final TenantService tenantService;
+
+    /**
+     * Constructor
+     *
+     * @param tenantService Service used to resolve and release tenants
+     */
+    public TenantInterceptor(TenantService tenantService) {
+        this.tenantService = tenantService;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request,
+                                HttpServletResponse response,
+                                Object handler,
+                                Exception ex) {
+        tenantService.release(request);
+    }
+}
@@ -0,0 +1,43 @@
+package com.smoogiee.verifiedidbackend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a callback applied to its session
+ */
+@Name("com.smoogiee.verifiedid.CallbackProcessing")
+@Label("Callback Processing")
+@Category({"Verified ID", "Callbacks"})
+@Description("Parsing, projecting and applying a Verified ID callback to its session")
+@Enabled(false)
+@StackTrace(false)
+public class CallbackProcessingEvent extends jdk.jfr.Event {
+    @Label("Correlation Id")
+    public String state;
+
+    @Label("Request Type")
+    public String requestType;
+
+    @Label("Request Status")
+    @Description("Status as received in the callback")
+    public String requestStatus;
+
+    @Label("Parse Path")
+    @Description("Parsing steps taken: projection, then vp_token and receipt verification for presentation receipts")
+    public String parsePath;
+
+    @Label("Outcome")
+    @Description("APPLIED, REJECTED or UNKNOWN when the session no longer exists")
+    public String outcome;
+
+    @Label("Queued")
+    @Description("Time between receiving the callback and starting to process it")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queued;
+}
@@ -0,0 +1,31 @@
+package com.smoogiee.verifiedidbackend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an entry evicted from one of the session cache tiers.
+ * Evictions are instant events, so they are recorded with a zero threshold
+ */
+@Name("com.smoogiee.verifiedid.SessionEviction")
+@Label("Session Eviction")
+@Category({"Verified ID", "Sessions"})
+@Description("An entry evicted from the session cache because it expired or the tier was full")
+@Enabled(false)
+@StackTrace(false)
+public class SessionEvictionEvent extends jdk.jfr.Event {
+    @Label("Tier")
+    @Description("heap, resident or off_heap")
+    public String tier;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Eviction Cause")
+    @Description("EXPIRED or SIZE")
+    public String cause;
+}
@@ -0,0 +1,35 @@
+package com.smoogiee.verifiedidbackend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an operation on the session store. Evictions are recorded
+ * as {@link SessionEvictionEvent}
+ */
+@Name("com.smoogiee.verifiedid.SessionStore")
+@Label("Session Store Operation")
+@Category({"Verified ID", "Sessions"})
+@Description("A read, write or removal of a cached session")
+@Enabled(false)
+@StackTrace(false)
+public class SessionStoreEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    @Description("get, create, update or remove")
+    public String operation;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Hit")
+    @Description("Whether the session was found")
+    public boolean hit;
+
+    @Label("Update Outcome")
+    @Description("APPLIED, REJECTED or UNKNOWN for updates")
+    public String outcome;
+}
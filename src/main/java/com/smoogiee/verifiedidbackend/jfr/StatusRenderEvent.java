@@ -0,0 +1,35 @@
+package com.smoogiee.verifiedidbackend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a status poll answered by the status endpoint
+ */
+@Name("com.smoogiee.verifiedid.StatusRender")
+@Label("Status Rendering")
+@Category({"Verified ID", "Status"})
+@Description("Building the answer to a status poll, before it is encoded by the message converter")
+@Enabled(false)
+@StackTrace(false)
+public class StatusRenderEvent extends jdk.jfr.Event {
+    @Label("Correlation Id")
+    public String id;
+
+    @Label("Request Status")
+    public String requestStatus;
+
+    @Label("HTTP Status")
+    public int httpStatus;
+
+    @Label("Accept")
+    public String accept;
+
+    @Label("Forwarded")
+    @Description("Whether the poll was forwarded to the cluster node owning the session")
+    public boolean forwarded;
+}
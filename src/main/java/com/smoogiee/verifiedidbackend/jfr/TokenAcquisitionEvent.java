@@ -0,0 +1,33 @@
+package com.smoogiee.verifiedidbackend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an MSAL access token lookup
+ */
+@Name("com.smoogiee.verifiedid.TokenAcquisition")
+@Label("MSAL Token Acquisition")
+@Category({"Verified ID", "Authentication"})
+@Description("An access token lookup, served from the token cache or acquired from Microsoft")
+@Enabled(false)
+@StackTrace(false)
+public class TokenAcquisitionEvent extends jdk.jfr.Event {
+    @Label("Tenant")
+    public String tenant;
+
+    @Label("Mode")
+    @Description("Authentication mode: secret, certificate or managed_identity")
+    public String mode;
+
+    @Label("Cache Hit")
+    @Description("Whether the token was served from the application token cache")
+    public boolean cacheHit;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,43 @@
+package com.smoogiee.verifiedidbackend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a single call to the Verified ID API.
+ * A hedged call records one event per request sent.
+ */
+@Name("com.smoogiee.verifiedid.UpstreamCall")
+@Label("Verified ID API Call")
+@Category({"Verified ID", "Upstream"})
+@Description("A request to the Verified ID API, from sending it to decoding its response")
+@Enabled(false)
+@StackTrace(false)
+public class UpstreamCallEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Tenant")
+    public String tenant;
+
+    @Label("HTTP Status")
+    @Description("Response status code, or 0 if no response was received")
+    public int status;
+
+    @Label("Response Size")
+    @Description("Response body bytes received after content decoding")
+    @DataAmount
+    public long bytes;
+
+    @Label("Outcome")
+    @Description("How the call ended: onComplete, onError or cancel, when it lost a hedge race")
+    public String outcome;
+}
@@ -0,0 +1,21 @@
+package com.smoogiee.verifiedidbackend.model.audit;
+
+import lombok.Data;
+
+@Data
+public class AuditRecord {
+    private String id;
+    private String tenant;
+    private String requestType;
+    private String requestId;
+    private String requestStatus;
+    private String verification;
+    private String subject;
+    private String jti;
+    private String issuer;
+    private String issuanceDate;
+    private String expirationDate;
+    private Long createdAt;
+    private Long retrievedAt;
+    private long completedAt;
+}
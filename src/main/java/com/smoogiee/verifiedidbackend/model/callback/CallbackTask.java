@@ -0,0 +1,15 @@
+package com.smoogiee.verifiedidbackend.model.callback;
+
+import lombok.Data;
+
+@Data
+public class CallbackTask {
+    private String tenant;
+    private String requestType;
+    private String state;
+    private String requestStatus;
+    private String requestId;
+    private String body;
+    private long payloadHash;
+    private long receivedAt;
+}
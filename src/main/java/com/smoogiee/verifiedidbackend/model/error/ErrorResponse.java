@@ -0,0 +1,24 @@
+package com.smoogiee.verifiedidbackend.model.error;
+
+import lombok.Data;
+
+/**
+ * Error body of the endpoints that negotiate their encoding, so that an error
+ * reaches a CBOR or Smile client in the format it asked for
+ */
+@Data
+public class ErrorResponse {
+    private String message;
+
+    /**
+     * Creates an error body
+     *
+     * @param message The error message
+     * @return The error body
+     */
+    public static ErrorResponse of(String message) {
+        ErrorResponse error = new ErrorResponse();
+        error.setMessage(message);
+        return error;
+    }
+}
@@ -0,0 +1,9 @@
+package com.smoogiee.verifiedidbackend.model.jwt;
+
+import lombok.Data;
+
+@Data
+public class JwsHeader {
+    private String alg;
+    private String kid;
+}
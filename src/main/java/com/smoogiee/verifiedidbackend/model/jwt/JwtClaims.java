@@ -0,0 +1,15 @@
+package com.smoogiee.verifiedidbackend.model.jwt;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class JwtClaims {
+    private String jti;
+    private String iss;
+    private String sub;
+    private List<String> vcType = new ArrayList<>();
+    private List<String> verifiableCredentials = new ArrayList<>();
+}
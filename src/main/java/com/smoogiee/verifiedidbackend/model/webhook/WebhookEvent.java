@@ -0,0 +1,16 @@
+package com.smoogiee.verifiedidbackend.model.webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+
+@Data
+public class WebhookEvent {
+    private String id;
+    private String tenant;
+    private String requestType;
+    private String requestId;
+    private String requestStatus;
+    private String subject;
+    private JsonNode verifiedCredentialsData;
+    private long timestamp;
+}
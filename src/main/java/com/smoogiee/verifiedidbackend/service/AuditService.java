@@ -0,0 +1,280 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.smoogiee.verifiedidbackend.config.AuditProperties;
+import com.smoogiee.verifiedidbackend.model.audit.AuditRecord;
+import com.smoogiee.verifiedidbackend.utils.AuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to keep an append-only audit log of completed requests.
+ * <p>
+ * Recording only enqueues the record on a bounded queue. A single writer thread drains the
+ * queue in batches, appends each batch to the current log file with one write and makes it
+ * durable with one fsync, so the cost of an fsync is shared by every record committed with it.
+ * Files roll over at a configured size and are never reopened once closed. The file format
+ * and the offline reader are described in {@link AuditLog}.
+ * <p>
+ * A batch that fails to commit is kept and retried in a new file with backoff. The failed file is
+ * first truncated back to its last committed record, so a retried record is not left behind twice.
+ * The batch is only dropped and counted as failed once the retry budget is spent.
+ */
+@Slf4j
+@Service
+public class AuditService {
+    private static final String RECORDS_COUNTER = "audit.records";
+    private static final String COMMIT_TIMER = "audit.commit";
+
+    private final SerializationService serializationService;
+    private final AuditProperties auditProperties;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> events;
+    private final BlockingQueue<AuditRecord> queue;
+    private final ByteArrayOutputStream buffer;
+    private Counter written;
+    private Counter dropped;
+    private Counter failed;
+    private Counter retries;
+    private Timer commitTimer;
+    private FileChannel channel;
+    private long fileSize;
+    private long committedSize;
+    private Thread writer;
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     *
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param auditProperties Property bean containing audit log configuration properties
+     * @param meterRegistry Registry the audit record counts and commit timings are published to
+     */
+    @Autowired
+    public AuditService(SerializationService serializationService,
+                        AuditProperties auditProperties,
+                        MeterRegistry meterRegistry) {
+        this.serializationService = serializationService;
+        this.auditProperties = auditProperties;
+        this.meterRegistry = meterRegistry;
+        this.events = Set.of(auditProperties.getEvents());
+        this.queue = new ArrayBlockingQueue<>(auditProperties.getQueueCapacity());
+        this.buffer = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!auditProperties.isEnabled()) {
+            return;
+        }
+        written = meterRegistry.counter(RECORDS_COUNTER, "result", "written");
+        dropped = meterRegistry.counter(RECORDS_COUNTER, "result", "dropped");
+        failed = meterRegistry.counter(RECORDS_COUNTER, "result", "failed");
+        retries = meterRegistry.counter("audit.retries");
+        commitTimer = meterRegistry.timer(COMMIT_TIMER);
+        meterRegistry.gaugeCollectionSize("audit.queue", List.of(), queue);
+
+        Files.createDirectories(Path.of(auditProperties.getDirectory()));
+        roll();
+        running = true;
+        writer = new Thread(this::write, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Audit log started in {}", auditProperties.getDirectory());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // The writer drains what is still queued before it closes the log
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Checks whether the audit log is enabled
+     *
+     * @return true if records are appended to the audit log. false otherwise
+     */
+    public boolean isEnabled() {
+        return auditProperties.isEnabled();
+    }
+
+    /**
+     * Checks whether requests ending with the provided status are audited
+     *
+     * @param requestStatus The callback request status
+     * @return true if the status is audited. false otherwise
+     */
+    public boolean records(String requestStatus) {
+        return auditProperties.isEnabled() && events.contains(requestStatus);
+    }
+
+    /**
+     * Queues a record for the audit log. Never blocks; the record is dropped and counted when the queue is full.
+     *
+     * @param record The audit record
+     */
+    public void record(AuditRecord record) {
+        if (!records(record.getRequestStatus())) {
+            return;
+        }
+        if (!queue.offer(record)) {
+            dropped.increment();
+            log.error("Audit queue full, dropped record for {}", record.getId());
+        }
+    }
+
+    private void write() {
+        int batchSize = auditProperties.getBatchSize();
+        int maxAttempts = Math.max(1, auditProperties.getMaxAttempts());
+        List<AuditRecord> batch = new ArrayList<>(batchSize);
+        int attempts = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                // A batch that failed to commit is retried before anything new is taken
+                if (batch.isEmpty()) {
+                    AuditRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                commit(batch);
+                written.increment(batch.size());
+                batch.clear();
+                attempts = 0;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException | RuntimeException ex) {
+                // A partial write may have left a torn record behind, so the retry goes to a new file
+                discard();
+                if (++attempts >= maxAttempts) {
+                    failed.increment(batch.size());
+                    log.error("Dropping {} audit record(s) after {} attempt(s): {}", batch.size(), attempts, ex.getMessage());
+                    batch.clear();
+                    attempts = 0;
+                    continue;
+                }
+                retries.increment();
+                log.warn("Unable to write {} audit record(s), retrying (attempt {}): {}", batch.size(), attempts, ex.getMessage());
+                try {
+                    Thread.sleep(auditProperties.getRetryBackoffMs() << (attempts - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            failed.increment(batch.size());
+            log.error("Dropping {} audit record(s) on shutdown", batch.size());
+        }
+        close();
+    }
+
+    private void commit(List<AuditRecord> batch) throws IOException {
+        long start = System.nanoTime();
+        if (channel == null || fileSize >= auditProperties.getMaxFileMb() * 1024 * 1024) {
+            roll();
+        }
+
+        // The whole batch goes out with a single write and is made durable with a single fsync
+        ObjectWriter recordWriter = serializationService.writer(AuditRecord.class);
+        buffer.reset();
+        for (AuditRecord record : batch) {
+            AuditLog.writeRecord(buffer, recordWriter.writeValueAsBytes(record));
+        }
+        append();
+        channel.force(false);
+        committedSize = fileSize;
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void roll() throws IOException {
+        close();
+        Path directory = Path.of(auditProperties.getDirectory());
+        long id = System.currentTimeMillis();
+        while (channel == null) {
+            // Names sort in the order files were written; a name is never reused
+            Path file = directory.resolve(AuditLog.FILE_PREFIX + String.format("%016d", id++) + AuditLog.FILE_SUFFIX);
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException ex) {
+                // Try the next name
+            }
+        }
+        fileSize = 0;
+        buffer.reset();
+        AuditLog.writeHeader(buffer);
+        append();
+        channel.force(true);
+        committedSize = fileSize;
+        syncDirectory(directory);
+    }
+
+    private void append() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            fileSize += channel.write(bytes);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        // Makes the new file's directory entry durable; not supported on every platform
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException ex) {
+            log.debug("Unable to sync audit directory {}: {}", directory, ex.getMessage());
+        }
+    }
+
+    private void discard() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.truncate(committedSize);
+        } catch (IOException ex) {
+            log.error("Unable to truncate audit log after a failed commit: {}", ex.getMessage());
+        }
+        close();
+    }
+
+    private void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException ex) {
+            log.error("Unable to close audit log: {}", ex.getMessage());
+        }
+        channel = null;
+    }
+}
@@ -2,30 +2,162 @@ package com.smoogiee.verifiedidbackend.service;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.smoogiee.verifiedidbackend.config.CacheProperties;
+import com.smoogiee.verifiedidbackend.jfr.SessionEvictionEvent;
+import com.smoogiee.verifiedidbackend.utils.OffHeapStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.EventType;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Service class used for calls into an in-memory Caffeine cache instance
+ * Service class used for calls into an in-memory Caffeine cache instance.
+ * <p>
+ * When the off-heap tier is enabled, String entries are stored in an {@link OffHeapStore}
+ * and a short-lived Caffeine cache only holds entries promoted from it on read. Access tokens
+ * are never written off-heap, and neither are entries the off-heap tier cannot store; both
+ * are kept in a resident Caffeine cache with the full TTL instead. Compound operations
+ * on the off-heap tier are serialized per key with striped locks.
  */
 @Slf4j
 @Service
 public class CacheService<K, V> {
+    public static final String TOKEN_KEY_PREFIX = "MSALAccessToken:";
+
+    private static final int LOCK_STRIPES = 64;
+
+    // The off-heap tier only decodes the keys of expired entries while the eviction event is being recorded
+    private static final EventType EVICTION_EVENT = EventType.getEventType(SessionEvictionEvent.class);
+    private static final OffHeapStore.EvictionListener OFF_HEAP_EVICTIONS = new OffHeapStore.EvictionListener() {
+        @Override
+        public boolean isEnabled() {
+            return EVICTION_EVENT.isEnabled();
+        }
+
+        @Override
+        public void evicted(String key, String cause) {
+            CacheService.evicted("off_heap", key, cause);
+        }
+    };
+
     private final Cache<K, V> cache;
+    private final Cache<K, V> resident;
+    private final Counter overflow;
+    private final long ttlMillis;
+    private final OffHeapStore offHeapStore;
+    private final boolean promote;
+    private final Object[] locks;
+    private final ScheduledExecutorService sweeper;
 
     /**
      * Constructor
+     *
+     * @param cacheProperties CacheProperties bean
+     * @param meterRegistry Registry the off-heap overflow count is published to
+     * @throws IOException When the off-heap tier cannot map its backing file
+     * @throws IllegalArgumentException When the off-heap capacity does not split into 2 to 256 segments per shard
      */
-    public CacheService() {
+    @Autowired
+    public CacheService(CacheProperties cacheProperties, MeterRegistry meterRegistry) throws IOException {
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(cacheProperties.getTtlMinutes());
+        this.overflow = meterRegistry.counter("cache.off_heap.overflow");
+        if (!cacheProperties.isOffHeapEnabled()) {
+            this.cache = Caffeine
+                    .newBuilder()
+                    .expireAfterWrite(
+                            cacheProperties.getTtlMinutes(),
+                            TimeUnit.MINUTES)
+                    .maximumSize(cacheProperties.getMaximumSize())
+                    .evictionListener((K key, V value, RemovalCause cause) -> evicted("heap", key, cause.name()))
+                    .build();
+            this.resident = null;
+            this.offHeapStore = null;
+            this.promote = false;
+            this.locks = null;
+            this.sweeper = null;
+            return;
+        }
+
+        // Promoted copies live for a short time only; every write goes through this service and refreshes them
         this.cache = Caffeine
                 .newBuilder()
                 .expireAfterWrite(
-                        15,
+                        Math.min(cacheProperties.getOffHeapPromoteTtlSeconds(), TimeUnit.MINUTES.toSeconds(cacheProperties.getTtlMinutes())),
+                        TimeUnit.SECONDS)
+                .maximumSize(cacheProperties.getOffHeapPromoteMaximumSize())
+                .evictionListener((K key, V value, RemovalCause cause) -> evicted("heap", key, cause.name()))
+                .build();
+        this.promote = cacheProperties.isOffHeapPromoteEnabled();
+        this.resident = Caffeine
+                .newBuilder()
+                .expireAfterWrite(
+                        cacheProperties.getTtlMinutes(),
                         TimeUnit.MINUTES)
-                .maximumSize(100)
+                .maximumSize(cacheProperties.getMaximumSize())
+                .evictionListener((K key, V value, RemovalCause cause) -> evicted("resident", key, cause.name()))
                 .build();
+
+        int segmentSize = cacheProperties.getOffHeapSegmentSizeKb() * 1024;
+        int shards = cacheProperties.getOffHeapShards();
+        long capacity = (long) cacheProperties.getOffHeapCapacityMb() * 1024 * 1024;
+        long segmentsPerShard = capacity / shards / segmentSize;
+        if (segmentsPerShard < 2 || segmentsPerShard > 256) {
+            // The ring of a shard holds 2 to 256 segments; any other split would silently change the capacity
+            throw new IllegalArgumentException(String.format(
+                    "entra.cache.off_heap.capacity_mb=%d split over %d shards of %d KB segments gives %d segments per shard,"
+                            + " outside 2 to 256; adjust capacity_mb, shards or segment_size_kb",
+                    cacheProperties.getOffHeapCapacityMb(), shards, cacheProperties.getOffHeapSegmentSizeKb(), segmentsPerShard));
+        }
+        long effectiveCapacity = shards * segmentsPerShard * segmentSize;
+        if (effectiveCapacity != capacity) {
+            log.warn("Off-heap capacity of {} MB rounded down to {} KB, a whole number of segments per shard",
+                    cacheProperties.getOffHeapCapacityMb(), effectiveCapacity / 1024);
+        }
+        String file = cacheProperties.getOffHeapFile();
+        this.offHeapStore = new OffHeapStore(
+                shards,
+                (int) segmentsPerShard,
+                segmentSize,
+                file == null || file.isBlank() ? null : Path.of(file),
+                OFF_HEAP_EVICTIONS);
+
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-off-heap-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = cacheProperties.getOffHeapSweepIntervalSeconds();
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.SECONDS);
+        log.info("Off-heap cache tier enabled: {} shards x {} segments x {} KB = {} KB",
+                shards, segmentsPerShard, cacheProperties.getOffHeapSegmentSizeKb(), effectiveCapacity / 1024);
+    }
+
+    // Evictions from every tier are recorded as flight recorder events when enabled.
+    // The eviction listener runs inline with the eviction and only for evictions, unlike a removal listener
+    private static void evicted(String tier, Object key, String cause) {
+        SessionEvictionEvent event = new SessionEvictionEvent();
+        if (event.shouldCommit()) {
+            event.tier = tier;
+            event.key = String.valueOf(key);
+            event.cause = cause;
+            event.commit();
+        }
     }
 
     /**
@@ -35,7 +167,26 @@ public class CacheService<K, V> {
      * @return The value cached by the provided key or null if key was not found
      */
     public V getIfPresent(K key) {
-        return cache.getIfPresent(key);
+        V value = cache.getIfPresent(key);
+        if (value != null || offHeapStore == null) {
+            return value;
+        }
+        value = resident.getIfPresent(key);
+        if (value != null || !(key instanceof String offHeapKey) || isToken(key)) {
+            return value;
+        }
+        if (!promote) {
+            return fromOffHeap(offHeapStore.get(offHeapKey));
+        }
+
+        // Promote under the key's lock so a concurrent write cannot be overtaken by a stale copy
+        synchronized (lock(key)) {
+            value = fromOffHeap(offHeapStore.get(offHeapKey));
+            if (value != null) {
+                cache.put(key, value);
+            }
+            return value;
+        }
     }
 
     /**
@@ -45,6 +196,101 @@ public class CacheService<K, V> {
      * @param value The value to cache
      */
     public void put(K key, V value) {
-        cache.put(key, value);
+        if (offHeapStore == null) {
+            cache.put(key, value);
+            return;
+        }
+        synchronized (lock(key)) {
+            store(key, value);
+        }
+    }
+
+    /**
+     * Atomically replace the value cached by the provided key if it still equals the expected value
+     *
+     * @param key The key to replace the value of
+     * @param expected The value expected to be cached
+     * @param value The new value
+     * @return true if the value was replaced. false otherwise
+     */
+    public boolean replace(K key, V expected, V value) {
+        if (offHeapStore == null) {
+            return cache.asMap().replace(key, expected, value);
+        }
+        synchronized (lock(key)) {
+            if (!Objects.equals(getIfPresent(key), expected)) {
+                return false;
+            }
+            store(key, value);
+            return true;
+        }
+    }
+
+    /**
+     * Remove the value cached by the provided key
+     *
+     * @param key The key to remove
+     */
+    public void invalidate(K key) {
+        if (offHeapStore == null) {
+            cache.invalidate(key);
+            return;
+        }
+        synchronized (lock(key)) {
+            cache.invalidate(key);
+            resident.invalidate(key);
+            if (key instanceof String offHeapKey) {
+                offHeapStore.remove(offHeapKey);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (offHeapStore != null) {
+            sweeper.shutdownNow();
+            offHeapStore.close();
+        }
+    }
+
+    private void sweep() {
+        try {
+            int removed = offHeapStore.sweep();
+            if (removed > 0) {
+                log.debug("Swept {} off-heap cache entries, {} remaining", removed, offHeapStore.size());
+            }
+        } catch (RuntimeException ex) {
+            log.error("Off-heap cache sweep failed", ex);
+        }
+    }
+
+    private void store(K key, V value) {
+        if (!isToken(key) && key instanceof String offHeapKey && value instanceof String offHeapValue) {
+            if (offHeapStore.put(offHeapKey, offHeapValue, System.currentTimeMillis() + ttlMillis)) {
+                // Keep a promoted copy coherent instead of dropping it
+                resident.invalidate(key);
+                cache.asMap().computeIfPresent(key, (k, v) -> value);
+                return;
+            }
+            log.warn("Entry too large for the off-heap tier, or the tier is full of live entries; keeping it on-heap");
+            overflow.increment();
+            offHeapStore.remove(offHeapKey);
+        }
+        resident.put(key, value);
+        cache.asMap().computeIfPresent(key, (k, v) -> value);
+    }
+
+    // Bearer tokens stay on-heap, out of a possibly file-backed off-heap tier
+    private static boolean isToken(Object key) {
+        return key instanceof String stringKey && stringKey.startsWith(TOKEN_KEY_PREFIX);
+    }
+
+    private Object lock(K key) {
+        return locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V fromOffHeap(String value) {
+        return (V) value;
     }
 }
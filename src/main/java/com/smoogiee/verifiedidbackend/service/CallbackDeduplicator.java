@@ -0,0 +1,83 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.CallbackProperties;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.smoogiee.verifiedidbackend.utils.ExpiringFingerprintSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to drop redelivered callbacks.
+ * Callbacks are keyed by (tenant, request type, state, requestStatus, payload hash). The payload
+ * hash covers the raw body, so a key costs one pass over the characters and no parsing beyond
+ * the state and requestStatus. A redelivery that was re-serialized differently is not recognized;
+ * it is applied again, which leaves a session in a terminal status unchanged.
+ */
+@Service
+public class CallbackDeduplicator {
+    private final boolean enabled;
+    private final ExpiringFingerprintSet seen;
+    private final Counter dropped;
+
+    /**
+     * Constructor
+     *
+     * @param callbackProperties Property bean containing callback processing configuration properties
+     * @param meterRegistry Registry the dropped duplicate count is published to
+     */
+    @Autowired
+    public CallbackDeduplicator(CallbackProperties callbackProperties, MeterRegistry meterRegistry) {
+        this.enabled = callbackProperties.isDedupEnabled();
+        this.seen = new ExpiringFingerprintSet(
+                TimeUnit.SECONDS.toNanos(callbackProperties.getDedupWindowSeconds()),
+                callbackProperties.getDedupGenerations());
+        this.dropped = meterRegistry.counter("callbacks.dedup.dropped");
+    }
+
+    /**
+     * Computes the deduplication key of a callback
+     *
+     * @param task The callback, as read by CallbackService.peek
+     * @return The deduplication key
+     */
+    public long key(CallbackTask task) {
+        long hash = ExpiringFingerprintSet.fingerprint(
+                task.getTenant(),
+                task.getRequestType(),
+                String.valueOf(task.getState()),
+                String.valueOf(task.getRequestStatus()));
+        return ExpiringFingerprintSet.finish(hash ^ task.getPayloadHash());
+    }
+
+    /**
+     * Checks whether a callback was already accepted within the deduplication window
+     *
+     * @param key The deduplication key
+     * @return true if the callback is a duplicate. false otherwise
+     */
+    public boolean isDuplicate(long key) {
+        if (enabled && seen.contains(key)) {
+            dropped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a callback as accepted
+     *
+     * @param key The deduplication key
+     * @return true if this is the first time the callback was accepted. false if a concurrent copy won
+     */
+    public boolean accept(long key) {
+        if (!enabled || seen.add(key)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+}
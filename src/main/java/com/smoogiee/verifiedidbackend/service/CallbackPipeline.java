@@ -0,0 +1,381 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.config.CallbackProperties;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.smoogiee.verifiedidbackend.utils.RingBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Service class used to apply acknowledged callbacks off the request thread.
+ * Callbacks are partitioned by state onto per-worker lock-free ring buffers, so
+ * callbacks for the same session are applied in arrival order. When a ring is
+ * full the callback is applied synchronously on the caller's thread instead.
+ * Idle workers park until a producer hands them work. A failed callback is retried
+ * with exponential backoff, and one that keeps failing is appended to a dead-letter
+ * file once its attempts are exhausted, since it has already been acknowledged and
+ * would otherwise be lost. Receipts are stripped from dead-lettered bodies unless
+ * sessions retain them.
+ * <p>
+ * On shutdown, only callbacks that nothing is applying are dead-lettered: those still
+ * queued and those waiting to be retried. A callback still being applied when the
+ * timeout elapses is logged instead, so a replay of the dead-letter file cannot apply
+ * it twice.
+ * <p>
+ * Workers do not wait for receipt verification: a callback whose issuer keys are still
+ * being resolved completes on the resolver's thread, while the worker moves on to the next
+ * callback. Only presentation_verified callbacks are verified, and terminal statuses are
+ * never left, so this cannot move a session backwards.
+ */
+@Slf4j
+@Service
+public class CallbackPipeline {
+    private final CallbackService callbackService;
+    private final SerializationService serializationService;
+    private final CallbackProperties callbackProperties;
+    private final List<Worker> workers;
+    private final Counter enqueued;
+    private final Counter processed;
+    private final Counter fallback;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter deadLettered;
+    private final Timer lag;
+    private final Map<Long, CallbackTask> inFlight;
+    private final Map<Long, CallbackTask> pendingRetries;
+    private final Queue<CallbackTask> unstarted;
+    private final ScheduledExecutorService retryScheduler;
+    private final AtomicLong sequence;
+    private volatile boolean running;
+    private volatile boolean abandoned;
+
+    /**
+     * Constructor
+     *
+     * @param callbackService A CallbackService bean used to apply callbacks
+     * @param serializationService A SerializationService bean used to write dead-lettered callbacks
+     * @param callbackProperties Property bean containing callback processing configuration properties
+     * @param meterRegistry Registry the pipeline backpressure metrics are published to
+     */
+    @Autowired
+    public CallbackPipeline(CallbackService callbackService,
+                            SerializationService serializationService,
+                            CallbackProperties callbackProperties,
+                            MeterRegistry meterRegistry) {
+        this.callbackService = callbackService;
+        this.serializationService = serializationService;
+        this.callbackProperties = callbackProperties;
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < callbackProperties.getPipelineWorkers(); i++) {
+            workers.add(new Worker(i, new RingBuffer<>(callbackProperties.getPipelineRingSize())));
+        }
+        this.enqueued = meterRegistry.counter("callbacks.pipeline.enqueued");
+        this.processed = meterRegistry.counter("callbacks.pipeline.processed");
+        this.fallback = meterRegistry.counter("callbacks.pipeline.sync_fallback");
+        this.retried = meterRegistry.counter("callbacks.pipeline.retried");
+        this.failed = meterRegistry.counter("callbacks.pipeline.failed");
+        this.deadLettered = meterRegistry.counter("callbacks.pipeline.dead_lettered");
+        this.lag = meterRegistry.timer("callbacks.pipeline.lag");
+        // Keyed by submission rather than by task, since applying a task mutates it
+        this.inFlight = new ConcurrentHashMap<>();
+        this.pendingRetries = new ConcurrentHashMap<>();
+        this.unstarted = new ConcurrentLinkedQueue<>();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "callback-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sequence = new AtomicLong();
+        Gauge.builder("callbacks.pipeline.depth", workers, w -> w.stream().mapToInt(worker -> worker.ring.size()).sum())
+                .register(meterRegistry);
+        Gauge.builder("callbacks.pipeline.capacity", workers, w -> w.stream().mapToInt(worker -> worker.ring.capacity()).sum())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!callbackProperties.isPipelineEnabled()) {
+            return;
+        }
+        if (callbackProperties.getPipelineMaxAttempts() < 1) {
+            throw new IllegalStateException("entra.callbacks.pipeline.max_attempts must be at least 1");
+        }
+        running = true;
+        workers.forEach(Worker::start);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(callbackProperties.getPipelineShutdownTimeoutMs());
+        try {
+            for (Worker worker : workers) {
+                worker.stop(deadline);
+            }
+            // Callbacks waiting on verification or on a retry complete off the workers
+            while ((!inFlight.isEmpty() || !pendingRetries.isEmpty()) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // Workers still busy finish the callback they are applying without starting another
+            abandoned = true;
+            for (Worker worker : workers) {
+                worker.stop(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(callbackProperties.getPipelineShutdownTimeoutMs()));
+            }
+        } catch (InterruptedException ex) {
+            abandoned = true;
+            Thread.currentThread().interrupt();
+        }
+        retryScheduler.shutdownNow();
+
+        // Only callbacks that nothing is applying are kept for replay
+        List<CallbackTask> remaining = new ArrayList<>(unstarted);
+        for (Long id : pendingRetries.keySet()) {
+            CallbackTask task = pendingRetries.remove(id);
+            if (task != null) {
+                remaining.add(task);
+            }
+        }
+        for (Worker worker : workers) {
+            if (worker.isAlive()) {
+                log.error("Callback worker {} did not stop, leaving {} queued callback(s) undelivered",
+                        worker.index, worker.ring.size());
+                continue;
+            }
+            worker.ring.drainTo(remaining, worker.ring.capacity());
+        }
+        if (!inFlight.isEmpty()) {
+            log.warn("{} callback(s) were still being applied when the shutdown timeout elapsed", inFlight.size());
+        }
+        if (!remaining.isEmpty()) {
+            deadLetter(remaining, "shutdown timeout elapsed");
+        }
+    }
+
+    /**
+     * Submits an acknowledged callback for processing
+     *
+     * @param task The callback to apply
+     */
+    public void submit(CallbackTask task) {
+        if (running) {
+            Worker worker = workers.get(Math.floorMod(task.getState().hashCode(), workers.size()));
+            if (worker.offer(task)) {
+                enqueued.increment();
+                return;
+            }
+        }
+
+        // Pipeline disabled or ring full: apply on the caller's thread
+        fallback.increment();
+        apply(task);
+    }
+
+    private void apply(CallbackTask task) {
+        long id = sequence.incrementAndGet();
+        inFlight.put(id, task);
+        apply(id, task, 1);
+    }
+
+    private void apply(long id, CallbackTask task, int attempt) {
+        CompletableFuture<Void> applied;
+        try {
+            applied = callbackService.process(task);
+        } catch (RuntimeException ex) {
+            applied = CompletableFuture.failedFuture(ex);
+        }
+        applied.whenComplete((ignored, ex) -> {
+            if (ex == null) {
+                processed.increment();
+                inFlight.remove(id);
+                return;
+            }
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            failed.increment();
+            if (attempt >= Math.max(1, callbackProperties.getPipelineMaxAttempts())) {
+                log.error("Failed to apply callback for state {} after {} attempt(s): {}",
+                        task.getState(), attempt, cause.getMessage());
+                // Removed first so a concurrent shutdown does not dead-letter it twice
+                if (inFlight.remove(id) != null) {
+                    deadLetter(List.of(task), cause.getMessage());
+                }
+                return;
+            }
+            retried.increment();
+            long delay = backoff(attempt);
+            log.warn("Retrying callback for state {} in {} ms after attempt {} failed: {}",
+                    task.getState(), delay, attempt, cause.getMessage());
+            // Out of flight while it waits, so a shutdown can dead-letter it without racing a retry
+            pendingRetries.put(id, task);
+            inFlight.remove(id);
+            try {
+                retryScheduler.schedule(() -> retry(id, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rejected) {
+                if (pendingRetries.remove(id) != null) {
+                    deadLetter(List.of(task), "shut down before retrying: " + cause.getMessage());
+                }
+            }
+        });
+    }
+
+    private void retry(long id, int attempt) {
+        // Removed first so a concurrent shutdown either dead-letters it or leaves it to this retry
+        CallbackTask task = pendingRetries.remove(id);
+        if (task == null) {
+            return;
+        }
+        inFlight.put(id, task);
+        apply(id, task, attempt);
+    }
+
+    private long backoff(int attempt) {
+        return callbackProperties.getPipelineInitialBackoffMs() << Math.min(attempt - 1, 16);
+    }
+
+    private void deadLetter(List<CallbackTask> tasks, String cause) {
+        log.error("Dead-lettering {} callback(s): {}", tasks.size(), cause);
+        synchronized (this) {
+            try (Writer writer = Files.newBufferedWriter(
+                    Paths.get(callbackProperties.getPipelineDeadLetterFile()),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                for (CallbackTask task : tasks) {
+                    serializationService.write(writer, redact(task));
+                    writer.write('\n');
+                }
+                deadLettered.increment(tasks.size());
+            } catch (IOException ex) {
+                log.error("Unable to write callback dead-letter file: {}", ex.getMessage());
+            }
+        }
+    }
+
+    // Receipts are only kept where sessions keep them, so a body that cannot be stripped is left out
+    private CallbackTask redact(CallbackTask task) {
+        if (callbackProperties.isProjectionRetainReceipts() || task.getBody() == null) {
+            return task;
+        }
+        CallbackTask redacted = new CallbackTask();
+        redacted.setTenant(task.getTenant());
+        redacted.setRequestType(task.getRequestType());
+        redacted.setState(task.getState());
+        redacted.setRequestStatus(task.getRequestStatus());
+        redacted.setRequestId(task.getRequestId());
+        redacted.setPayloadHash(task.getPayloadHash());
+        redacted.setReceivedAt(task.getReceivedAt());
+        try {
+            JsonNode body = serializationService.readTree(task.getBody());
+            if (body instanceof ObjectNode callback) {
+                callback.remove("receipt");
+                redacted.setBody(serializationService.write(callback));
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("Dropping the unreadable body of dead-lettered callback for state {}", task.getState());
+        }
+        return redacted;
+    }
+
+    /**
+     * A worker thread draining its own ring buffer. The worker announces that it is
+     * about to park and checks the ring once more before parking, and producers unpark
+     * it only when it has announced so, so no hand-off is missed and busy producers
+     * do not pay for an unpark per callback.
+     */
+    private class Worker {
+        private final int index;
+        private final RingBuffer<CallbackTask> ring;
+        private final AtomicBoolean sleeping;
+        private Thread thread;
+
+        Worker(int index, RingBuffer<CallbackTask> ring) {
+            this.index = index;
+            this.ring = ring;
+            this.sleeping = new AtomicBoolean();
+        }
+
+        void start() {
+            thread = new Thread(this::drain, "callback-worker-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop(long deadline) throws InterruptedException {
+            if (thread == null) {
+                return;
+            }
+            LockSupport.unpark(thread);
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+
+        boolean isAlive() {
+            return thread != null && thread.isAlive();
+        }
+
+        boolean offer(CallbackTask task) {
+            if (!ring.offer(task)) {
+                return false;
+            }
+            if (sleeping.get()) {
+                LockSupport.unpark(thread);
+            }
+            return true;
+        }
+
+        private void drain() {
+            int batchSize = callbackProperties.getPipelineBatchSize();
+            List<CallbackTask> batch = new ArrayList<>(batchSize);
+            while (!abandoned && (running || ring.size() > 0)) {
+                if (ring.drainTo(batch, batchSize) == 0) {
+                    sleeping.set(true);
+                    if (running && ring.size() == 0) {
+                        LockSupport.park(this);
+                    }
+                    sleeping.set(false);
+                    continue;
+                }
+                for (CallbackTask task : batch) {
+                    // Drained but never started, so still safe to dead-letter
+                    if (abandoned) {
+                        unstarted.add(task);
+                        continue;
+                    }
+                    lag.record(System.nanoTime() - task.getReceivedAt(), TimeUnit.NANOSECONDS);
+                    apply(task);
+                }
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.config.CallbackProperties;
+import com.smoogiee.verifiedidbackend.jfr.CallbackProcessingEvent;
+import com.smoogiee.verifiedidbackend.model.audit.AuditRecord;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.smoogiee.verifiedidbackend.model.jwt.JwtClaims;
+import com.smoogiee.verifiedidbackend.model.webhook.WebhookEvent;
+import com.smoogiee.verifiedidbackend.utils.ExpiringFingerprintSet;
+import com.smoogiee.verifiedidbackend.utils.JwtUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to validate and apply Verified ID callbacks.
+ * Validation only streams the top level of the callback body, so it is cheap
+ * enough to run before acknowledging. The full parse and the session state
+ * transition are applied afterwards by {@link CallbackPipeline}.
+ */
+@Slf4j
+@Service
+public class CallbackService {
+    private static final String PROCESS_TIMER = "callbacks.process";
+
+    // Valid issuance statuses
+    private static final Set<String> ISSUANCE_STATUS = Set.of(
+            "request_retrieved",
+            "issuance_successful",
+            "issuance_error");
+
+    // Valid presentation statuses
+    private static final Set<String> PRESENTATION_STATUS = Set.of(
+            "request_retrieved",
+            "presentation_verified",
+            "presentation_error");
+
+    // Valid selfie statuses
+    private static final Set<String> SELFIE_STATUS = Set.of(
+            "selfie_taken");
+
+    // Terminal statuses of a successful request
+    private static final Set<String> COMPLETED_STATUS = Set.of(
+            "issuance_successful",
+            "presentation_verified");
+
+    // Terminal statuses of a failed request
+    private static final Set<String> FAILED_STATUS = Set.of(
+            "issuance_error",
+            "presentation_error");
+
+    // Fields of each verifiedCredentialsData entry served by the status API
+    private static final Set<String> VERIFIED_CREDENTIALS_DATA_FIELDS = Set.of(
+            "issuer",
+            "type",
+            "claims",
+            "credentialState",
+            "domainValidation",
+            "issuanceDate",
+            "expirationDate");
+
+    private final ObjectMapper objectMapper;
+    private final SerializationService serializationService;
+    private final SessionService sessionService;
+    private final WebhookService webhookService;
+    private final CallbackProperties callbackProperties;
+    private final SignatureVerificationService signatureVerificationService;
+    private final FunnelService funnelService;
+    private final AuditService auditService;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper used for marshaling JSON objects
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param sessionService A SessionService bean used to update cached sessions
+     * @param webhookService A WebhookService bean used to notify downstream subscribers
+     * @param callbackProperties Property bean containing callback processing configuration properties
+     * @param signatureVerificationService A SignatureVerificationService bean used to verify presentation receipts
+     * @param funnelService A FunnelService bean used to record the session funnel
+     * @param auditService An AuditService bean used to keep the audit log of completed requests
+     * @param meterRegistry Registry the callback processing timings are published to
+     */
+    @Autowired
+    public CallbackService(ObjectMapper objectMapper,
+                           SerializationService serializationService,
+                           SessionService sessionService,
+                           WebhookService webhookService,
+                           CallbackProperties callbackProperties,
+                           SignatureVerificationService signatureVerificationService,
+                           FunnelService funnelService,
+                           AuditService auditService,
+                           MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.serializationService = serializationService;
+        this.sessionService = sessionService;
+        this.webhookService = webhookService;
+        this.callbackProperties = callbackProperties;
+        this.signatureVerificationService = signatureVerificationService;
+        this.funnelService = funnelService;
+        this.auditService = auditService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Reads the state and requestStatus of a callback body without building a tree or binding the full event.
+     * Parsing stops as soon as both are known, so a receipt after them is never tokenized. The payload is
+     * fingerprinted from its raw characters, which is a single pass with no tokenizing at all.
+     *
+     * @param tenant The tenant the callback belongs to
+     * @param requestType The request type set by the callback endpoint
+     * @param body The callback body
+     * @return A CallbackTask describing the callback
+     * @throws IOException When the body is not a JSON object
+     */
+    public CallbackTask peek(String tenant, String requestType, String body) throws IOException {
+        CallbackTask task = new CallbackTask();
+        task.setTenant(tenant);
+        task.setRequestType(requestType);
+        task.setBody(body);
+        task.setReceivedAt(System.nanoTime());
+        task.setPayloadHash(ExpiringFingerprintSet.fingerprint(body));
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Callback body is not a JSON object");
+            }
+            while ((task.getState() == null || task.getRequestStatus() == null)
+                    && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("state".equals(field) && value == JsonToken.VALUE_STRING) {
+                    task.setState(parser.getText());
+                } else if ("requestStatus".equals(field) && value == JsonToken.VALUE_STRING) {
+                    task.setRequestStatus(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Checks whether a request status is valid for a request type
+     *
+     * @param requestType The request type set by the callback endpoint
+     * @param requestStatus The request status sent by Microsoft
+     * @return true if the status is supported. false otherwise
+     */
+    public boolean isSupported(String requestType, String requestStatus) {
+        return switch (requestType) {
+            case "issuance" -> ISSUANCE_STATUS.contains(requestStatus);
+            case "presentation" -> PRESENTATION_STATUS.contains(requestStatus);
+            case "selfie" -> SELFIE_STATUS.contains(requestStatus);
+            default -> false;
+        };
+    }
+
+    /**
+     * Applies a callback to its cached session and notifies downstream subscribers.
+     * The callback body is parsed once and projected down to the fields the status
+     * API serves; the raw body and its receipts are not stored unless configured.
+     *
+     * @param task The callback to apply
+     * @return A future completing once the callback has been applied, without blocking on receipt
+     *         verification. Completes exceptionally when the callback body cannot be parsed
+     */
+    public CompletableFuture<Void> process(CallbackTask task) {
+        // Tagged with the status as received; unsupported statuses never reach this point
+        long start = System.nanoTime();
+        String requestStatus = task.getRequestStatus();
+        CallbackProcessingEvent event = new CallbackProcessingEvent();
+        event.begin();
+        CompletableFuture<Void> applied;
+        try {
+            Projection projection = project(task, event);
+            applied = verify(task, projection, event).thenAccept(fields -> apply(task, fields, projection.audit(), event));
+        } catch (IOException | RuntimeException ex) {
+            applied = CompletableFuture.failedFuture(ex);
+        }
+        return applied.whenComplete((ignored, ex) -> {
+            meterRegistry
+                    .timer(PROCESS_TIMER, "type", task.getRequestType(), "status", requestStatus)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.end();
+            if (event.shouldCommit()) {
+                event.state = task.getState();
+                event.requestType = task.getRequestType();
+                event.requestStatus = requestStatus;
+                event.queued = start - task.getReceivedAt();
+                event.commit();
+            }
+        });
+    }
+
+    // Verified receipts record their result in the projection; everything else is applied as is
+    private CompletableFuture<ObjectNode> verify(CallbackTask task, Projection projection, CallbackProcessingEvent event) {
+        if (projection.vpToken() == null
+                || !"presentation_verified".equals(task.getRequestStatus())
+                || !signatureVerificationService.isEnabled()) {
+            return CompletableFuture.completedFuture(projection.fields());
+        }
+        event.parsePath += "+verification";
+        return signatureVerificationService
+                .verify(task.getTenant(), projection.vpToken())
+                .thenApply(result -> projection.fields().put("verification", result.value()));
+    }
+
+    private void apply(CallbackTask task, ObjectNode projection, AuditRecord audit, CallbackProcessingEvent event) {
+
+        // An unverified receipt fails the presentation when verification is enforced
+        String verification = projection.path("verification").asText(null);
+        if (verification != null
+                && signatureVerificationService.isEnforced()
+                && !SignatureVerificationService.Result.VERIFIED.value().equals(verification)) {
+            log.warn("Receipt signature {} for state {}, failing the presentation", verification, task.getState());
+            task.setRequestStatus("presentation_error");
+            ObjectNode error = projection.putObject("error");
+            error.put("code", "signature_verification_failed");
+            error.put("message", "Receipt signature " + verification);
+        }
+
+        // Apply the transition atomically on the cached session
+        long now = System.currentTimeMillis();
+        JsonNode[] before = new JsonNode[2];
+        SessionService.Outcome outcome = sessionService.update(task.getState(), session -> {
+            // A callback received for another tenant never touches the session
+            if (!task.getTenant().equals(session.path("tenant").asText(null))) {
+                log.warn("Ignoring {} for state {}: session does not belong to tenant {}",
+                        task.getRequestStatus(), task.getState(), task.getTenant());
+                return null;
+            }
+
+            // Only the upstream request the session is bound to may move it; a losing hedge is ignored
+            String boundRequestId = session.path("requestId").asText(null);
+            if (boundRequestId != null && task.getRequestId() != null && !boundRequestId.equals(task.getRequestId())) {
+                log.info("Ignoring {} for state {}: request {} is not the bound request {}",
+                        task.getRequestStatus(), task.getState(), task.getRequestId(), boundRequestId);
+                return null;
+            }
+
+            // A late or redelivered callback must not move a session out of a terminal status
+            String currentStatus = session.path("status").asText();
+            if (SessionService.TERMINAL_STATUS.contains(currentStatus)) {
+                log.info("Ignoring {} for state {}: session is already {}",
+                        task.getRequestStatus(), task.getState(), currentStatus);
+                return null;
+            }
+            ObjectNode timestamps = session.withObjectProperty("timestamps");
+            before[0] = session.get("requestType");
+            before[1] = timestamps.deepCopy();
+            String stage = stage(task.getRequestStatus());
+            if (stage != null && !timestamps.has(stage)) {
+                timestamps.put(stage, now);
+            }
+            session.put("status", task.getRequestStatus());
+            session.setAll(projection);
+            return session;
+        });
+        event.outcome = outcome.name();
+        if (outcome == SessionService.Outcome.UNKNOWN) {
+            log.info("Unknown state: " + task.getState());
+            return;
+        }
+        if (outcome == SessionService.Outcome.APPLIED && before[0] != null) {
+            funnel(task, projection, before[0].asText(), (ObjectNode) before[1], now);
+        }
+
+        // Notify downstream subscribers. This only enqueues, so it never blocks the caller
+        if (outcome == SessionService.Outcome.APPLIED && webhookService.publishes(task.getRequestStatus())) {
+            webhookService.publish(webhookEvent(task, projection));
+        }
+
+        // Completed requests are appended to the audit log. This only enqueues as well
+        // The status and verification result are only known here, after enforcement may have failed the presentation
+        if (outcome == SessionService.Outcome.APPLIED && audit != null && auditService.records(task.getRequestStatus())) {
+            auditService.record(completed(audit, task.getRequestStatus(), verification, (ObjectNode) before[1], now));
+        }
+    }
+
+    // Lifecycle timestamp recorded by a status; selfie_taken is not a funnel stage
+    private static String stage(String requestStatus) {
+        if ("request_retrieved".equals(requestStatus)) {
+            return "retrieved";
+        }
+        if (COMPLETED_STATUS.contains(requestStatus)) {
+            return "completed";
+        }
+        if (FAILED_STATUS.contains(requestStatus)) {
+            return "failed";
+        }
+        return null;
+    }
+
+    private void funnel(CallbackTask task, ObjectNode projection, String requestType, ObjectNode timestamps, long now) {
+        String stage = stage(task.getRequestStatus());
+        long createdAt = timestamps.path("created").asLong(now);
+        if (stage == null || timestamps.has(stage)) {
+            return;
+        }
+        switch (stage) {
+            case "retrieved" -> funnelService.retrieved(task.getState(), requestType, createdAt, now);
+            case "completed" -> funnelService.completed(task.getState(), requestType, createdAt, now);
+            default -> funnelService.failed(task.getState(), requestType, createdAt, now,
+                    projection.path("error").path("code").asText(null));
+        }
+    }
+
+    private Projection project(CallbackTask task, CallbackProcessingEvent event) throws IOException {
+        JsonNode callback = serializationService.readTree(task.getBody());
+        event.parsePath = "projection";
+        ObjectNode projection = objectMapper.createObjectNode();
+        copyText(callback, "requestId", projection, "requestId");
+        task.setRequestId(projection.path("requestId").asText(null));
+        copyText(callback, "subject", projection, "subject");
+
+        JsonNode error = callback.path("error");
+        if (error.isObject()) {
+            ObjectNode projectedError = projection.putObject("error");
+            copyText(error, "code", projectedError, "code");
+            copyText(error, "message", projectedError, "message");
+        }
+
+        JsonNode verifiedCredentialsData = callback.path("verifiedCredentialsData");
+        if (verifiedCredentialsData.isArray() && !verifiedCredentialsData.isEmpty()) {
+            JsonNode first = verifiedCredentialsData.get(0);
+            ArrayNode payload = projection.putArray("payload");
+            for (JsonNode credential : verifiedCredentialsData) {
+                if (credential.isObject()) {
+                    payload.add(((ObjectNode) credential).retain(VERIFIED_CREDENTIALS_DATA_FIELDS));
+                }
+            }
+            projection.set("type", first.path("type"));
+            copyText(first, "issuanceDate", projection, "issuanceDate");
+            copyText(first, "expirationDate", projection, "expirationDate");
+        }
+
+        JsonNode receipt = callback.path("receipt");
+        String vpToken = receipt.path("vp_token").asText(null);
+        if (vpToken != null) {
+            // The jti comes from the first VC embedded in the VP; both tokens are streamed, not parsed into trees
+            event.parsePath = "projection+vp_token";
+            try {
+                JwtClaims vp = JwtUtils.readClaims(objectMapper.getFactory(), vpToken);
+                if (!vp.getVerifiableCredentials().isEmpty()) {
+                    JwtClaims vc = JwtUtils.readClaims(objectMapper.getFactory(), vp.getVerifiableCredentials().get(0));
+                    if (vc.getJti() != null) {
+                        projection.put("jti", vc.getJti());
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                log.error("Unable to read jti from vp_token for state {}: {}", task.getState(), ex.getMessage());
+            }
+        }
+
+        // Read before the projection is trimmed, so the audit log keeps fields the session does not store
+        AuditRecord audit = auditService.isEnabled() ? auditRecord(task, projection) : null;
+        projection.retain(callbackProperties.getProjectionFields());
+        if (callbackProperties.isProjectionRetainReceipts() && receipt.isObject()) {
+            projection.set("receipt", receipt);
+        }
+        return new Projection(projection, vpToken, audit);
+    }
+
+    /**
+     * The fields of a callback stored on its session, the receipt token still to be verified
+     * and the callback fields of its audit record, or null when auditing is disabled
+     */
+    private record Projection(ObjectNode fields, String vpToken, AuditRecord audit) {
+    }
+
+    private static void copyText(JsonNode source, String sourceField, ObjectNode target, String targetField) {
+        JsonNode value = source.get(sourceField);
+        if (value != null && !value.isNull()) {
+            target.put(targetField, value.asText());
+        }
+    }
+
+    private WebhookEvent webhookEvent(CallbackTask task, ObjectNode projection) {
+        WebhookEvent event = new WebhookEvent();
+        event.setId(task.getState());
+        event.setTenant(task.getTenant());
+        event.setRequestType(task.getRequestType());
+        event.setRequestId(projection.path("requestId").asText(null));
+        event.setRequestStatus(task.getRequestStatus());
+        event.setSubject(projection.path("subject").asText(null));
+        event.setVerifiedCredentialsData(projection.get("payload"));
+        event.setTimestamp(System.currentTimeMillis());
+        return event;
+    }
+
+    private static AuditRecord auditRecord(CallbackTask task, ObjectNode projection) {
+        AuditRecord record = new AuditRecord();
+        record.setId(task.getState());
+        record.setTenant(task.getTenant());
+        record.setRequestType(task.getRequestType());
+        record.setRequestId(projection.path("requestId").asText(null));
+        record.setSubject(projection.path("subject").asText(null));
+        record.setJti(projection.path("jti").asText(null));
+        record.setIssuer(projection.path("payload").path(0).path("issuer").asText(null));
+        record.setIssuanceDate(projection.path("issuanceDate").asText(null));
+        record.setExpirationDate(projection.path("expirationDate").asText(null));
+        return record;
+    }
+
+    private static AuditRecord completed(AuditRecord record,
+                                         String requestStatus,
+                                         String verification,
+                                         ObjectNode timestamps,
+                                         long now) {
+        record.setRequestStatus(requestStatus);
+        record.setVerification(verification);
+        if (timestamps.has("created")) {
+            record.setCreatedAt(timestamps.get("created").asLong());
+        }
+        if (timestamps.has("retrieved")) {
+            record.setRetrievedAt(timestamps.get("retrieved").asLong());
+        }
+        record.setCompletedAt(now);
+        return record;
+    }
+}
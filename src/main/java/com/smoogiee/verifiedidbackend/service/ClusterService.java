@@ -0,0 +1,280 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.ClusterProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Service class used to route sessions to the node that owns them, without a shared store.
+ * <p>
+ * Correlation ids generated by a node are prefixed with its node id. A node receiving a
+ * callback or status poll for a session owned by another member forwards the request to
+ * that member over a pooled connection and relays its response. Members come from static
+ * configuration, merged with a local discovery file that is reloaded when it changes.
+ * Forwarded requests are marked with the forwarding node and the cluster's shared secret,
+ * so they are never forwarded a second time. The mark is ignored on requests without the
+ * secret, so clients cannot use it to skip forwarding.
+ */
+@Slf4j
+@Service
+public class ClusterService {
+    public static final String FORWARDED_HEADER = "X-Cluster-Forwarded-By";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final char SEPARATOR = '.';
+    private static final Pattern NODE_ID = Pattern.compile("[A-Za-z0-9_-]+");
+    // Hop-by-hop and recomputed headers, never copied across a forwarded request or its response
+    private static final Set<String> UNFORWARDED_HEADERS = Set.of(
+            "host",
+            "connection",
+            "keep-alive",
+            "transfer-encoding",
+            "content-length",
+            "accept-encoding",
+            "upgrade",
+            "te",
+            "trailer");
+
+    private final ClusterProperties clusterProperties;
+    private final Map<String, String> staticMembers;
+    private volatile Map<String, String> members;
+    private volatile long discoveryModified;
+    private volatile long discoveryCheckedAt;
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+
+    /**
+     * Constructor
+     *
+     * @param clusterProperties Property bean containing cluster configuration properties
+     */
+    @Autowired
+    public ClusterService(ClusterProperties clusterProperties) {
+        this.clusterProperties = clusterProperties;
+        this.staticMembers = parseMembers(List.of(clusterProperties.getMembers()));
+        this.members = staticMembers;
+        this.discoveryModified = -1;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!clusterProperties.isEnabled()) {
+            return;
+        }
+        if (!NODE_ID.matcher(clusterProperties.getNodeId()).matches()) {
+            throw new IllegalStateException("entra.cluster.node_id must be set to letters, digits, '-' or '_' when clustering is enabled");
+        }
+        if (clusterProperties.getSecret().isEmpty()) {
+            throw new IllegalStateException("entra.cluster.secret must be set when clustering is enabled");
+        }
+        connectionProvider = ConnectionProvider
+                .builder("cluster")
+                .maxConnections(clusterProperties.getMaxConnections())
+                .build();
+        webClient = WebClient
+                .builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient
+                        .create(connectionProvider)
+                        .responseTimeout(Duration.ofMillis(clusterProperties.getForwardTimeoutMs()))))
+                .build();
+        refreshMembers();
+        log.info("Cluster node {} started with {} member(s)", clusterProperties.getNodeId(), members.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (connectionProvider != null) {
+            connectionProvider.disposeLater().subscribe();
+        }
+    }
+
+    /**
+     * Generates a new correlation id, owned by this node
+     *
+     * @return The correlation id
+     */
+    public String newCorrelationId() {
+        String uuid = UUID.randomUUID().toString();
+        if (!clusterProperties.isEnabled()) {
+            return uuid;
+        }
+        return clusterProperties.getNodeId() + SEPARATOR + uuid;
+    }
+
+    /**
+     * Gets the base URL of the member a request must be forwarded to
+     *
+     * @param request The request received
+     * @param correlationId The correlation id of the session the request is for
+     * @return The base URL of the owning member, or null if the request is handled locally
+     */
+    public String forwardTarget(HttpServletRequest request, String correlationId) {
+        if (!clusterProperties.isEnabled() || correlationId == null || isForwarded(request)) {
+            return null;
+        }
+        int separator = correlationId.indexOf(SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        String owner = correlationId.substring(0, separator);
+        if (owner.equals(clusterProperties.getNodeId())) {
+            return null;
+        }
+        refreshMembers();
+        String target = members.get(owner);
+        if (target == null) {
+            log.warn("Session {} is owned by unknown node {}", correlationId, owner);
+        }
+        return target;
+    }
+
+    /**
+     * Forwards a request to another member and relays its response
+     *
+     * @param target The base URL of the member
+     * @param request The request received
+     * @param body The request body, or null if it has none
+     * @param responseType The type the response body is relayed as
+     * @return A ResponseEntity object carrying the member's response, or 502 if the member could not be reached
+     */
+    public <T> ResponseEntity<T> forward(String target,
+                                         HttpServletRequest request,
+                                         String body,
+                                         Class<? extends T> responseType) {
+        String query = request.getQueryString();
+        String uri = target + request.getRequestURI() + (query == null ? "" : "?" + query);
+        try {
+            WebClient.RequestBodySpec spec = webClient
+                    .method(HttpMethod.valueOf(request.getMethod()))
+                    .uri(uri)
+                    .headers(headers -> {
+                        for (String name : Collections.list(request.getHeaderNames())) {
+                            if (!UNFORWARDED_HEADERS.contains(name.toLowerCase())) {
+                                headers.put(name, Collections.list(request.getHeaders(name)));
+                            }
+                        }
+                        headers.set(FORWARDED_HEADER, clusterProperties.getNodeId());
+                        headers.set(SECRET_HEADER, clusterProperties.getSecret());
+                    });
+            if (body != null) {
+                spec.body(BodyInserters.fromValue(body));
+            }
+            ResponseEntity<? extends T> response = spec
+                    .exchangeToMono(clientResponse -> clientResponse.toEntity(responseType))
+                    .block(Duration.ofMillis(clusterProperties.getForwardTimeoutMs()));
+            if (response == null) {
+                throw new IllegalStateException("No response");
+            }
+
+            HttpHeaders responseHeaders = new HttpHeaders();
+            response.getHeaders().forEach((name, values) -> {
+                if (!UNFORWARDED_HEADERS.contains(name.toLowerCase())) {
+                    responseHeaders.put(name, values);
+                }
+            });
+            return ResponseEntity
+                    .status(response.getStatusCode())
+                    .headers(responseHeaders)
+                    .body(response.getBody());
+        } catch (RuntimeException ex) {
+            log.error("Unable to forward {} to {}: {}", request.getRequestURI(), target, ex.getMessage());
+            return ResponseEntity
+                    .status(HttpStatus.BAD_GATEWAY)
+                    .build();
+        }
+    }
+
+    // Only a member knows the secret, so only a member's mark is honored
+    private boolean isForwarded(HttpServletRequest request) {
+        String forwardedBy = request.getHeader(FORWARDED_HEADER);
+        if (forwardedBy == null) {
+            return false;
+        }
+        String secret = request.getHeader(SECRET_HEADER);
+        if (secret != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8),
+                clusterProperties.getSecret().getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        log.warn("Ignoring {} header without the cluster secret from {}", FORWARDED_HEADER, request.getRemoteAddr());
+        return false;
+    }
+
+    private void refreshMembers() {
+        String discoveryFile = clusterProperties.getDiscoveryFile();
+        long now = System.currentTimeMillis();
+        if (discoveryFile.isEmpty()
+                || now - discoveryCheckedAt < TimeUnit.SECONDS.toMillis(clusterProperties.getDiscoveryRefreshSeconds())) {
+            return;
+        }
+        synchronized (this) {
+            if (now - discoveryCheckedAt < TimeUnit.SECONDS.toMillis(clusterProperties.getDiscoveryRefreshSeconds())) {
+                return;
+            }
+            discoveryCheckedAt = now;
+            Path path = Path.of(discoveryFile);
+            try {
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                if (modified == discoveryModified) {
+                    return;
+                }
+                // Discovered members take precedence over static members with the same node id
+                Map<String, String> discovered = new HashMap<>(staticMembers);
+                discovered.putAll(parseMembers(Files.readAllLines(path)));
+                members = Map.copyOf(discovered);
+                discoveryModified = modified;
+                log.info("Loaded {} cluster member(s) from {}", members.size(), discoveryFile);
+            } catch (IOException ex) {
+                // The last known members stay in use until the file can be read again
+                log.warn("Unable to read cluster discovery file {}: {}", discoveryFile, ex.getMessage());
+            }
+        }
+    }
+
+    private static Map<String, String> parseMembers(List<String> entries) {
+        Map<String, String> parsed = new HashMap<>();
+        for (String entry : entries) {
+            String member = entry.strip();
+            if (member.isEmpty() || member.startsWith("#")) {
+                continue;
+            }
+            int separator = member.indexOf('=');
+            String nodeId = separator > 0 ? member.substring(0, separator).strip() : "";
+            if (!NODE_ID.matcher(nodeId).matches()) {
+                log.warn("Ignoring cluster member entry {}", member);
+                continue;
+            }
+            String url = member.substring(separator + 1).strip();
+            parsed.put(nodeId, url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+        }
+        return Map.copyOf(parsed);
+    }
+}
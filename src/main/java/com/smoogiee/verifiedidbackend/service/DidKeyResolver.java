@@ -0,0 +1,183 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import com.smoogiee.verifiedidbackend.utils.JwtUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Key resolver reading keys from DID documents and JWKS endpoints.
+ * did:web is resolved from the issuer's domain, HTTPS URLs are read as JWKS and
+ * any other DID method through the configured universal resolver.
+ * <p>
+ * Issuers come from untrusted receipts, so keys are only fetched over HTTPS from
+ * allow-listed hosts: the universal resolver, the domains of the trusted issuers
+ * and tenant DID authorities, and entra.verification.allowed_hosts. Redirects are
+ * not followed. Fetches are non-blocking and complete on the client's event loop.
+ */
+@Slf4j
+@Service
+public class DidKeyResolver implements KeyResolver {
+    private static final Pattern DID_PATTERN = Pattern.compile("did:[a-z0-9]+:[A-Za-z0-9._:%-]+");
+
+    private final ObjectMapper objectMapper;
+    private final VerificationProperties verificationProperties;
+    private final Set<String> allowedHosts;
+    private final WebClient webClient;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper used for reading DID documents
+     * @param verificationProperties Property bean containing signature verification configuration properties
+     * @param tenantService A TenantService bean used to look up the tenants' DID authorities
+     */
+    @Autowired
+    public DidKeyResolver(ObjectMapper objectMapper,
+                          VerificationProperties verificationProperties,
+                          TenantService tenantService) {
+        this.objectMapper = objectMapper;
+        this.verificationProperties = verificationProperties;
+        this.allowedHosts = allowedHosts(verificationProperties, tenantService.didAuthorities());
+        this.webClient = WebClient.builder().build();
+    }
+
+    @Override
+    public String getName() {
+        return "did";
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PublicKey>> resolve(String issuer) {
+        URI target;
+        try {
+            target = URI.create(url(issuer));
+            if (!"https".equals(target.getScheme())
+                    || target.getHost() == null
+                    || !allowedHosts.contains(target.getHost().toLowerCase(Locale.ROOT))) {
+                throw new IOException("Host of " + target + " is not allow-listed");
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        boolean jwks = issuer.startsWith("https://");
+        return webClient
+                .get()
+                .uri(target)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(verificationProperties.getTimeoutMs()))
+                .switchIfEmpty(Mono.error(() -> new IOException("Empty response from " + target)))
+                .map(body -> {
+                    try {
+                        JsonNode document = objectMapper.readTree(body);
+                        if (jwks) {
+                            return keys(document.path("keys"), "kid");
+                        }
+                        if (document.has("didDocument")) {
+                            document = document.get("didDocument");
+                        }
+                        return keys(document.path("verificationMethod"), "id");
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                })
+                .toFuture();
+    }
+
+    private String url(String issuer) throws IOException {
+        if (issuer.startsWith("https://")) {
+            return issuer;
+        }
+        if (issuer.startsWith("did:web:")) {
+            return didWebUrl(issuer);
+        }
+        // Only well-formed DIDs are appended, so an issuer cannot alter the resolver path or query
+        if (DID_PATTERN.matcher(issuer).matches() && !verificationProperties.getDidResolverUrl().isBlank()) {
+            return verificationProperties.getDidResolverUrl() + issuer;
+        }
+        throw new IOException("Unsupported issuer: " + issuer);
+    }
+
+    /**
+     * Maps did:web:example.com:user to https://example.com/user/did.json
+     */
+    private static String didWebUrl(String did) {
+        String[] parts = did.substring("did:web:".length()).split(":");
+        StringBuilder url = new StringBuilder("https://")
+                .append(URLDecoder.decode(parts[0], StandardCharsets.UTF_8));
+        if (parts.length == 1) {
+            url.append("/.well-known");
+        }
+        for (int i = 1; i < parts.length; i++) {
+            url.append('/').append(URLDecoder.decode(parts[i], StandardCharsets.UTF_8));
+        }
+        return url.append("/did.json").toString();
+    }
+
+    private static Set<String> allowedHosts(VerificationProperties verificationProperties, Set<String> didAuthorities) {
+        Set<String> hosts = new HashSet<>();
+        for (String host : verificationProperties.getAllowedHosts()) {
+            if (!host.isBlank()) {
+                hosts.add(host.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        List<String> sources = new ArrayList<>(didAuthorities);
+        sources.addAll(List.of(verificationProperties.getTrustedIssuers()));
+        sources.add(verificationProperties.getDidResolverUrl());
+        for (String source : sources) {
+            String url = source.startsWith("did:web:") ? didWebUrl(source) : source;
+            if (url.startsWith("https://")) {
+                try {
+                    String host = URI.create(url).getHost();
+                    if (host != null) {
+                        hosts.add(host.toLowerCase(Locale.ROOT));
+                    }
+                } catch (IllegalArgumentException ex) {
+                    log.warn("Ignoring malformed issuer {}: {}", source, ex.getMessage());
+                }
+            }
+        }
+        return hosts;
+    }
+
+    private static Map<String, PublicKey> keys(JsonNode entries, String idField) {
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode entry : entries) {
+            JsonNode jwk = entry.has("publicKeyJwk") ? entry.get("publicKeyJwk") : entry;
+            String id = entry.path(idField).asText();
+            try {
+                keys.put(id.substring(id.indexOf('#') + 1), JwtUtils.publicKey(jwk));
+            } catch (GeneralSecurityException | RuntimeException ex) {
+                log.debug("Skipping unusable key {}: {}", id, ex.getMessage());
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,73 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import com.smoogiee.verifiedidbackend.utils.JwtUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Key resolver reading keys from a local JSON file mapping each issuer to a JWKS,
+ * e.g. {"did:web:example.com": {"keys": [{"kid": "key-1", "kty": "EC", ...}]}}.
+ * Used as a stand-in for DID resolution in tests and offline environments.
+ */
+@Slf4j
+@Service
+public class FileKeyResolver implements KeyResolver {
+    private final ObjectMapper objectMapper;
+    private final VerificationProperties verificationProperties;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper used for reading the key file
+     * @param verificationProperties Property bean containing signature verification configuration properties
+     */
+    @Autowired
+    public FileKeyResolver(ObjectMapper objectMapper, VerificationProperties verificationProperties) {
+        this.objectMapper = objectMapper;
+        this.verificationProperties = verificationProperties;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PublicKey>> resolve(String issuer) {
+        // Reading a local file is quick enough to do on the caller's thread
+        try {
+            return CompletableFuture.completedFuture(read(issuer));
+        } catch (IOException | RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private Map<String, PublicKey> read(String issuer) throws IOException {
+        // Re-read on every resolution so edits are picked up on the next cache refresh
+        JsonNode jwks = objectMapper.readTree(Path.of(verificationProperties.getKeyFile()).toFile()).get(issuer);
+        if (jwks == null) {
+            throw new IOException("Unknown issuer: " + issuer);
+        }
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            try {
+                keys.put(jwk.path("kid").asText(), JwtUtils.publicKey(jwk));
+            } catch (GeneralSecurityException ex) {
+                log.debug("Skipping unusable key {}: {}", jwk.path("kid").asText(), ex.getMessage());
+            }
+        }
+        return keys;
+    }
+}
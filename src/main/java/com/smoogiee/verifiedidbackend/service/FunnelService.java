@@ -0,0 +1,281 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.CacheProperties;
+import com.smoogiee.verifiedidbackend.config.FunnelProperties;
+import com.smoogiee.verifiedidbackend.utils.SlidingWindowCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to publish the request session funnel: how long users take to scan the
+ * QR code and to complete the request, and how many sessions end abandoned or in error.
+ * <p>
+ * Durations are published as timers. Counts and rates are aggregated over a sliding window
+ * of fixed buckets, so memory stays constant however many sessions go through. Sessions
+ * that have not ended are tracked up to a configured bound; a session that expires with its
+ * upstream request, or is still open when its cache entry expires, is counted as abandoned,
+ * before or after the QR code was scanned.
+ */
+@Slf4j
+@Service
+public class FunnelService {
+    private static final String OTHER_CODE = "other";
+
+    /**
+     * Request types the funnel is published for
+     */
+    public static final String ISSUANCE = "issuance";
+    public static final String PRESENTATION = "presentation";
+
+    private final FunnelProperties funnelProperties;
+    private final MeterRegistry meterRegistry;
+    private final long ttlMillis;
+    private final Map<String, Window> windows;
+    private final Map<String, OpenSession> openSessions;
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Constructor
+     *
+     * @param funnelProperties Property bean containing funnel metrics configuration properties
+     * @param cacheProperties Property bean containing the session cache configuration properties
+     * @param meterRegistry Registry the funnel metrics are published to
+     */
+    @Autowired
+    public FunnelService(FunnelProperties funnelProperties,
+                         CacheProperties cacheProperties,
+                         MeterRegistry meterRegistry) {
+        this.funnelProperties = funnelProperties;
+        this.meterRegistry = meterRegistry;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(cacheProperties.getTtlMinutes());
+        this.windows = Map.of(
+                ISSUANCE, new Window(ISSUANCE),
+                PRESENTATION, new Window(PRESENTATION));
+        this.openSessions = new ConcurrentHashMap<>();
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "funnel-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, funnelProperties.getWindowSeconds() / funnelProperties.getBuckets());
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Records the creation of a session. Sessions of other request types are ignored.
+     *
+     * @param correlationId The correlation id of the request
+     * @param requestType The request type
+     * @param createdAt The creation time in epoch milliseconds
+     */
+    public void created(String correlationId, String requestType, long createdAt) {
+        Window window = windows.get(requestType);
+        if (window == null) {
+            return;
+        }
+        window.created.increment(createdAt);
+        if (openSessions.size() < funnelProperties.getMaxOpenSessions()) {
+            openSessions.put(correlationId, new OpenSession(requestType, createdAt + ttlMillis));
+        } else {
+            log.debug("Funnel is tracking {} open sessions, not tracking {}", openSessions.size(), correlationId);
+        }
+    }
+
+    /**
+     * Records the first scan of the QR code of a session
+     *
+     * @param correlationId The correlation id of the request
+     * @param requestType The request type
+     * @param createdAt The creation time in epoch milliseconds
+     * @param retrievedAt The retrieval time in epoch milliseconds
+     */
+    public void retrieved(String correlationId, String requestType, long createdAt, long retrievedAt) {
+        Window window = windows.get(requestType);
+        if (window == null) {
+            return;
+        }
+        window.retrieved.increment(retrievedAt);
+        meterRegistry
+                .timer("funnel.time_to_scan", "type", requestType)
+                .record(retrievedAt - createdAt, TimeUnit.MILLISECONDS);
+
+        // The session cache entry is rewritten, which restarts its time to live
+        openSessions.computeIfPresent(correlationId, (key, open) -> open.scanned(retrievedAt + ttlMillis));
+    }
+
+    /**
+     * Records that a session completed successfully
+     *
+     * @param correlationId The correlation id of the request
+     * @param requestType The request type
+     * @param createdAt The creation time in epoch milliseconds
+     * @param completedAt The completion time in epoch milliseconds
+     */
+    public void completed(String correlationId, String requestType, long createdAt, long completedAt) {
+        Window window = windows.get(requestType);
+        if (window == null) {
+            return;
+        }
+        openSessions.remove(correlationId);
+        window.completed.increment(completedAt);
+        meterRegistry
+                .timer("funnel.time_to_complete", "type", requestType, "outcome", "completed")
+                .record(completedAt - createdAt, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that a session ended in error
+     *
+     * @param correlationId The correlation id of the request
+     * @param requestType The request type
+     * @param createdAt The creation time in epoch milliseconds
+     * @param failedAt The time of the error in epoch milliseconds
+     * @param code The error code, or null if the callback carried none
+     */
+    public void failed(String correlationId, String requestType, long createdAt, long failedAt, String code) {
+        Window window = windows.get(requestType);
+        if (window == null) {
+            return;
+        }
+        openSessions.remove(correlationId);
+        window.failed.increment(failedAt);
+        window.errorCode(code == null || code.isBlank() ? "unknown" : code).increment(failedAt);
+        meterRegistry
+                .timer("funnel.time_to_complete", "type", requestType, "outcome", "failed")
+                .record(failedAt - createdAt, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that a session expired before it ended
+     *
+     * @param correlationId The correlation id of the request
+     */
+    public void expired(String correlationId) {
+        OpenSession open = openSessions.remove(correlationId);
+        if (open != null) {
+            abandon(open, System.currentTimeMillis());
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            openSessions.entrySet().removeIf(entry -> {
+                if (entry.getValue().expiresAt() > now) {
+                    return false;
+                }
+                abandon(entry.getValue(), now);
+                return true;
+            });
+        } catch (RuntimeException ex) {
+            log.error("Funnel sweep failed", ex);
+        }
+    }
+
+    private void abandon(OpenSession open, long now) {
+        Window window = windows.get(open.requestType());
+        if (open.scanned()) {
+            window.abandonedAfterScan.increment(now);
+        } else {
+            window.abandonedBeforeScan.increment(now);
+        }
+    }
+
+    private SlidingWindowCounter counter() {
+        return new SlidingWindowCounter(
+                TimeUnit.SECONDS.toMillis(funnelProperties.getWindowSeconds()),
+                funnelProperties.getBuckets());
+    }
+
+    private record OpenSession(String requestType, long expiresAt, boolean scanned) {
+        OpenSession(String requestType, long expiresAt) {
+            this(requestType, expiresAt, false);
+        }
+
+        OpenSession scanned(long expiresAt) {
+            return new OpenSession(requestType, expiresAt, true);
+        }
+    }
+
+    /**
+     * Sliding window counters of one request type, published as gauges
+     */
+    private final class Window {
+        private final String requestType;
+        private final SlidingWindowCounter created = counter();
+        private final SlidingWindowCounter retrieved = counter();
+        private final SlidingWindowCounter completed = counter();
+        private final SlidingWindowCounter failed = counter();
+        private final SlidingWindowCounter abandonedBeforeScan = counter();
+        private final SlidingWindowCounter abandonedAfterScan = counter();
+        private final Map<String, SlidingWindowCounter> errorCodes = new ConcurrentHashMap<>();
+
+        Window(String requestType) {
+            this.requestType = requestType;
+            stage("created", created);
+            stage("retrieved", retrieved);
+            stage("completed", completed);
+            stage("failed", failed);
+            stage("abandoned_before_scan", abandonedBeforeScan);
+            stage("abandoned_after_scan", abandonedAfterScan);
+            Gauge.builder("funnel.abandonment_rate", this, w -> w.rate(
+                            w.abandonedBeforeScan.sum(now()) + w.abandonedAfterScan.sum(now())))
+                    .tags("type", requestType)
+                    .register(meterRegistry);
+            Gauge.builder("funnel.error_rate", this, w -> w.rate(w.failed.sum(now())))
+                    .tags("type", requestType)
+                    .register(meterRegistry);
+        }
+
+        SlidingWindowCounter errorCode(String code) {
+            SlidingWindowCounter counter = errorCodes.get(code);
+            if (counter != null) {
+                return counter;
+            }
+
+            // Error codes come from upstream, so the number of distinct codes published is bounded
+            String key = errorCodes.size() < funnelProperties.getMaxErrorCodes() ? code : OTHER_CODE;
+            return errorCodes.computeIfAbsent(key, k -> {
+                SlidingWindowCounter codeCounter = counter();
+                Gauge.builder("funnel.error_rate.by_code", codeCounter, c -> rate(c.sum(now())))
+                        .tags("type", requestType, "code", k)
+                        .register(meterRegistry);
+                return codeCounter;
+            });
+        }
+
+        // Share of the sessions that ended in the window
+        double rate(long count) {
+            long now = now();
+            long ended = completed.sum(now) + failed.sum(now)
+                    + abandonedBeforeScan.sum(now) + abandonedAfterScan.sum(now);
+            return ended == 0 ? 0 : (double) count / ended;
+        }
+
+        private void stage(String stage, SlidingWindowCounter counter) {
+            Gauge.builder("funnel.sessions", counter, c -> c.sum(now()))
+                    .tags("type", requestType, "stage", stage)
+                    .register(meterRegistry);
+        }
+
+        private static long now() {
+            return System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.HedgingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Service class used to hedge upstream calls against slow responses.
+ * <p>
+ * When a call has not completed after the configured percentile of its recent latencies,
+ * a second identical call is sent. The first of the two to return a response wins and the other
+ * is cancelled; an error only decides the outcome once neither call can return a response, and
+ * it is then the primary's error. A primary that fails before the hedge is due is not hedged.
+ * Only completed calls are sampled, so cancelled losers do not pull the hedge delay down.
+ * Hedges are paid for from a budget that every call tops up by a percentage,
+ * so hedging never adds more than that share of upstream traffic, plus a small burst.
+ */
+@Slf4j
+@Service
+public class HedgingService {
+    private static final String HEDGE_COUNTER = "verifiedid.hedge";
+    private static final long MILLI_TOKENS = 1000;
+    private static final long MAX_MILLI_TOKENS = 10 * MILLI_TOKENS;
+
+    private final HedgingProperties hedgingProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LatencySamples> latencies;
+    private final AtomicLong budget;
+
+    /**
+     * Constructor
+     *
+     * @param hedgingProperties Property bean containing upstream hedging configuration properties
+     * @param meterRegistry Registry the hedge counts are published to
+     */
+    @Autowired
+    public HedgingService(HedgingProperties hedgingProperties, MeterRegistry meterRegistry) {
+        this.hedgingProperties = hedgingProperties;
+        this.meterRegistry = meterRegistry;
+        this.latencies = new ConcurrentHashMap<>();
+        this.budget = new AtomicLong();
+    }
+
+    /**
+     * Executes an upstream call, hedging it when enabled
+     *
+     * @param operation The upstream operation, used to keep latencies and counts apart
+     * @param call Supplier of the upstream call; each Mono it returns sends its own request
+     * @return The response of the winning call
+     */
+    public <T> T execute(String operation, Supplier<Mono<T>> call) {
+        if (!hedgingProperties.isEnabled()) {
+            return call.get().block();
+        }
+
+        LatencySamples samples = latencies.computeIfAbsent(operation, k -> new LatencySamples(hedgingProperties.getSamples()));
+        deposit();
+        Mono<T> primary = timed(call.get(), samples);
+        if (samples.count() < hedgingProperties.getMinSamples()) {
+            return primary.block();
+        }
+        long delay = Math.max(hedgingProperties.getMinDelayMs(),
+                Math.min(hedgingProperties.getMaxDelayMs(), samples.percentile(hedgingProperties.getPercentile())));
+
+        // A hedge the budget cannot pay for completes empty, so the primary alone decides the outcome
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        Mono<Attempt<T>> first = primary
+                .map(response -> new Attempt<>(response, false))
+                .doOnError(ex -> {
+                    primaryError.set(ex);
+                    primaryFailed.tryEmitValue(true);
+                });
+        Mono<Attempt<T>> hedge = Mono
+                .delay(Duration.ofMillis(delay))
+                .takeUntilOther(primaryFailed.asMono())
+                .flatMap(tick -> {
+                    if (!withdraw()) {
+                        count(operation, "denied");
+                        return Mono.empty();
+                    }
+                    count(operation, "sent");
+                    log.debug("Hedging {} after {} ms", operation, delay);
+                    return call.get().map(response -> new Attempt<>(response, true));
+                });
+        Attempt<T> winner;
+        try {
+            winner = Mono.firstWithValue(first, hedge).block();
+        } catch (RuntimeException ex) {
+            // Neither call returned a response: surface the primary's error, or its empty response
+            Throwable error = primaryError.get();
+            if (error == null) {
+                return null;
+            }
+            throw Exceptions.propagate(error);
+        }
+        if (winner == null) {
+            return null;
+        }
+        if (winner.hedge()) {
+            count(operation, "won");
+        }
+        return winner.response();
+    }
+
+    private <T> Mono<T> timed(Mono<T> call, LatencySamples samples) {
+        // Only completed calls are sampled; a cancelled loser's partial time would understate the latency
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doFinally(signal -> {
+                if (signal == SignalType.ON_COMPLETE) {
+                    samples.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            });
+        });
+    }
+
+    private void deposit() {
+        long deposit = (long) (hedgingProperties.getBudgetPercent() * MILLI_TOKENS / 100);
+        budget.getAndUpdate(tokens -> Math.min(MAX_MILLI_TOKENS, tokens + deposit));
+    }
+
+    private boolean withdraw() {
+        long tokens;
+        do {
+            tokens = budget.get();
+            if (tokens < MILLI_TOKENS) {
+                return false;
+            }
+        } while (!budget.compareAndSet(tokens, tokens - MILLI_TOKENS));
+        return true;
+    }
+
+    private void count(String operation, String result) {
+        meterRegistry.counter(HEDGE_COUNTER, "operation", operation, "result", result).increment();
+    }
+
+    private record Attempt<T>(T response, boolean hedge) {
+    }
+
+    /**
+     * Ring of the most recent latencies of an operation
+     */
+    private static final class LatencySamples {
+        private final long[] samples;
+        private long count;
+
+        LatencySamples(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void add(long latency) {
+            samples[(int) (count++ % samples.length)] = latency;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized long percentile(double percentile) {
+            int size = (int) Math.min(count, samples.length);
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.max(0, Math.min(size - 1, Math.ceil(percentile / 100 * size) - 1))];
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.smoogiee.verifiedidbackend.config.CoalescingProperties;
+import com.smoogiee.verifiedidbackend.exception.AuthenticationException;
+import com.smoogiee.verifiedidbackend.exception.IdempotencyConflictException;
+import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
+import com.smoogiee.verifiedidbackend.model.verifiedid.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to coalesce duplicate issuance requests.
+ * <p>
+ * Double clicks and front-end retries resubmit the same claims. Within the coalescing window,
+ * such duplicates are answered with the response of the first request, with its correlation
+ * id and PIN, instead of creating another upstream request and session. Requests are matched
+ * on a client supplied idempotency key or, without one, on a hash of the claims. Either way the
+ * key is scoped to the caller, identified by its credentials or else by its address and user
+ * agent, so one caller's response and PIN are never handed to another. An idempotency key
+ * reused with different claims is rejected rather than answered with the first response.
+ * Concurrent duplicates wait for the single request in flight. A response is only reused
+ * while its session is pending, and failures are never reused.
+ */
+@Slf4j
+@Service
+public class IssuanceCoalescer {
+    private static final String COALESCING_COUNTER = "issuance.coalescing";
+    private static final String API_KEY_HEADER = "api-key";
+
+    private final SerializationService serializationService;
+    private final SessionService sessionService;
+    private final CoalescingProperties coalescingProperties;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Request> requests;
+
+    /**
+     * Constructor
+     *
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param sessionService A SessionService bean used to check whether a coalesced session is pending
+     * @param coalescingProperties Property bean containing issuance coalescing configuration properties
+     * @param meterRegistry Registry the coalescing counts are published to
+     */
+    @Autowired
+    public IssuanceCoalescer(SerializationService serializationService,
+                             SessionService sessionService,
+                             CoalescingProperties coalescingProperties,
+                             MeterRegistry meterRegistry) {
+        this.serializationService = serializationService;
+        this.sessionService = sessionService;
+        this.coalescingProperties = coalescingProperties;
+        this.meterRegistry = meterRegistry;
+        this.requests = Caffeine
+                .newBuilder()
+                .expireAfterWrite(coalescingProperties.getWindowSeconds(), TimeUnit.SECONDS)
+                .maximumSize(coalescingProperties.getMaxEntries())
+                .build();
+    }
+
+    /**
+     * Executes an issuance request, unless a duplicate of it is in flight or pending
+     *
+     * @param tenant The tenant the request is made for
+     * @param request The issuance request from the UI
+     * @param claims The claims of the issuance request
+     * @param issuance The issuance request to execute when there is no duplicate to reuse
+     * @return The response of the issuance request, or of its duplicate
+     * @throws IOException When the issuance request fails to read or write JSON
+     * @throws AuthenticationException When MSAL service fails to obtain an access token
+     * @throws IdempotencyConflictException When the idempotency key was used with different claims
+     */
+    public ApiResponse execute(TenantContext tenant,
+                               HttpServletRequest request,
+                               Claims claims,
+                               Issuance issuance) throws IOException, AuthenticationException, IdempotencyConflictException {
+        if (!coalescingProperties.isEnabled()) {
+            return issuance.execute();
+        }
+
+        String fingerprint = sha256(serializationService.write(claims));
+        String idempotencyKey = request.getHeader(coalescingProperties.getHeader());
+        String key = idempotencyKey != null && !idempotencyKey.isBlank()
+                ? key(tenant, request, "key\n" + idempotencyKey)
+                : key(tenant, request, "claims\n" + fingerprint);
+        ConcurrentMap<String, Request> inFlight = requests.asMap();
+        while (true) {
+            Request own = new Request(fingerprint, new CompletableFuture<>());
+            Request existing = inFlight.putIfAbsent(key, own);
+            if (existing == null) {
+                return executeOwn(key, own, issuance);
+            }
+            if (!existing.fingerprint().equals(fingerprint)) {
+                count("conflict");
+                throw new IdempotencyConflictException("Idempotency key reused with different claims");
+            }
+            if (existing.response().isDone() && !isPending(existing.response())) {
+                // The duplicate's session has ended or failed, so this is a new request
+                inFlight.remove(key, existing);
+                continue;
+            }
+            count("coalesced");
+            return await(existing.response());
+        }
+    }
+
+    private ApiResponse executeOwn(String key,
+                                   Request own,
+                                   Issuance issuance) throws IOException, AuthenticationException {
+        count("executed");
+        try {
+            ApiResponse response = issuance.execute();
+            own.response().complete(response);
+            return response;
+        } catch (IOException | AuthenticationException | RuntimeException ex) {
+            // Waiting duplicates fail with the same error; later ones start over
+            requests.asMap().remove(key, own);
+            own.response().completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private boolean isPending(CompletableFuture<ApiResponse> request) {
+        if (request.isCompletedExceptionally()) {
+            return false;
+        }
+        String cachedData = sessionService.get(request.join().getId());
+        if (cachedData == null) {
+            return false;
+        }
+        try {
+            String status = serializationService.readTree(cachedData).path("status").asText();
+            return !SessionService.TERMINAL_STATUS.contains(status);
+        } catch (JsonProcessingException ex) {
+            return false;
+        }
+    }
+
+    private static ApiResponse await(CompletableFuture<ApiResponse> request) throws IOException, AuthenticationException {
+        try {
+            return request.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof AuthenticationException authenticationException) {
+                throw authenticationException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw ex;
+        }
+    }
+
+    private static String key(TenantContext tenant, HttpServletRequest request, String identity) {
+        return tenant.getTenantId() + ":" + sha256(caller(request) + "\n" + identity);
+    }
+
+    // Callers that send credentials are told apart by them, others by their address and user agent
+    private static String caller(HttpServletRequest request) {
+        String credential = request.getHeader(API_KEY_HEADER);
+        if (credential == null) {
+            credential = request.getHeader(HttpHeaders.AUTHORIZATION);
+        }
+        if (credential != null) {
+            return "credential\n" + credential;
+        }
+        return "client\n" + request.getRemoteAddr() + "\n" + request.getHeader(HttpHeaders.USER_AGENT);
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void count(String result) {
+        meterRegistry.counter(COALESCING_COUNTER, "result", result).increment();
+    }
+
+    /**
+     * A coalesced request: the fingerprint of its claims and its response
+     */
+    private record Request(String fingerprint, CompletableFuture<ApiResponse> response) {
+    }
+
+    /**
+     * An issuance request: creates the upstream request and its session
+     */
+    @FunctionalInterface
+    public interface Issuance {
+        ApiResponse execute() throws IOException, AuthenticationException;
+    }
+}
@@ -0,0 +1,145 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import com.smoogiee.verifiedidbackend.utils.JwtUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class caching the keys returned by the configured {@link KeyResolver}.
+ * <ul>
+ *     <li>Concurrent lookups of an uncached issuer share a single resolution</li>
+ *     <li>Entries older than the refresh interval are served while one background refresh runs</li>
+ *     <li>A failed refresh keeps serving the previous keys until they are older than the stale limit</li>
+ *     <li>Failed resolutions are cached as an empty key set for the negative interval</li>
+ * </ul>
+ * did:jwk identifiers embed their key and are decoded locally instead of being resolved.
+ * Lookups never block; callers decide which issuers are trusted before asking for keys.
+ */
+@Slf4j
+@Service
+public class IssuerKeyCache {
+    private static final String DID_JWK = "did:jwk:";
+
+    private final ObjectMapper objectMapper;
+    private final List<KeyResolver> keyResolvers;
+    private final VerificationProperties verificationProperties;
+    private final AsyncLoadingCache<String, Map<String, PublicKey>> keys;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper used for decoding did:jwk identifiers
+     * @param keyResolvers The registered KeyResolver beans, one of which is selected by entra.verification.resolver
+     * @param verificationProperties Property bean containing signature verification configuration properties
+     */
+    @Autowired
+    public IssuerKeyCache(ObjectMapper objectMapper,
+                          List<KeyResolver> keyResolvers,
+                          VerificationProperties verificationProperties) {
+        this(objectMapper, keyResolvers, verificationProperties, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    IssuerKeyCache(ObjectMapper objectMapper,
+                   List<KeyResolver> keyResolvers,
+                   VerificationProperties verificationProperties,
+                   Ticker ticker,
+                   Executor executor) {
+        this.objectMapper = objectMapper;
+        this.keyResolvers = keyResolvers;
+        this.verificationProperties = verificationProperties;
+        long staleNanos = TimeUnit.SECONDS.toNanos(verificationProperties.getCacheStaleSeconds());
+        long negativeNanos = TimeUnit.SECONDS.toNanos(verificationProperties.getCacheNegativeSeconds());
+        this.keys = Caffeine
+                .newBuilder()
+                .ticker(ticker)
+                .executor(executor)
+                .maximumSize(verificationProperties.getCacheMaximumSize())
+                .refreshAfterWrite(
+                        verificationProperties.getCacheRefreshSeconds(),
+                        TimeUnit.SECONDS)
+                .expireAfter(new Expiry<String, Map<String, PublicKey>>() {
+                    @Override
+                    public long expireAfterCreate(String issuer, Map<String, PublicKey> value, long currentTime) {
+                        return value.isEmpty() ? negativeNanos : staleNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String issuer, Map<String, PublicKey> value, long currentTime, long currentDuration) {
+                        return value.isEmpty() ? negativeNanos : staleNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String issuer, Map<String, PublicKey> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync(new AsyncCacheLoader<>() {
+                    @Override
+                    public CompletableFuture<Map<String, PublicKey>> asyncLoad(String issuer, Executor executor) {
+                        return resolve(issuer).exceptionally(ex -> {
+                            log.warn("Unable to resolve keys for {}: {}", issuer, ex.getMessage());
+                            return Map.of();
+                        });
+                    }
+
+                    @Override
+                    public CompletableFuture<Map<String, PublicKey>> asyncReload(String issuer,
+                                                                                 Map<String, PublicKey> previous,
+                                                                                 Executor executor) {
+                        // Failing keeps the previous keys and their original expiry
+                        return resolve(issuer);
+                    }
+                });
+    }
+
+    /**
+     * Gets the keys of an issuer, resolving them on first use
+     *
+     * @param issuer A DID or an HTTPS JWKS URL
+     * @return The issuer's keys keyed by key id. Empty if they could not be resolved
+     */
+    public CompletableFuture<Map<String, PublicKey>> get(String issuer) {
+        return keys.get(issuer);
+    }
+
+    private CompletableFuture<Map<String, PublicKey>> resolve(String issuer) {
+        if (issuer.startsWith(DID_JWK)) {
+            try {
+                JsonNode jwk = objectMapper.readTree(Base64.getUrlDecoder().decode(issuer.substring(DID_JWK.length())));
+                return CompletableFuture.completedFuture(Map.of("0", JwtUtils.publicKey(jwk)));
+            } catch (IOException | GeneralSecurityException | IllegalArgumentException ex) {
+                return CompletableFuture.failedFuture(new IOException("Invalid did:jwk: " + ex.getMessage(), ex));
+            }
+        }
+        for (KeyResolver resolver : keyResolvers) {
+            if (resolver.getName().equals(verificationProperties.getResolver())) {
+                try {
+                    return resolver.resolve(issuer).thenApply(Map::copyOf);
+                } catch (RuntimeException ex) {
+                    return CompletableFuture.failedFuture(ex);
+                }
+            }
+        }
+        return CompletableFuture.failedFuture(new IOException("No KeyResolver named " + verificationProperties.getResolver()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves the public keys an issuer signs tokens with. Every implementation
+ * bean is registered and the one whose name matches entra.verification.resolver
+ * is selected at runtime, so the choice also works in AOT-processed builds.
+ * Resolvers are only called through {@link IssuerKeyCache}, so they do not need
+ * to cache themselves. Resolution is asynchronous so that a slow issuer never
+ * holds a callback pipeline worker.
+ */
+public interface KeyResolver {
+    /**
+     * Gets the name entra.verification.resolver selects this resolver by
+     *
+     * @return The resolver name
+     */
+    String getName();
+
+    /**
+     * Resolves the keys published by an issuer
+     *
+     * @param issuer A DID or an HTTPS JWKS URL
+     * @return The issuer's public keys keyed by key id (the DID URL fragment or the JWK kid).
+     *         Completes exceptionally when the issuer's keys cannot be retrieved
+     */
+    CompletableFuture<Map<String, PublicKey>> resolve(String issuer);
+}
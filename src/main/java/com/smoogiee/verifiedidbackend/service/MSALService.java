@@ -1,7 +1,9 @@
 package com.smoogiee.verifiedidbackend.service;
 
 import com.microsoft.aad.msal4j.*;
-import com.smoogiee.verifiedidbackend.config.AzureProperties;
+import com.smoogiee.verifiedidbackend.config.TenantProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -24,95 +26,150 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 @Service
 public class MSALService {
-    private final AzureProperties azureProperties;
+    public static final String TOKEN_TIMER = "msal.token";
+
+    private final MeterRegistry meterRegistry;
 
     /**
      * Constructor
      *
-     * @param azureProperties Property bean containing Azure configuration properties
+     * @param meterRegistry Registry the token acquisition timings are published to
      */
     @Autowired
-    public MSALService(AzureProperties azureProperties) {
-        this.azureProperties = azureProperties;
+    public MSALService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
     }
 
     /**
-     * Gets an MSAL access token
+     * Gets an MSAL access token for a tenant. MSAL client applications
+     * are built once per tenant and reused, so each tenant keeps its own
+     * MSAL token cache.
      *
+     * @param tenant The tenant to authenticate as
      * @return A String object containing the MSAL access token
      * @throws Exception When an error occurs during authentication
      */
-    public String getAccessToken() throws Exception {
+    public String getAccessToken(TenantContext tenant) throws Exception {
         // Retrieve values important for authentication flow
-        boolean managedIdentity = azureProperties.isManagedId();
-        String scope = azureProperties.getScope();
+        TenantProperties properties = tenant.getProperties();
+        boolean managedIdentity = properties.isManagedId();
+        String scope = properties.getScope();
+
+        // Time the acquisition by auth mode and by whether MSAL answered from its token cache
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String cache = "miss";
+        try {
+            // Check if identity is managed through ManagedIdentity
+            // If managed, authenticate using ManagedIdentity
+            if (managedIdentity) {
+                log.debug("MSAL Acquire AccessToken via Managed Identity");
+                IAuthenticationResult result = managedIdentityApplication(tenant)
+                        .acquireTokenForManagedIdentity(ManagedIdentityParameters
+                                .builder(scope)
+                                .build())
+                        .get();
+                cache = cacheTag(result);
+                return result.accessToken();
+            }
+
+            // If not managed through ManagedIdentity,
+            // retrieve values necessary to check if
+            // authenticate should be performed using
+            // client ID/secret pair
+            if (!properties.getClientSecret().isEmpty()) {
+                log.debug("MSAL Acquire AccessToken via Client Credentials");
 
-        // Check if identity is managed through ManagedIdentity
-        // If managed, authenticate using ManagedIdentity
-        if (managedIdentity) {
-            log.debug("MSAL Acquire AccessToken via Managed Identity");
-            ManagedIdentityId managedIdentityId = ManagedIdentityId.systemAssigned();
-            ManagedIdentityApplication msiApp = ManagedIdentityApplication
-                    .builder(managedIdentityId)
-                    .logPii(false)
+                // TODO: Delete below stub and let confidentialClientApplication build the secret client
+                return "1234";
+            } else {
+                // Otherwise, attempt to authenticate using
+                // client private/public key pair
+                log.debug("MSAL Acquire AccessToken via Certificate");
+            }
+
+            // Execute authentication request
+            // for client/secret and private/public key pair flows
+            // and return access token
+            ClientCredentialParameters clientCredentialParameters = ClientCredentialParameters
+                    .builder(Collections.singleton(scope))
                     .build();
-            IAuthenticationResult result = msiApp
-                    .acquireTokenForManagedIdentity(ManagedIdentityParameters
-                            .builder(scope)
-                            .build())
-                    .get();
+            CompletableFuture<IAuthenticationResult> future = confidentialClientApplication(tenant)
+                    .acquireToken(clientCredentialParameters);
+            IAuthenticationResult result = future.get();
+            cache = cacheTag(result);
             return result.accessToken();
+        } finally {
+            sample.stop(meterRegistry.timer(TOKEN_TIMER, "mode", authMode(properties), "cache", cache));
+        }
+    }
+
+    /**
+     * Gets the low-cardinality name of the auth mode a tenant authenticates with
+     *
+     * @param properties The tenant configuration
+     * @return managed_identity, secret or certificate
+     */
+    public static String authMode(TenantProperties properties) {
+        if (properties.isManagedId()) {
+            return "managed_identity";
         }
+        return properties.getClientSecret().isEmpty() ? "certificate" : "secret";
+    }
 
-        // If not managed through ManagedIdentity,
-        // retrieve values necessary to check if
-        // authenticate should be performed using
-        // client ID/secret pair
-        String authority = azureProperties.getAuthority();
-        ConfidentialClientApplication app;
-        String clientId = azureProperties.getClientId();
-        String clientSecret = azureProperties.getClientSecret();
-        if (!clientSecret.isEmpty()) {
-            log.debug("MSAL Acquire AccessToken via Client Credentials");
+    private static String cacheTag(IAuthenticationResult result) {
+        return result.metadata() != null && result.metadata().tokenSource() == TokenSource.CACHE ? "hit" : "miss";
+    }
 
-            // TODO: Delete below stub and uncomment code
-            return "1234";
-//            app = ConfidentialClientApplication
-//                    .builder(
-//                            clientId,
-//                            ClientCredentialFactory.createFromSecret(clientSecret))
-//                    .authority(authority)
-//                    .build();
-        } else {
-            // Otherwise, attempt to authenticate using
-            // client private/public key pair
-            log.debug("MSAL Acquire AccessToken via Certificate");
-            String certLocation = azureProperties.getClientCertLocation();
-            String certKeyLocation = azureProperties.getClientCertKey();
-            PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(Files.readAllBytes(Paths.get(certKeyLocation)));
-            PrivateKey key = KeyFactory
-                    .getInstance("RSA")
-                    .generatePrivate(spec);
-            InputStream certStream = new ByteArrayInputStream(Files.readAllBytes(Paths.get(certLocation)));
-            X509Certificate cert = (X509Certificate) CertificateFactory
-                    .getInstance("X.509")
-                    .generateCertificate(certStream);
-            app = ConfidentialClientApplication
-                    .builder(
-                            clientId,
-                            ClientCredentialFactory.createFromCertificate(key, cert))
-                    .authority(authority)
-                    .build();
+    private ManagedIdentityApplication managedIdentityApplication(TenantContext tenant) {
+        ManagedIdentityApplication app = tenant.getManagedIdentityApplication();
+        if (app == null) {
+            synchronized (tenant) {
+                app = tenant.getManagedIdentityApplication();
+                if (app == null) {
+                    app = ManagedIdentityApplication
+                            .builder(ManagedIdentityId.systemAssigned())
+                            .logPii(false)
+                            .build();
+                    tenant.setManagedIdentityApplication(app);
+                }
+            }
         }
+        return app;
+    }
 
-        // Execute authentication request
-        // for client/secret and private/public key pair flows
-        // and return access token
-        ClientCredentialParameters clientCredentialParameters = ClientCredentialParameters
-                .builder(Collections.singleton(scope))
-                .build();
-        CompletableFuture<IAuthenticationResult> future = app.acquireToken(clientCredentialParameters);
-        IAuthenticationResult result = future.get();
-        return result.accessToken();
+    private ConfidentialClientApplication confidentialClientApplication(TenantContext tenant) throws Exception {
+        ConfidentialClientApplication app = tenant.getConfidentialClientApplication();
+        if (app == null) {
+            synchronized (tenant) {
+                app = tenant.getConfidentialClientApplication();
+                if (app == null) {
+                    app = ConfidentialClientApplication
+                            .builder(
+                                    tenant.getProperties().getClientId(),
+                                    clientCredential(tenant.getProperties()))
+                            .authority(tenant.getProperties().getAuthority())
+                            .build();
+                    tenant.setConfidentialClientApplication(app);
+                }
+            }
+        }
+        return app;
+    }
+
+    private IClientCredential clientCredential(TenantProperties properties) throws Exception {
+        if (!properties.getClientSecret().isEmpty()) {
+            return ClientCredentialFactory.createFromSecret(properties.getClientSecret());
+        }
+        String certLocation = properties.getClientCertLocation();
+        String certKeyLocation = properties.getClientCertKey();
+        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(Files.readAllBytes(Paths.get(certKeyLocation)));
+        PrivateKey key = KeyFactory
+                .getInstance("RSA")
+                .generatePrivate(spec);
+        InputStream certStream = new ByteArrayInputStream(Files.readAllBytes(Paths.get(certLocation)));
+        X509Certificate cert = (X509Certificate) CertificateFactory
+                .getInstance("X.509")
+                .generateCertificate(certStream);
+        return ClientCredentialFactory.createFromCertificate(key, cert);
     }
 }
@@ -0,0 +1,167 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.ManifestProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to serve credential manifests from an in-process cache.
+ * Expired manifests are revalidated against the source with If-None-Match and
+ * If-Modified-Since; concurrent revalidations of the same manifest share one
+ * upstream call, and the cached copy keeps being served when the source fails.
+ */
+@Slf4j
+@Service
+public class ManifestService {
+    /**
+     * A cached manifest and the validators needed to revalidate and serve it
+     */
+    @Getter
+    public static class Manifest {
+        private final String body;
+        private final String etag;
+        private final String upstreamEtag;
+        private final String upstreamLastModified;
+        private final long fetchedAt;
+
+        private Manifest(String body, String etag, String upstreamEtag, String upstreamLastModified, long fetchedAt) {
+            this.body = body;
+            this.etag = etag;
+            this.upstreamEtag = upstreamEtag;
+            this.upstreamLastModified = upstreamLastModified;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private Manifest revalidated(long fetchedAt) {
+            return new Manifest(body, etag, upstreamEtag, upstreamLastModified, fetchedAt);
+        }
+    }
+
+    private final ManifestProperties manifestProperties;
+    private final Map<String, Manifest> manifests;
+    private final Map<String, CompletableFuture<Manifest>> refreshes;
+
+    /**
+     * Constructor
+     *
+     * @param manifestProperties Property bean containing manifest cache configuration properties
+     */
+    @Autowired
+    public ManifestService(ManifestProperties manifestProperties) {
+        this.manifestProperties = manifestProperties;
+        this.manifests = new ConcurrentHashMap<>();
+        this.refreshes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the credential manifest of a tenant, revalidating it with the source once expired
+     *
+     * @param tenant The tenant to get the manifest for
+     * @return The cached manifest
+     * @throws IOException When the manifest was never retrieved and the source cannot be reached
+     */
+    public Manifest get(TenantContext tenant) throws IOException {
+        String url = tenant.getProperties().getManifestUrl();
+        Manifest cached = manifests.get(url);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.getFetchedAt() < TimeUnit.SECONDS.toMillis(manifestProperties.getTtlSeconds())) {
+            return cached;
+        }
+
+        // Only the first caller starts a revalidation; everyone else waits for its result
+        CompletableFuture<Manifest> refresh = new CompletableFuture<>();
+        CompletableFuture<Manifest> inFlight = refreshes.putIfAbsent(url, refresh);
+        if (inFlight == null) {
+            try {
+                Manifest manifest = fetch(tenant, url, cached);
+                manifests.put(url, manifest);
+                refresh.complete(manifest);
+            } catch (RuntimeException ex) {
+                refresh.completeExceptionally(ex);
+            } finally {
+                refreshes.remove(url, refresh);
+            }
+            inFlight = refresh;
+        }
+
+        try {
+            return inFlight.join();
+        } catch (RuntimeException ex) {
+            if (cached != null) {
+                log.warn("Serving stale manifest {}: {}", url, ex.getMessage());
+                return cached;
+            }
+            throw new IOException("Unable to retrieve manifest " + url, ex);
+        }
+    }
+
+    private Manifest fetch(TenantContext tenant, String url, Manifest cached) {
+        ResponseEntity<String> response = tenant
+                .getWebClient()
+                .get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    if (cached != null && cached.getUpstreamEtag() != null) {
+                        headers.set(HttpHeaders.IF_NONE_MATCH, cached.getUpstreamEtag());
+                    }
+                    if (cached != null && cached.getUpstreamLastModified() != null) {
+                        headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.getUpstreamLastModified());
+                    }
+                })
+                .retrieve()
+                .toEntity(String.class)
+                .block(Duration.ofMillis(manifestProperties.getTimeoutMs()));
+
+        long now = System.currentTimeMillis();
+        if (response == null) {
+            throw new IllegalStateException("No response from manifest source");
+        }
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached != null) {
+            log.debug("Manifest {} not modified", url);
+            return cached.revalidated(now);
+        }
+        String body = response.getBody();
+        if (body == null) {
+            throw new IllegalStateException("Empty manifest from " + url);
+        }
+        log.info("Manifest {} retrieved", url);
+        return new Manifest(
+                body,
+                etag(body),
+                response.getHeaders().getETag(),
+                response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED),
+                now);
+    }
+
+    /**
+     * Computes a strong ETag from the manifest content, so every instance serves the same ETag for the same manifest
+     */
+    private static String etag(String body) {
+        try {
+            byte[] digest = MessageDigest
+                    .getInstance("SHA-256")
+                    .digest(body.getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
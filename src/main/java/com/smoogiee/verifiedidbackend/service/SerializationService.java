@@ -0,0 +1,149 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.smoogiee.verifiedidbackend.model.audit.AuditRecord;
+import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
+import com.smoogiee.verifiedidbackend.model.verifiedid.CallbackEvent;
+import com.smoogiee.verifiedidbackend.model.verifiedid.Claims;
+import com.smoogiee.verifiedidbackend.model.verifiedid.IssuanceRequest;
+import com.smoogiee.verifiedidbackend.model.verifiedid.PresentationRequest;
+import com.smoogiee.verifiedidbackend.model.webhook.WebhookEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service class holding the Jackson readers and writers used on the request path.
+ * Readers and writers are immutable and thread safe; creating them per call repeats the
+ * root (de)serializer lookup every time, so they are created once per type and reused.
+ * Those of the request and response models are resolved eagerly at startup.
+ */
+@Service
+public class SerializationService {
+    // Root types read or written on the request path; nested models are resolved with them
+    private static final List<Class<?>> MODELS = List.of(
+            ApiResponse.class,
+            AuditRecord.class,
+            CallbackEvent.class,
+            Claims.class,
+            IssuanceRequest.class,
+            PresentationRequest.class,
+            WebhookEvent.class);
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectReader> readers;
+    private final Map<Class<?>, ObjectWriter> writers;
+    private final ObjectReader treeReader;
+    private final ObjectWriter treeWriter;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper used for marshaling JSON objects
+     */
+    @Autowired
+    public SerializationService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.readers = new ConcurrentHashMap<>();
+        this.writers = new ConcurrentHashMap<>();
+        for (Class<?> model : MODELS) {
+            reader(model);
+            writer(model);
+        }
+        this.treeReader = objectMapper.readerFor(JsonNode.class);
+        this.treeWriter = objectMapper.writerFor(JsonNode.class);
+    }
+
+    /**
+     * Gets the cached reader of a type
+     *
+     * @param type The type to read
+     * @return An ObjectReader bound to the type
+     */
+    public ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    /**
+     * Gets the cached writer of a type
+     *
+     * @param type The type to write
+     * @return An ObjectWriter bound to the type
+     */
+    public ObjectWriter writer(Class<?> type) {
+        return writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+
+    /**
+     * Reads a value from a JSON string
+     *
+     * @param content The JSON string
+     * @param type The type to read
+     * @return The value read
+     * @throws JsonProcessingException When the content cannot be read as the type
+     */
+    public <T> T read(String content, Class<T> type) throws JsonProcessingException {
+        return reader(type).readValue(content);
+    }
+
+    /**
+     * Reads a value from a character stream, without buffering it into a String first
+     *
+     * @param content The JSON character stream
+     * @param type The type to read
+     * @return The value read
+     * @throws IOException When the content cannot be read as the type
+     */
+    public <T> T read(Reader content, Class<T> type) throws IOException {
+        return reader(type).readValue(content);
+    }
+
+    /**
+     * Reads a JSON string into a tree
+     *
+     * @param content The JSON string
+     * @return The root node of the tree
+     * @throws JsonProcessingException When the content is not valid JSON
+     */
+    public JsonNode readTree(String content) throws JsonProcessingException {
+        return treeReader.readValue(content);
+    }
+
+    /**
+     * Writes a value as a compact JSON string
+     *
+     * @param value The value to write
+     * @return The JSON string
+     * @throws JsonProcessingException When the value cannot be serialized
+     */
+    public String write(Object value) throws JsonProcessingException {
+        if (value instanceof JsonNode) {
+            return treeWriter.writeValueAsString(value);
+        }
+        return writer(value.getClass()).writeValueAsString(value);
+    }
+
+    /**
+     * Writes a value as compact JSON to a character stream, leaving the stream open
+     *
+     * @param target The stream to write to
+     * @param value The value to write
+     * @throws IOException When the value cannot be serialized or written
+     */
+    public void write(Writer target, Object value) throws IOException {
+        writer(value.getClass())
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(target, value);
+    }
+}
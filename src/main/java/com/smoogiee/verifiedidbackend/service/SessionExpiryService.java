@@ -0,0 +1,152 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.smoogiee.verifiedidbackend.config.SessionProperties;
+import com.smoogiee.verifiedidbackend.model.webhook.WebhookEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to expire sessions together with their upstream request.
+ * <p>
+ * Each session gets a deadline at the expiry of its Verified ID API request. Deadlines are
+ * held in a Caffeine cache with variable expiry, whose timer wheel and scheduler fire them on
+ * time. When a deadline passes, a session that has not ended moves to the terminal
+ * request_expired status, subscribers are notified, and the session is reclaimed after a
+ * grace period that leaves pollers time to read the final status.
+ */
+@Slf4j
+@Service
+public class SessionExpiryService {
+    public static final String EXPIRED_STATUS = "request_expired";
+
+    private final SessionService sessionService;
+    private final WebhookService webhookService;
+    private final FunnelService funnelService;
+    private final SessionProperties sessionProperties;
+    private final Cache<String, Deadline> deadlines;
+
+    /**
+     * Constructor
+     *
+     * @param sessionService A SessionService bean used to update cached sessions
+     * @param webhookService A WebhookService bean used to notify downstream subscribers
+     * @param funnelService A FunnelService bean used to record the session funnel
+     * @param sessionProperties Property bean containing session configuration properties
+     */
+    @Autowired
+    public SessionExpiryService(SessionService sessionService,
+                                WebhookService webhookService,
+                                FunnelService funnelService,
+                                SessionProperties sessionProperties) {
+        this.sessionService = sessionService;
+        this.webhookService = webhookService;
+        this.funnelService = funnelService;
+        this.sessionProperties = sessionProperties;
+        this.deadlines = Caffeine
+                .newBuilder()
+                .expireAfter(new Expiry<String, Deadline>() {
+                    @Override
+                    public long expireAfterCreate(String key, Deadline deadline, long currentTime) {
+                        return deadline.remainingNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Deadline deadline, long currentTime, long currentDuration) {
+                        return deadline.remainingNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Deadline deadline, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((String key, Deadline deadline, RemovalCause cause) -> {
+                    if (cause == RemovalCause.EXPIRED && key != null && deadline != null) {
+                        fire(key, deadline);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Schedules the expiry of a session at the expiry of its upstream request
+     *
+     * @param correlationId The correlation id of the request
+     * @param tenant The tenant the request was made for
+     * @param requestType The request type
+     * @param expiry The upstream request expiry in epoch seconds, or 0 if the response carried none
+     */
+    public void schedule(String correlationId, String tenant, String requestType, long expiry) {
+        if (!sessionProperties.isExpiryEnabled() || expiry <= 0) {
+            return;
+        }
+        deadlines.put(correlationId, new Deadline(tenant, requestType, TimeUnit.SECONDS.toMillis(expiry), false));
+    }
+
+    private void fire(String correlationId, Deadline deadline) {
+        try {
+            if (deadline.reclaim()) {
+                sessionService.remove(correlationId);
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            String[] requestId = {null};
+            SessionService.Outcome outcome = sessionService.update(correlationId, session -> {
+                if (SessionService.TERMINAL_STATUS.contains(session.path("status").asText())) {
+                    return null;
+                }
+                requestId[0] = session.path("requestId").asText(null);
+                session.put("status", EXPIRED_STATUS);
+                session.put("message", "Request expired");
+                session.withObjectProperty("timestamps").put("expired", now);
+                return session;
+            });
+            if (outcome != SessionService.Outcome.APPLIED) {
+                return;
+            }
+
+            log.debug("Session {} expired with its upstream request", correlationId);
+            funnelService.expired(correlationId);
+            if (webhookService.publishes(EXPIRED_STATUS)) {
+                webhookService.publish(webhookEvent(correlationId, deadline, requestId[0], now));
+            }
+            deadlines.put(correlationId, new Deadline(
+                    deadline.tenant(),
+                    deadline.requestType(),
+                    now + TimeUnit.SECONDS.toMillis(sessionProperties.getExpiryGraceSeconds()),
+                    true));
+        } catch (RuntimeException ex) {
+            log.error("Unable to expire session {}", correlationId, ex);
+        }
+    }
+
+    private static WebhookEvent webhookEvent(String correlationId, Deadline deadline, String requestId, long now) {
+        WebhookEvent event = new WebhookEvent();
+        event.setId(correlationId);
+        event.setTenant(deadline.tenant());
+        event.setRequestType(deadline.requestType());
+        event.setRequestId(requestId);
+        event.setRequestStatus(EXPIRED_STATUS);
+        event.setTimestamp(now);
+        return event;
+    }
+
+    /**
+     * A point in time at which a session expires, or is reclaimed once expired
+     */
+    private record Deadline(String tenant, String requestType, long at, boolean reclaim) {
+        long remainingNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, at - System.currentTimeMillis()));
+        }
+    }
+}
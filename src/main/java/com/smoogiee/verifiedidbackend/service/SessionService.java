@@ -0,0 +1,277 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.jfr.SessionStoreEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Service class used to create and update request sessions held in {@link CacheService}.
+ * Sessions are keyed by correlation id (the callback state). Updates run as an optimistic
+ * compare-and-set on the cache entry: the transition is applied to a fresh copy, which is
+ * written back only if the entry is still unchanged and retried against the new entry
+ * otherwise. Concurrent callbacks for the same session therefore cannot lose updates,
+ * updates of different sessions never contend with each other, and a rejected
+ * transition never writes to the cache.
+ * <p>
+ * Every session carries a version, incremented by each applied update. It is always the
+ * first field of the cached JSON, so it can be read from the cached string without parsing.
+ * It is followed by the tenant the session was created for, which callbacks and status
+ * polls check in the same way before touching the session.
+ * Store operations are recorded as flight recorder events when these are enabled.
+ */
+@Slf4j
+@Service
+public class SessionService {
+    /**
+     * Outcome of a session update
+     */
+    public enum Outcome {
+        APPLIED,
+        REJECTED,
+        UNKNOWN
+    }
+
+    /**
+     * Statuses a session never leaves once reached
+     */
+    public static final Set<String> TERMINAL_STATUS = Set.of(
+            "issuance_successful",
+            "issuance_error",
+            "presentation_verified",
+            "presentation_error",
+            SessionExpiryService.EXPIRED_STATUS);
+
+    private static final String VERSION_PREFIX = "{\"version\":";
+    private static final String TENANT_PREFIX = ",\"tenant\":\"";
+    private static final String STATUS_PREFIX = ",\"status\":\"";
+
+    private final ObjectMapper objectMapper;
+    private final SerializationService serializationService;
+    private final CacheService<String, String> cacheService;
+    private final FunnelService funnelService;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper used for marshaling JSON objects
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param cacheService A cache service with strings as key:value pairs
+     * @param funnelService A FunnelService bean used to record the session funnel
+     */
+    @Autowired
+    public SessionService(ObjectMapper objectMapper,
+                          SerializationService serializationService,
+                          CacheService<String, String> cacheService,
+                          FunnelService funnelService) {
+        this.objectMapper = objectMapper;
+        this.serializationService = serializationService;
+        this.cacheService = cacheService;
+        this.funnelService = funnelService;
+    }
+
+    /**
+     * Creates a session in the request_created status.
+     * The session records its request type and the time of each lifecycle transition.
+     *
+     * @param correlationId The correlation id of the request
+     * @param tenantId The tenant the request was created for
+     * @param requestType The request type, issuance or presentation
+     * @return The cached session data
+     * @throws JsonProcessingException When the session cannot be serialized
+     */
+    public String create(String correlationId, String tenantId, String requestType) throws JsonProcessingException {
+        long now = System.currentTimeMillis();
+        ObjectNode data = objectMapper.createObjectNode();
+        data.put("version", 1);
+        data.put("tenant", tenantId);
+        data.put("status", "request_created");
+        data.put("message", "Waiting for QR code to be scanned");
+        data.put("requestType", requestType);
+        data.putObject("timestamps").put("created", now);
+        SessionStoreEvent event = new SessionStoreEvent();
+        event.begin();
+        String cachedData = serializationService.write(data);
+        cacheService.put(correlationId, cachedData);
+        commit(event, "create", correlationId, true, null);
+        funnelService.created(correlationId, requestType, now);
+        return cachedData;
+    }
+
+    /**
+     * Binds a session to the upstream request created for it. When an upstream call was hedged,
+     * only the winning request is bound, and callbacks for the other one are ignored.
+     *
+     * @param correlationId The correlation id of the request
+     * @param requestId The Verified ID API request id, or null if the response carried none
+     */
+    public void bind(String correlationId, String requestId) {
+        if (requestId == null) {
+            return;
+        }
+        update(correlationId, session -> {
+            if (session.hasNonNull("requestId")) {
+                return null;
+            }
+            session.put("requestId", requestId);
+            return session;
+        });
+    }
+
+    /**
+     * Gets the cached data of a session
+     *
+     * @param correlationId The correlation id of the request
+     * @return The cached session data or null if the session is unknown
+     */
+    public String get(String correlationId) {
+        SessionStoreEvent event = new SessionStoreEvent();
+        event.begin();
+        String cachedData = cacheService.getIfPresent(correlationId);
+        commit(event, "get", correlationId, cachedData != null, null);
+        return cachedData;
+    }
+
+    /**
+     * Reads the version of a session from its cached data without parsing it
+     *
+     * @param cachedData The cached session data
+     * @return The session version or -1 if the data carries none
+     */
+    public static long version(String cachedData) {
+        if (cachedData == null || !cachedData.startsWith(VERSION_PREFIX)) {
+            return -1;
+        }
+        long version = 0;
+        for (int i = VERSION_PREFIX.length(); i < cachedData.length(); i++) {
+            char c = cachedData.charAt(i);
+            if (c < '0' || c > '9') {
+                return i == VERSION_PREFIX.length() ? -1 : version;
+            }
+            version = version * 10 + (c - '0');
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the tenant of a session from its cached data without parsing it
+     *
+     * @param cachedData The cached session data
+     * @return The session tenant or null if the data carries none
+     */
+    public static String tenant(String cachedData) {
+        if (cachedData == null || !cachedData.startsWith(VERSION_PREFIX)) {
+            return null;
+        }
+        int start = VERSION_PREFIX.length();
+        while (start < cachedData.length() && Character.isDigit(cachedData.charAt(start))) {
+            start++;
+        }
+        if (!cachedData.startsWith(TENANT_PREFIX, start)) {
+            return null;
+        }
+        start += TENANT_PREFIX.length();
+        int end = cachedData.indexOf('"', start);
+        return end < 0 ? null : cachedData.substring(start, end);
+    }
+
+    /**
+     * Reads the status of a session from its cached data without parsing it.
+     * Sessions are created with the status right after the tenant, and updates keep its position
+     *
+     * @param cachedData The cached session data
+     * @return The session status or null if it is not where sessions keep it
+     */
+    public static String status(String cachedData) {
+        String tenant = tenant(cachedData);
+        if (tenant == null) {
+            return null;
+        }
+        int start = cachedData.indexOf(TENANT_PREFIX) + TENANT_PREFIX.length() + tenant.length() + 1;
+        if (!cachedData.startsWith(STATUS_PREFIX, start)) {
+            return null;
+        }
+        start += STATUS_PREFIX.length();
+        int end = cachedData.indexOf('"', start);
+        return end < 0 ? null : cachedData.substring(start, end);
+    }
+
+    /**
+     * Checks whether a session was created for a tenant
+     *
+     * @param cachedData The cached session data
+     * @param tenantId The tenant identifier
+     * @return True if the session belongs to the tenant
+     */
+    public static boolean belongsTo(String cachedData, String tenantId) {
+        return tenantId != null && tenantId.equals(tenant(cachedData));
+    }
+
+    /**
+     * Atomically applies a transition to a session. The transition may be invoked more than once
+     * when the session is updated concurrently, so it must not have side effects beyond its result.
+     *
+     * @param correlationId The correlation id of the request
+     * @param transition Function receiving the current session and returning the updated session,
+     *                   or null to reject the transition and leave the session unchanged
+     * @return Whether the transition was applied, rejected or the session is unknown
+     */
+    public Outcome update(String correlationId, UnaryOperator<ObjectNode> transition) {
+        SessionStoreEvent event = new SessionStoreEvent();
+        event.begin();
+        Outcome outcome;
+        try {
+            while (true) {
+                String data = cacheService.getIfPresent(correlationId);
+                if (data == null) {
+                    outcome = Outcome.UNKNOWN;
+                    break;
+                }
+                ObjectNode updated = transition.apply((ObjectNode) serializationService.readTree(data));
+                if (updated == null) {
+                    outcome = Outcome.REJECTED;
+                    break;
+                }
+                updated.put("version", updated.path("version").asLong() + 1);
+                if (cacheService.replace(correlationId, data, serializationService.write(updated))) {
+                    outcome = Outcome.APPLIED;
+                    break;
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        commit(event, "update", correlationId, outcome != Outcome.UNKNOWN, outcome.name());
+        return outcome;
+    }
+
+    /**
+     * Removes a session
+     *
+     * @param correlationId The correlation id of the request
+     */
+    public void remove(String correlationId) {
+        SessionStoreEvent event = new SessionStoreEvent();
+        event.begin();
+        cacheService.invalidate(correlationId);
+        commit(event, "remove", correlationId, true, null);
+    }
+
+    private static void commit(SessionStoreEvent event, String operation, String correlationId, boolean hit, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.key = correlationId;
+            event.hit = hit;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+}
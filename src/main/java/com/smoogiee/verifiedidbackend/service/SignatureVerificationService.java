@@ -0,0 +1,224 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import com.smoogiee.verifiedidbackend.model.jwt.JwsHeader;
+import com.smoogiee.verifiedidbackend.model.jwt.JwtClaims;
+import com.smoogiee.verifiedidbackend.utils.JwtUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service class used to verify the JWS signatures of a presentation receipt locally.
+ * The VP token and every VC token it embeds are checked against keys from
+ * {@link IssuerKeyCache}, so no remote call is made while keys are cached.
+ * Verification runs on the callback pipeline, after the callback has been acknowledged.
+ * <p>
+ * A signature only proves who signed a token, so the signers are checked before any key is looked up:
+ * <ul>
+ *     <li>Every VC must be issued by the tenant's DID authority or by one of entra.verification.trusted_issuers</li>
+ *     <li>A DID URL kid must name the same DID as the iss claim of its token</li>
+ *     <li>The VP must be signed by the holder the VCs were issued to (the VP iss equals each VC sub)</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class SignatureVerificationService {
+    private static final String DID_JWK = "did:jwk:";
+
+    public enum Result {
+        VERIFIED,
+        FAILED,
+        UNTRUSTED,
+        UNRESOLVED;
+
+        /**
+         * Gets the value stored in sessions and served by the status API
+         *
+         * @return The lower case result name
+         */
+        public String value() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final IssuerKeyCache issuerKeyCache;
+    private final TenantService tenantService;
+    private final VerificationProperties verificationProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructor
+     *
+     * @param objectMapper A fasterXML Jackson ObjectMapper whose factory is used to stream token payloads
+     * @param issuerKeyCache An IssuerKeyCache bean used to look up signing keys
+     * @param tenantService A TenantService bean used to look up the DID authority of a tenant
+     * @param verificationProperties Property bean containing signature verification configuration properties
+     * @param meterRegistry Registry the verification results are counted in
+     */
+    @Autowired
+    public SignatureVerificationService(ObjectMapper objectMapper,
+                                        IssuerKeyCache issuerKeyCache,
+                                        TenantService tenantService,
+                                        VerificationProperties verificationProperties,
+                                        MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.issuerKeyCache = issuerKeyCache;
+        this.tenantService = tenantService;
+        this.verificationProperties = verificationProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Checks whether receipts should be verified
+     *
+     * @return true if verification is enabled. false otherwise
+     */
+    public boolean isEnabled() {
+        return verificationProperties.isEnabled();
+    }
+
+    /**
+     * Checks whether a receipt that is not verified must fail the presentation
+     *
+     * @return true if verification is enforced. false otherwise
+     */
+    public boolean isEnforced() {
+        return verificationProperties.isEnforce();
+    }
+
+    /**
+     * Verifies a VP token and the VC tokens it embeds
+     *
+     * @param tenantId The tenant the presentation was requested by
+     * @param vpToken The compact VP token from the presentation receipt
+     * @return A future completing with VERIFIED if every signature is valid and every signer is trusted,
+     *         FAILED if any signature is invalid or a token is not signed by its issuer,
+     *         UNTRUSTED if a VC issuer or the holder is not accepted,
+     *         UNRESOLVED if a signing key or algorithm is not available
+     */
+    public CompletableFuture<Result> verify(String tenantId, String vpToken) {
+        CompletableFuture<Result> result;
+        try {
+            result = verifyPresentation(tenantId, vpToken);
+        } catch (IOException | RuntimeException ex) {
+            result = CompletableFuture.failedFuture(ex);
+        }
+        return result
+                .exceptionally(ex -> {
+                    log.warn("Malformed receipt token: {}", ex.getMessage());
+                    return Result.FAILED;
+                })
+                .thenApply(verified -> {
+                    meterRegistry.counter("callbacks.verification", "result", verified.value()).increment();
+                    return verified;
+                });
+    }
+
+    private CompletableFuture<Result> verifyPresentation(String tenantId, String vpToken) throws IOException {
+        JwsHeader vpHeader = JwtUtils.readHeader(objectMapper.getFactory(), vpToken);
+        JwtClaims vp = JwtUtils.readClaims(objectMapper.getFactory(), vpToken);
+        String holder = vp.getIss();
+        if (holder == null || !signedBy(vpHeader, holder)) {
+            log.info("VP kid {} does not belong to holder {}", vpHeader.getKid(), holder);
+            return CompletableFuture.completedFuture(Result.FAILED);
+        }
+        if (holder.startsWith(DID_JWK) && !verificationProperties.isHolderDidJwk()) {
+            log.info("did:jwk holders are not accepted");
+            return CompletableFuture.completedFuture(Result.UNTRUSTED);
+        }
+        if (vp.getVerifiableCredentials().isEmpty()) {
+            log.info("VP from {} embeds no credentials", holder);
+            return CompletableFuture.completedFuture(Result.UNTRUSTED);
+        }
+
+        // Every signer is checked before any key is resolved, so untrusted DIDs are never looked up
+        Set<String> trustedIssuers = trustedIssuers(tenantId);
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        results.add(verifyToken(vpToken, vpHeader, holder));
+        for (String vcToken : vp.getVerifiableCredentials()) {
+            JwsHeader header = JwtUtils.readHeader(objectMapper.getFactory(), vcToken);
+            JwtClaims vc = JwtUtils.readClaims(objectMapper.getFactory(), vcToken);
+            String issuer = vc.getIss();
+            if (issuer == null || !trustedIssuers.contains(issuer)) {
+                log.info("VC issuer {} is not trusted by tenant {}", issuer, tenantId);
+                return CompletableFuture.completedFuture(Result.UNTRUSTED);
+            }
+            if (!signedBy(header, issuer)) {
+                log.info("VC kid {} does not belong to issuer {}", header.getKid(), issuer);
+                return CompletableFuture.completedFuture(Result.FAILED);
+            }
+            if (!holder.equals(vc.getSub())) {
+                log.info("VC subject {} is not the VP holder {}", vc.getSub(), holder);
+                return CompletableFuture.completedFuture(Result.FAILED);
+            }
+            results.add(verifyToken(vcToken, header, issuer));
+        }
+
+        return CompletableFuture
+                .allOf(results.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    Result result = Result.VERIFIED;
+                    for (CompletableFuture<Result> token : results) {
+                        if (token.join() == Result.FAILED) {
+                            return Result.FAILED;
+                        }
+                        if (token.join() != Result.VERIFIED) {
+                            result = token.join();
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    private Set<String> trustedIssuers(String tenantId) {
+        Set<String> trusted = new HashSet<>(List.of(verificationProperties.getTrustedIssuers()));
+        String didAuthority = tenantService.didAuthority(tenantId);
+        if (didAuthority != null) {
+            trusted.add(didAuthority);
+        }
+        return trusted;
+    }
+
+    // A DID URL kid must name the signer; a bare kid is looked up among the signer's keys
+    private static boolean signedBy(JwsHeader header, String signer) {
+        String kid = header.getKid();
+        int fragment = kid == null ? -1 : kid.indexOf('#');
+        return fragment < 0 || kid.substring(0, fragment).equals(signer);
+    }
+
+    private CompletableFuture<Result> verifyToken(String token, JwsHeader header, String signer) {
+        String kid = header.getKid();
+        String keyId = kid == null ? null : kid.substring(kid.indexOf('#') + 1);
+        return issuerKeyCache.get(signer).thenApply(keys -> {
+            PublicKey key = keyId != null ? keys.get(keyId) : null;
+            if (key == null && keys.size() == 1 && keyId == null) {
+                key = keys.values().iterator().next();
+            }
+            if (key == null) {
+                log.info("No key {} for issuer {}", keyId, signer);
+                return Result.UNRESOLVED;
+            }
+
+            try {
+                return JwtUtils.verify(token, header.getAlg(), key) ? Result.VERIFIED : Result.FAILED;
+            } catch (GeneralSecurityException ex) {
+                log.info("Unable to verify token from {}: {}", signer, ex.getMessage());
+                return Result.UNRESOLVED;
+            }
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.aad.msal4j.ConfidentialClientApplication;
+import com.microsoft.aad.msal4j.ManagedIdentityApplication;
+import com.smoogiee.verifiedidbackend.config.TenantProperties;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runtime state owned by a single tenant: its resolved configuration,
+ * its MSAL client (and therefore its MSAL token cache) and a WebClient
+ * backed by a dedicated connection pool. The WebClient decodes JSON responses
+ * with the application ObjectMapper, straight from the pooled network buffers.
+ * The context is reference counted: the tenant cache holds one reference and
+ * every request using the tenant holds another, so an idle eviction only
+ * releases the connection pool once the last in-flight request has finished.
+ */
+@Getter
+public class TenantContext {
+    private final TenantProperties properties;
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    // Built lazily by MSALService on the first token request
+    @Setter
+    private volatile ConfidentialClientApplication confidentialClientApplication;
+    @Setter
+    private volatile ManagedIdentityApplication managedIdentityApplication;
+
+    /**
+     * Constructor
+     *
+     * @param properties The resolved tenant configuration
+     * @param maxConnections The maximum number of pooled connections for the tenant
+     * @param objectMapper The ObjectMapper used to decode JSON responses
+     */
+    public TenantContext(TenantProperties properties, int maxConnections, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.connectionProvider = ConnectionProvider
+                .builder("verified-id-" + properties.getTenantId())
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofSeconds(60))
+                .build();
+        this.webClient = WebClient
+                .builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .codecs(codecs -> codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper)))
+                .build();
+    }
+
+    /**
+     * Gets the tenant identifier
+     *
+     * @return The tenant identifier
+     */
+    public String getTenantId() {
+        return properties.getTenantId();
+    }
+
+    /**
+     * Takes a reference on the tenant for the duration of a request
+     *
+     * @return False when the tenant has already been closed
+     */
+    public boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Drops a reference taken by retain, releasing the pooled
+     * connections once the tenant is closed and no longer in use
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            connectionProvider.disposeLater().subscribe();
+        }
+    }
+
+    /**
+     * Drops the reference held by the tenant cache. The pooled connections
+     * are released once the requests still using the tenant have finished
+     */
+    public void close() {
+        release();
+    }
+}
@@ -0,0 +1,202 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.smoogiee.verifiedidbackend.config.AzureProperties;
+import com.smoogiee.verifiedidbackend.config.TenancyProperties;
+import com.smoogiee.verifiedidbackend.config.TenantProperties;
+import com.smoogiee.verifiedidbackend.config.VerifiedIdProperties;
+import com.smoogiee.verifiedidbackend.exception.UnknownTenantException;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Service class used to resolve the tenant a request belongs to.
+ * Tenant contexts are created on first use and evicted once idle.
+ */
+@Slf4j
+@Service
+public class TenantService {
+    public static final String DEFAULT_TENANT = "default";
+    public static final String TENANT_PARAMETER = "tenant";
+    public static final String TENANT_ATTRIBUTE = TenantService.class.getName() + ".tenant";
+
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Environment environment;
+    private final AzureProperties azureProperties;
+    private final VerifiedIdProperties verifiedIdProperties;
+    private final TenancyProperties tenancyProperties;
+    private final ObjectMapper objectMapper;
+    private final LoadingCache<String, TenantContext> tenants;
+
+    /**
+     * Constructor
+     *
+     * @param environment Environment used to look up per-tenant overrides
+     * @param azureProperties Property bean containing the default Azure configuration properties
+     * @param verifiedIdProperties Property bean containing the default Verified ID configuration properties
+     * @param tenancyProperties Property bean containing multi-tenant routing configuration properties
+     * @param objectMapper A fasterXML Jackson ObjectMapper used to decode Verified ID API responses
+     */
+    @Autowired
+    public TenantService(Environment environment,
+                         AzureProperties azureProperties,
+                         VerifiedIdProperties verifiedIdProperties,
+                         TenancyProperties tenancyProperties,
+                         ObjectMapper objectMapper) {
+        this.environment = environment;
+        this.azureProperties = azureProperties;
+        this.verifiedIdProperties = verifiedIdProperties;
+        this.tenancyProperties = tenancyProperties;
+        this.objectMapper = objectMapper;
+        this.tenants = Caffeine
+                .newBuilder()
+                .expireAfterAccess(
+                        tenancyProperties.getIdleEvictionMinutes(),
+                        TimeUnit.MINUTES)
+                .maximumSize(tenancyProperties.getMaxTenants())
+                .removalListener((String tenantId, TenantContext tenant, RemovalCause cause) -> {
+                    log.info("Evicting tenant {} ({})", tenantId, cause);
+                    if (tenant != null) {
+                        tenant.close();
+                    }
+                })
+                .build(this::load);
+    }
+
+    /**
+     * Resolves the tenant of a request from the tenant header or
+     * the tenant query parameter, falling back to the default tenant.
+     * The tenant is retained for the rest of the request and released
+     * by the TenantInterceptor once the request has completed
+     *
+     * @param request The HTTP request to resolve the tenant for
+     * @return The tenant context
+     * @throws UnknownTenantException When the requested tenant has no configuration
+     */
+    public TenantContext resolve(HttpServletRequest request) throws UnknownTenantException {
+        Object resolved = request.getAttribute(TENANT_ATTRIBUTE);
+        if (resolved instanceof TenantContext tenant) {
+            return tenant;
+        }
+        TenantContext tenant = acquire(tenantId(request));
+        request.setAttribute(TENANT_ATTRIBUTE, tenant);
+        return tenant;
+    }
+
+    /**
+     * Gets the identifier of the tenant a request addresses without loading it
+     *
+     * @param request The HTTP request
+     * @return The tenant identifier
+     */
+    public String tenantId(HttpServletRequest request) {
+        String tenantId = request.getHeader(tenancyProperties.getHeader());
+        if (tenantId == null || tenantId.isEmpty()) {
+            tenantId = request.getParameter(TENANT_PARAMETER);
+        }
+        if (tenantId == null || tenantId.isEmpty()) {
+            tenantId = DEFAULT_TENANT;
+        }
+        return tenantId;
+    }
+
+    /**
+     * Releases the tenant retained by resolve for a request, if any
+     *
+     * @param request The completed HTTP request
+     */
+    public void release(HttpServletRequest request) {
+        Object resolved = request.getAttribute(TENANT_ATTRIBUTE);
+        if (resolved instanceof TenantContext tenant) {
+            request.removeAttribute(TENANT_ATTRIBUTE);
+            tenant.release();
+        }
+    }
+
+    /**
+     * Gets a tenant by identifier, loading its configuration if needed.
+     * The returned context is retained and must be released by the caller
+     *
+     * @param tenantId The tenant identifier
+     * @return The retained tenant context
+     * @throws UnknownTenantException When the tenant has no configuration
+     */
+    public TenantContext acquire(String tenantId) throws UnknownTenantException {
+        if (!TENANT_ID_PATTERN.matcher(tenantId).matches()) {
+            throw new UnknownTenantException("Malformed tenant: " + tenantId);
+        }
+        while (true) {
+            TenantContext tenant = tenants.get(tenantId);
+            if (tenant == null) {
+                throw new UnknownTenantException("Unknown tenant: " + tenantId);
+            }
+            // A context closed by a concurrent eviction is reloaded
+            if (tenant.retain()) {
+                return tenant;
+            }
+            tenants.asMap().remove(tenantId, tenant);
+        }
+    }
+
+    /**
+     * Gets the DID authority of a tenant without loading it
+     *
+     * @param tenantId The tenant identifier
+     * @return The DID the tenant issues credentials as
+     */
+    public String didAuthority(String tenantId) {
+        return TenantProperties.resolve(tenantId, environment, azureProperties, verifiedIdProperties).getDidAuthority();
+    }
+
+    /**
+     * Gets the DID authorities of the default tenant and of every configured tenant
+     *
+     * @return The DIDs the tenants issue credentials as
+     */
+    public Set<String> didAuthorities() {
+        Set<String> authorities = new HashSet<>();
+        authorities.add(didAuthority(DEFAULT_TENANT));
+        Binder.get(environment)
+                .bind("entra.tenants", Bindable.mapOf(String.class, Object.class))
+                .ifBound(configured -> configured.keySet().forEach(tenantId -> authorities.add(didAuthority(tenantId))));
+        authorities.remove(null);
+        return authorities;
+    }
+
+    private TenantContext load(String tenantId) {
+        // Unknown tenants are not cached; Caffeine drops null values
+        if (!DEFAULT_TENANT.equals(tenantId) && !Binder
+                .get(environment)
+                .bind("entra.tenants." + tenantId, Bindable.mapOf(String.class, String.class))
+                .isBound()) {
+            return null;
+        }
+        log.info("Loading tenant {}", tenantId);
+        TenantProperties properties = TenantProperties.resolve(
+                tenantId,
+                environment,
+                azureProperties,
+                verifiedIdProperties);
+        return new TenantContext(properties, tenancyProperties.getMaxConnections(), objectMapper);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tenants.invalidateAll();
+    }
+}
@@ -1,22 +1,28 @@
 package com.smoogiee.verifiedidbackend.service;
 
-import com.smoogiee.verifiedidbackend.config.AppConfig;
-import com.smoogiee.verifiedidbackend.config.VerifiedIdProperties;
+import com.smoogiee.verifiedidbackend.config.TenantProperties;
 import com.smoogiee.verifiedidbackend.exception.AuthenticationException;
+import com.smoogiee.verifiedidbackend.jfr.TokenAcquisitionEvent;
+import com.smoogiee.verifiedidbackend.jfr.UpstreamCallEvent;
 import com.smoogiee.verifiedidbackend.model.verifiedid.*;
 import com.smoogiee.verifiedidbackend.utils.ServerUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.codec.CodecException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Service class used for calls into Microsoft's Verified ID API
@@ -24,9 +30,13 @@ import java.util.UUID;
 @Slf4j
 @Service
 public class VerifiedIdService {
+    private static final String UPSTREAM_TIMER = "verifiedid.upstream";
+
     private final CacheService<String, String> cacheService;
     private final MSALService msalService;
-    private final VerifiedIdProperties verifiedIdProperties;
+    private final HedgingService hedgingService;
+    private final ClusterService clusterService;
+    private final MeterRegistry meterRegistry;
     private final SecureRandom secureRandom;
 
     /**
@@ -34,104 +44,105 @@ public class VerifiedIdService {
      *
      * @param cacheService Service bean used for caching MSAL access token
      * @param msalService Service bean used for accessing MSAL library
-     * @param verifiedIdProperties Property bean containing Verified ID configuration properties
+     * @param hedgingService Service bean used to hedge calls to the Verified ID API
+     * @param clusterService Service bean used to generate correlation ids owned by this node
+     * @param meterRegistry Registry the upstream call and token timings are published to
      */
     @Autowired
     public VerifiedIdService(CacheService<String, String> cacheService,
                              MSALService msalService,
-                             VerifiedIdProperties verifiedIdProperties) {
+                             HedgingService hedgingService,
+                             ClusterService clusterService,
+                             MeterRegistry meterRegistry) {
         this.cacheService = cacheService;
         this.msalService = msalService;
-        this.verifiedIdProperties = verifiedIdProperties;
+        this.hedgingService = hedgingService;
+        this.clusterService = clusterService;
+        this.meterRegistry = meterRegistry;
         this.secureRandom = new SecureRandom(); // Defaults to SHA1PRNG Algorithm
     }
 
     /**
      * Initiate the issuance of a Verified ID
      *
+     * @param tenant The tenant the request is made for
      * @param payload IssuanceRequest object
-     * @return A JSON encoded string containing the Verified ID API response
+     * @return The Verified ID API response, decoded straight from the response buffers
+     * @throws IOException When the Verified ID API response cannot be decoded
      * @throws AuthenticationException When MSAL service fails to obtain an access token
      */
-    public String initiateIssuanceRequest(IssuanceRequest payload) throws AuthenticationException {
+    public ApiResponse initiateIssuanceRequest(TenantContext tenant, IssuanceRequest payload)
+            throws IOException, AuthenticationException {
         // Retrieve MSAL access token from the cache service
         // Obtains a MSAL access token from Microsoft if token not found in the cache
-        String accessToken = retrieveAccessToken();
+        String accessToken = retrieveAccessToken(tenant);
 
         // Prepare endpoint string
-        String apiEndpoint = verifiedIdProperties.getApiEndpoint() + "verifiableCredentials/createIssuanceRequest";
-
-        // Create and execute WebClient call to Verified ID API endpoint
-        WebClient client = WebClient.create();
-        WebClient.ResponseSpec responseSpec = client
-                .post()
-                .uri(apiEndpoint)
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .header("Authorization", "Bearer " + accessToken)
-                .accept(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(payload))
-                .retrieve();
+        String apiEndpoint = tenant.getProperties().getApiEndpoint() + "verifiableCredentials/createIssuanceRequest";
+
+        // Execute call to Verified ID API endpoint over the tenant's pooled WebClient.
+        // Each subscription sends its own request, so a hedged call can send it twice
+        Supplier<Mono<ApiResponse>> call = () -> upstream(tenant, "createIssuanceRequest", apiEndpoint, accessToken, payload);
 
         // Retrieve response and return
         // NOTE: This blocks the reactive nature of WebFlux. This is OK because endpoints are blocking MVC.
         //       If endpoints must be reactive, this should return a WebFlux object.
-        return responseSpec.bodyToMono(String.class).block();
+        return timeUpstream("createIssuanceRequest", () -> hedgingService.execute("createIssuanceRequest", call));
     }
 
     /**
      * Initiate the presentation of a Verified ID
      *
+     * @param tenant The tenant the request is made for
      * @param payload PresentationRequest object
-     * @return A JSON encoded string containing the Verified ID API response
+     * @return The Verified ID API response, decoded straight from the response buffers
+     * @throws IOException When the Verified ID API response cannot be decoded
      * @throws AuthenticationException When MSAL service fails to obtain an access token
      */
-    public String initiatePresentationRequest(PresentationRequest payload) throws AuthenticationException {
+    public ApiResponse initiatePresentationRequest(TenantContext tenant, PresentationRequest payload)
+            throws IOException, AuthenticationException {
         // Retrieve MSAL access token from the cache service
         // Obtains a MSAL access token from Microsoft if token not found in the cache
-        String accessToken = retrieveAccessToken();
+        String accessToken = retrieveAccessToken(tenant);
 
         // Prepare endpoint string
-        String apiEndpoint = verifiedIdProperties.getApiEndpoint() + "verifiableCredentials/createPresentationRequest";
-
-        // Create and execute WebClient call to Verified ID API endpoint
-        WebClient client = WebClient.create();
-        WebClient.ResponseSpec responseSpec = client
-                .post()
-                .uri(apiEndpoint)
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .header("Authorization", "Bearer " + accessToken)
-                .accept(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(payload))
-                .retrieve();
+        String apiEndpoint = tenant.getProperties().getApiEndpoint() + "verifiableCredentials/createPresentationRequest";
+
+        // Execute call to Verified ID API endpoint over the tenant's pooled WebClient.
+        // Each subscription sends its own request, so a hedged call can send it twice
+        Supplier<Mono<ApiResponse>> call = () -> upstream(tenant, "createPresentationRequest", apiEndpoint, accessToken, payload);
 
         // Retrieve response and return
         // NOTE: This blocks the reactive nature of WebFlux. This is OK because endpoints are blocking MVC.
         //       If endpoints must be reactive, this should return a WebFlux object.
-        return responseSpec.bodyToMono(String.class).block();
+        return timeUpstream("createPresentationRequest", () -> hedgingService.execute("createPresentationRequest", call));
     }
 
-    public IssuanceRequest createIssuanceRequest(HttpServletRequest httpServletRequest, Claims claims) {
+    public IssuanceRequest createIssuanceRequest(TenantContext tenant,
+                                                 HttpServletRequest httpServletRequest,
+                                                 Claims claims) {
+        TenantProperties properties = tenant.getProperties();
         IssuanceRequest request = new IssuanceRequest();
 
         request.setRegistration(new Registration());
-        request.setAuthority(verifiedIdProperties.getDidAuthority());
+        request.setAuthority(properties.getDidAuthority());
         request.setIncludeReceipt(true);
-        request.getRegistration().setClientName(verifiedIdProperties.getClientName());
+        request.getRegistration().setClientName(properties.getClientName());
 
         request.setCallback(new Callback());
-        request.getCallback().setUrl(ServerUtils.getBasePath(httpServletRequest) + "api/issuer/callback");
-        request.getCallback().setState(UUID.randomUUID().toString());
+        request.getCallback().setUrl(callbackUrl(tenant, httpServletRequest, "api/issuer/callback"));
+        request.getCallback().setState(clusterService.newCorrelationId());
         request.getCallback().setHeaders(new Headers());
         // TODO: Securely generate API key
-        request.getCallback().getHeaders().setApiKey(verifiedIdProperties.getApiKey());
+        request.getCallback().getHeaders().setApiKey(properties.getApiKey());
 
-        request.setType(verifiedIdProperties.getCredentialType());
-        request.setManifest(verifiedIdProperties.getManifestUrl());
+        request.setType(properties.getCredentialType());
+        request.setManifest(properties.getManifestUrl());
 
         request.setClaims(claims);
 
         if (!ServerUtils.fromMobile(httpServletRequest)) {
-            int pinCodeLength = verifiedIdProperties.getPinCodeLength();
+            int pinCodeLength = properties.getPinCodeLength();
             if (pinCodeLength > 0) {
                 request.setPin(new Pin());
                 request.getPin().setLength(pinCodeLength);
@@ -142,26 +153,27 @@ public class VerifiedIdService {
         return request;
     }
 
-    public PresentationRequest createPresentationRequest(HttpServletRequest httpServletRequest) {
+    public PresentationRequest createPresentationRequest(TenantContext tenant, HttpServletRequest httpServletRequest) {
+        TenantProperties properties = tenant.getProperties();
         PresentationRequest request = new PresentationRequest();
 
         request.setRegistration(new Registration());
-        request.setAuthority(verifiedIdProperties.getDidAuthority());
+        request.setAuthority(properties.getDidAuthority());
         request.setIncludeReceipt(true);
-        request.getRegistration().setClientName(verifiedIdProperties.getClientName());
+        request.getRegistration().setClientName(properties.getClientName());
 
         request.setCallback(new Callback());
-        request.getCallback().setUrl(ServerUtils.getBasePath(httpServletRequest) + "api/verifier/callback");
-        request.getCallback().setState(UUID.randomUUID().toString());
+        request.getCallback().setUrl(callbackUrl(tenant, httpServletRequest, "api/verifier/callback"));
+        request.getCallback().setState(clusterService.newCorrelationId());
         request.getCallback().setHeaders(new Headers());
-        request.getCallback().getHeaders().setApiKey(verifiedIdProperties.getApiKey());
+        request.getCallback().getHeaders().setApiKey(properties.getApiKey());
 
         request.setRequestedCredentials(new ArrayList<>());
         RequestedCredential requestedCredential = new RequestedCredential();
-        requestedCredential.setType(verifiedIdProperties.getCredentialType());
-        requestedCredential.setPurpose(verifiedIdProperties.getPurpose());
+        requestedCredential.setType(properties.getCredentialType());
+        requestedCredential.setPurpose(properties.getPurpose());
         requestedCredential.setAcceptedIssuers(new ArrayList<>());
-        requestedCredential.getAcceptedIssuers().add(verifiedIdProperties.getDidAuthority());
+        requestedCredential.getAcceptedIssuers().add(properties.getDidAuthority());
         requestedCredential.setConfiguration(new Configuration());
         requestedCredential.getConfiguration().setValidation(new Validation());
         requestedCredential.getConfiguration().getValidation().setAllowRevoked(false);
@@ -171,6 +183,84 @@ public class VerifiedIdService {
         return request;
     }
 
+    private String callbackUrl(TenantContext tenant, HttpServletRequest httpServletRequest, String path) {
+        // Non-default tenants are carried on the callback URL so callbacks can be routed back to them
+        String url = ServerUtils.getBasePath(httpServletRequest) + path;
+        if (!TenantService.DEFAULT_TENANT.equals(tenant.getTenantId())) {
+            url += "?" + TenantService.TENANT_PARAMETER + "=" + tenant.getTenantId();
+        }
+        return url;
+    }
+
+    /**
+     * Sends a request to a Verified ID API endpoint and decodes its response.
+     * Each request sent is recorded as a flight recorder event when enabled.
+     */
+    private Mono<ApiResponse> upstream(TenantContext tenant,
+                                       String operation,
+                                       String apiEndpoint,
+                                       String accessToken,
+                                       Object payload) {
+        return Mono.defer(() -> {
+            UpstreamCallEvent event = new UpstreamCallEvent();
+            event.begin();
+            return tenant
+                    .getWebClient()
+                    .post()
+                    .uri(apiEndpoint)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header("Authorization", "Bearer " + accessToken)
+                    .accept(MediaType.APPLICATION_JSON)
+                    .body(BodyInserters.fromValue(payload))
+                    .exchangeToMono(response -> {
+                        event.status = response.statusCode().value();
+                        if (response.statusCode().isError()) {
+                            return response.createError();
+                        }
+                        // Counted as it is decoded, since chunked and compressed responses declare no usable length
+                        return response
+                                .mutate()
+                                .body(body -> body.doOnNext(buffer -> event.bytes += buffer.readableByteCount()))
+                                .build()
+                                .bodyToMono(ApiResponse.class);
+                    })
+                    .doOnError(WebClientResponseException.class, ex -> {
+                        event.status = ex.getStatusCode().value();
+                        event.bytes = ex.getResponseBodyAsByteArray().length;
+                    })
+                    .doFinally(signal -> {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.operation = operation;
+                            event.endpoint = apiEndpoint;
+                            event.tenant = tenant.getTenantId();
+                            event.outcome = signal.toString();
+                            event.commit();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Times an upstream Verified ID API call by operation and outcome
+     */
+    private <T> T timeUpstream(String operation, Supplier<T> call) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T response = call.get();
+            outcome = "success";
+            return response;
+        } catch (CodecException ex) {
+            // Surfaced like the parse errors of the String responses this replaced
+            throw new IOException(ex.getMessage(), ex);
+        } finally {
+            meterRegistry
+                    .timer(UPSTREAM_TIMER, "operation", operation, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
     private String generatePinCode(int length) {
         int min = 0;
         int max = Integer.parseInt("999999999999999999999".substring(0, length));
@@ -178,16 +268,41 @@ public class VerifiedIdService {
         return String.format(String.format("%%0%dd", length), pin);
     }
 
-    private String retrieveAccessToken() throws AuthenticationException {
+    /**
+     * Gets the tenant's MSAL access token from the cache service,
+     * obtaining a new one from Microsoft if it is not cached
+     *
+     * @param tenant The tenant to get the access token for
+     * @return The MSAL access token
+     * @throws AuthenticationException When MSAL service fails to obtain an access token
+     */
+    public String retrieveAccessToken(TenantContext tenant) throws AuthenticationException {
+        TokenAcquisitionEvent event = new TokenAcquisitionEvent();
+        event.begin();
         try {
-            String accessToken = cacheService.getIfPresent("MSALAccessToken");
-            if (accessToken == null || accessToken.isEmpty()) {
-                accessToken = msalService.getAccessToken();
-                cacheService.put("MSALAccessToken", accessToken);
+            String cacheKey = CacheService.TOKEN_KEY_PREFIX + tenant.getTenantId();
+            long start = System.nanoTime();
+            String accessToken = cacheService.getIfPresent(cacheKey);
+            if (accessToken != null && !accessToken.isEmpty()) {
+                event.cacheHit = true;
+                meterRegistry
+                        .timer(MSALService.TOKEN_TIMER, "mode", MSALService.authMode(tenant.getProperties()), "cache", "hit")
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            } else {
+                accessToken = msalService.getAccessToken(tenant);
+                cacheService.put(cacheKey, accessToken);
             }
+            event.success = true;
             return accessToken;
         } catch (Exception ex) {
             throw new AuthenticationException(ex.getMessage());
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.tenant = tenant.getTenantId();
+                event.mode = MSALService.authMode(tenant.getProperties());
+                event.commit();
+            }
         }
     }
 }
@@ -0,0 +1,202 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.WarmupProperties;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
+import com.smoogiee.verifiedidbackend.model.verifiedid.CallbackEvent;
+import com.smoogiee.verifiedidbackend.model.verifiedid.IssuanceRequest;
+import com.smoogiee.verifiedidbackend.model.verifiedid.PresentationRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class used to warm the application up before it reports readiness.
+ * Application runners complete before Spring Boot publishes the ready event,
+ * so the readiness probe keeps refusing traffic until the warm-up is done.
+ * Every step is timed and failures are logged without blocking startup.
+ */
+@Slf4j
+@Service
+public class WarmupService implements ApplicationRunner {
+    private static final String ISSUANCE_REQUEST = "{\"includeQRCode\":false,\"includeReceipt\":true,"
+            + "\"callback\":{\"url\":\"https://localhost/api/issuer/callback\",\"state\":\"warmup\",\"headers\":{\"api-key\":\"warmup\"}},"
+            + "\"authority\":\"did:web:warmup\",\"registration\":{\"clientName\":\"warmup\"},\"type\":\"warmup\","
+            + "\"manifest\":\"https://localhost/manifest\",\"pin\":{\"value\":\"0000\",\"length\":4},"
+            + "\"claims\":{\"firstName\":\"warm\",\"lastName\":\"up\"},\"expirationDate\":\"2030-01-01T00:00:00.000+00:00\"}";
+    private static final String PRESENTATION_REQUEST = "{\"includeQrCode\":false,\"includeReceipt\":true,"
+            + "\"authority\":\"did:web:warmup\",\"registration\":{\"clientName\":\"warmup\"},"
+            + "\"callback\":{\"url\":\"https://localhost/api/verifier/callback\",\"state\":\"warmup\",\"headers\":{\"api-key\":\"warmup\"}},"
+            + "\"requestedCredentials\":[{\"type\":\"warmup\",\"purpose\":\"warmup\",\"acceptedIssuers\":[\"did:web:warmup\"],"
+            + "\"configuration\":{\"validation\":{\"allowRevoked\":false,\"validateLinkedDomain\":true,"
+            + "\"faceCheck\":{\"sourcePhotoClaimName\":\"photo\",\"matchConfidenceThreshold\":70}}}}]}";
+    private static final String CALLBACK_EVENT = "{\"requestId\":\"%s\",\"requestStatus\":\"request_retrieved\",\"state\":\"%s\"}";
+    private static final String API_RESPONSE = "{\"requestId\":\"warmup\",\"url\":\"openid-vc://?request_uri=https://localhost\","
+            + "\"expiry\":1700000000,\"qrCode\":\"data:image/png;base64,\"}";
+
+    private final SerializationService serializationService;
+    private final TenantService tenantService;
+    private final VerifiedIdService verifiedIdService;
+    private final SessionService sessionService;
+    private final CallbackService callbackService;
+    private final WarmupProperties warmupProperties;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    /**
+     * Constructor
+     *
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param tenantService A TenantService bean used to create the warmed tenant contexts
+     * @param verifiedIdService A VerifiedIdService bean used to pre-acquire access tokens
+     * @param sessionService A SessionService bean used to hold the synthetic session
+     * @param callbackService A CallbackService bean used to exercise the callback apply path
+     * @param warmupProperties Property bean containing warm-up configuration properties
+     * @param meterRegistry Registry the warm-up step timings are published to
+     * @param environment Environment used to look up the local server port
+     */
+    @Autowired
+    public WarmupService(SerializationService serializationService,
+                         TenantService tenantService,
+                         VerifiedIdService verifiedIdService,
+                         SessionService sessionService,
+                         CallbackService callbackService,
+                         WarmupProperties warmupProperties,
+                         MeterRegistry meterRegistry,
+                         Environment environment) {
+        this.serializationService = serializationService;
+        this.tenantService = tenantService;
+        this.verifiedIdService = verifiedIdService;
+        this.sessionService = sessionService;
+        this.callbackService = callbackService;
+        this.warmupProperties = warmupProperties;
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!warmupProperties.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, Long> timings = new LinkedHashMap<>();
+
+        List<TenantContext> tenants = new ArrayList<>();
+        step("tenants", timings, () -> {
+            for (String tenantId : warmupProperties.getTenants()) {
+                tenants.add(tenantService.acquire(tenantId));
+            }
+        });
+        if (warmupProperties.isToken()) {
+            step("token", timings, () -> {
+                for (TenantContext tenant : tenants) {
+                    verifiedIdService.retrieveAccessToken(tenant);
+                }
+            });
+        }
+        step("connections", timings, () -> {
+            for (TenantContext tenant : tenants) {
+                openConnections(tenant);
+            }
+        });
+        tenants.forEach(TenantContext::release);
+        step("serialization", timings, this::serialization);
+
+        // The callback and status paths run against a synthetic session that is removed afterwards.
+        // Its request type keeps it out of the session funnel
+        String state = "warmup-" + UUID.randomUUID();
+        step("callbacks", timings, () -> {
+            sessionService.create(state, TenantService.DEFAULT_TENANT, "warmup");
+            callbacks(state);
+        });
+        step("status", timings, () -> status(state));
+        sessionService.remove(state);
+
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Warm-up completed in {} ms {}", total, timings);
+    }
+
+    private void openConnections(TenantContext tenant) {
+        // Any response will do: the point is the TLS handshake and the pooled connections it leaves behind
+        String apiEndpoint = tenant.getProperties().getApiEndpoint();
+        Flux.range(0, warmupProperties.getConnections())
+                .flatMap(i -> tenant
+                        .getWebClient()
+                        .head()
+                        .uri(apiEndpoint)
+                        .exchangeToMono(ClientResponse::releaseBody), warmupProperties.getConnections())
+                .then()
+                .block(Duration.ofMillis(warmupProperties.getTimeoutMs()));
+    }
+
+    private void serialization() throws Exception {
+        for (int i = 0; i < warmupProperties.getIterations(); i++) {
+            serializationService.write(serializationService.read(ISSUANCE_REQUEST, IssuanceRequest.class));
+            serializationService.write(serializationService.read(PRESENTATION_REQUEST, PresentationRequest.class));
+            serializationService.write(serializationService.read(CALLBACK_EVENT.formatted("warmup", "warmup"), CallbackEvent.class));
+            serializationService.write(serializationService.read(API_RESPONSE, ApiResponse.class));
+        }
+    }
+
+    private void callbacks(String state) throws Exception {
+        for (int i = 0; i < warmupProperties.getIterations(); i++) {
+            String body = CALLBACK_EVENT.formatted("warmup", state);
+            CallbackTask task = callbackService.peek(TenantService.DEFAULT_TENANT, "issuance", body);
+            callbackService.isSupported(task.getRequestType(), task.getRequestStatus());
+            callbackService.process(task).join();
+        }
+    }
+
+    private void status(String state) {
+        // Goes through the servlet stack over loopback, so interceptors and message converters are warmed too
+        String port = environment.getProperty("local.server.port");
+        if (port == null) {
+            return;
+        }
+        WebClient client = WebClient.create("http://localhost:" + port);
+        for (int i = 0; i < warmupProperties.getStatusRequests(); i++) {
+            client
+                    .get()
+                    .uri(uri -> uri.path("/api/status").queryParam("id", state).build())
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(Duration.ofMillis(warmupProperties.getTimeoutMs()));
+        }
+    }
+
+    private void step(String name, Map<String, Long> timings, WarmupStep step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (Exception ex) {
+            log.warn("Warm-up step {} failed: {}", name, ex.getMessage());
+        }
+        long elapsed = System.nanoTime() - start;
+        meterRegistry.timer("startup.warmup", "step", name).record(elapsed, TimeUnit.NANOSECONDS);
+        timings.put(name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,281 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.WebhookProperties;
+import com.smoogiee.verifiedidbackend.model.webhook.WebhookEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service class used to fan out terminal callback events to downstream webhook subscribers.
+ * Publishing only offers the event to a bounded queue, so it never blocks the caller.
+ * A dispatcher thread drains the queue in batches and hands each batch to every subscriber,
+ * which deliver with bounded concurrency and retry with exponential backoff. Batches that
+ * cannot be delivered are appended to a dead-letter file. On shutdown the queue and the
+ * subscriber backlogs are drained within a bounded timeout; whatever is left undelivered
+ * then is dead-lettered as well.
+ */
+@Slf4j
+@Service
+public class WebhookService {
+    private final SerializationService serializationService;
+    private final WebhookProperties webhookProperties;
+    private final Set<String> events;
+    private final BlockingQueue<WebhookEvent> queue;
+    private final List<Subscriber> subscribers;
+    private final AtomicLong dropped;
+    private ConnectionProvider connectionProvider;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     *
+     * @param serializationService A SerializationService bean holding the cached JSON readers and writers
+     * @param webhookProperties Property bean containing webhook configuration properties
+     */
+    @Autowired
+    public WebhookService(SerializationService serializationService, WebhookProperties webhookProperties) {
+        this.serializationService = serializationService;
+        this.webhookProperties = webhookProperties;
+        this.events = Set.of(webhookProperties.getEvents());
+        this.queue = new ArrayBlockingQueue<>(webhookProperties.getQueueCapacity());
+        this.subscribers = new ArrayList<>();
+        this.dropped = new AtomicLong();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (webhookProperties.getSubscribers().length == 0) {
+            return;
+        }
+        if (webhookProperties.getMaxAttempts() < 1) {
+            throw new IllegalStateException("entra.webhooks.max_attempts must be at least 1 when webhooks are enabled");
+        }
+        connectionProvider = ConnectionProvider
+                .builder("webhooks")
+                .maxConnections(webhookProperties.getSubscribers().length * webhookProperties.getMaxConcurrency())
+                .build();
+        WebClient webClient = WebClient
+                .builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+        for (String url : webhookProperties.getSubscribers()) {
+            subscribers.add(new Subscriber(url, webClient));
+        }
+        running = true;
+        dispatcher = new Thread(this::dispatch, "webhook-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Webhook delivery started for {} subscriber(s)", subscribers.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(webhookProperties.getShutdownTimeoutMs());
+            try {
+                // The dispatcher drains the queue before completing the subscriber backlogs
+                dispatcher.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.await(deadline);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            dispatcher.interrupt();
+
+            // Anything still undelivered is kept in the dead-letter file rather than lost
+            List<WebhookEvent> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.abandon(remaining);
+            }
+        }
+        if (connectionProvider != null) {
+            connectionProvider.disposeLater().subscribe();
+        }
+    }
+
+    /**
+     * Checks whether an event with the provided status is published to subscribers
+     *
+     * @param requestStatus The callback request status
+     * @return true if the status is published. false otherwise
+     */
+    public boolean publishes(String requestStatus) {
+        return running && events.contains(requestStatus);
+    }
+
+    /**
+     * Queues an event for delivery. This never blocks; when the queue is full the event is dropped.
+     *
+     * @param event The event to deliver
+     */
+    public void publish(WebhookEvent event) {
+        if (!publishes(event.getRequestStatus())) {
+            return;
+        }
+        if (!queue.offer(event)) {
+            log.warn("Webhook queue full, dropped event for {} ({} dropped so far)", event.getId(), dropped.incrementAndGet());
+        }
+    }
+
+    private void dispatch() {
+        int batchSize = webhookProperties.getBatchSize();
+        while (running || !queue.isEmpty()) {
+            try {
+                WebhookEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<WebhookEvent> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.offer(batch);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.error("Webhook dispatch failed: {}", ex.getMessage());
+            }
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.complete();
+        }
+    }
+
+    private void deadLetter(String url, List<WebhookEvent> batch, Throwable cause) {
+        log.error("Webhook delivery to {} failed, dead-lettering {} event(s): {}", url, batch.size(), cause.getMessage());
+        synchronized (this) {
+            try (Writer writer = Files.newBufferedWriter(
+                    Paths.get(webhookProperties.getDeadLetterFile()),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                for (WebhookEvent event : batch) {
+                    writer.write(url);
+                    writer.write('\t');
+                    serializationService.write(writer, event);
+                    writer.write('\n');
+                }
+            } catch (IOException ex) {
+                log.error("Unable to write webhook dead-letter file: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A single downstream subscriber with its own bounded backlog and delivery concurrency
+     */
+    private class Subscriber {
+        private final String url;
+        private final WebClient webClient;
+        private final Sinks.Many<List<WebhookEvent>> sink;
+        // Batches accepted by the sink and not yet delivered or dead-lettered
+        private final Set<List<WebhookEvent>> pending;
+        private final CountDownLatch completed;
+        private final Disposable subscription;
+
+        Subscriber(String url, WebClient webClient) {
+            this.url = url;
+            this.webClient = webClient;
+            this.pending = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+            this.completed = new CountDownLatch(1);
+            this.sink = Sinks
+                    .many()
+                    .unicast()
+                    .onBackpressureBuffer(Queues.<List<WebhookEvent>>get(webhookProperties.getSubscriberBacklog()).get());
+            this.subscription = this.sink
+                    .asFlux()
+                    .flatMap(this::deliver, webhookProperties.getMaxConcurrency())
+                    .doFinally(signal -> completed.countDown())
+                    .subscribe();
+        }
+
+        // Only ever called from the dispatcher thread, so emissions are serialized
+        void offer(List<WebhookEvent> batch) {
+            pending.add(batch);
+            if (sink.tryEmitNext(batch).isFailure()) {
+                pending.remove(batch);
+                Mono.fromRunnable(() -> deadLetter(url, batch, new IllegalStateException("subscriber backlog full")))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .subscribe();
+            }
+        }
+
+        private Mono<Void> deliver(List<WebhookEvent> batch) {
+            return webClient
+                    .post()
+                    .uri(url)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(batch)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .retryWhen(Retry.backoff(
+                            webhookProperties.getMaxAttempts() - 1,
+                            Duration.ofMillis(webhookProperties.getInitialBackoffMs())))
+                    .then()
+                    .onErrorResume(ex -> Mono
+                            .<Void>fromRunnable(() -> deadLetter(url, batch, ex))
+                            .subscribeOn(Schedulers.boundedElastic()))
+                    .then(Mono.fromRunnable(() -> pending.remove(batch)));
+        }
+
+        // Called by the dispatcher thread once the queue has been drained
+        void complete() {
+            sink.tryEmitComplete();
+        }
+
+        void await(long deadline) throws InterruptedException {
+            completed.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        // Cancels in-flight deliveries and dead-letters them with the events never dispatched
+        void abandon(List<WebhookEvent> undispatched) {
+            subscription.dispose();
+            List<WebhookEvent> remaining = new ArrayList<>(undispatched);
+            synchronized (pending) {
+                pending.forEach(remaining::addAll);
+                pending.clear();
+            }
+            if (!remaining.isEmpty()) {
+                deadLetter(url, remaining, new IllegalStateException("shutdown timeout elapsed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of the audit log files, and an offline reader for them.
+ * <p>
+ * A file starts with a header of [magic:int][version:int], followed by records encoded as
+ * [length:int][payload][crc32:int], where the payload is a JSON encoded audit record and the
+ * checksum covers the payload. Files are only ever appended to, and a file is never reopened
+ * once closed, so at most the tail of the last file of a crashed writer can be torn. Readers
+ * stop at the first torn or corrupt record of a file.
+ * <p>
+ * Run as a main class, the reader exports the records of the given files, or of every audit log
+ * file in the given directories, as JSON lines on standard output:
+ * <pre>
+ * java -cp verified-id-backend-1.0-SNAPSHOT.jar -Dloader.main=com.smoogiee.verifiedidbackend.utils.AuditLog \
+ *      org.springframework.boot.loader.launch.PropertiesLauncher audit/
+ * </pre>
+ */
+public final class AuditLog {
+    public static final String FILE_PREFIX = "audit-";
+    public static final String FILE_SUFFIX = ".log";
+
+    private static final int MAGIC = 0x56494441; // "VIDA"
+    private static final int VERSION = 1;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private AuditLog() {
+    }
+
+    /**
+     * Appends a file header
+     *
+     * @param out The buffer to append to
+     */
+    public static void writeHeader(ByteArrayOutputStream out) {
+        writeInt(out, MAGIC);
+        writeInt(out, VERSION);
+    }
+
+    /**
+     * Appends a record
+     *
+     * @param out The buffer to append to
+     * @param payload The record payload
+     */
+    public static void writeRecord(ByteArrayOutputStream out, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        writeInt(out, payload.length);
+        out.writeBytes(payload);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    /**
+     * Reads the records of a file, stopping at its first torn or corrupt record
+     *
+     * @param file The audit log file
+     * @param consumer Consumer of the record payloads
+     * @return The number of records read
+     * @throws IOException When the file cannot be read or is not an audit log file
+     */
+    public static long read(Path file, RecordConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not an audit log file");
+            }
+            long records = 0;
+            long offset = 2L * Integer.BYTES;
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[4096];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException ex) {
+                    return records;
+                }
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    throw new TornRecordException(file, offset, records);
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                int checksum;
+                try {
+                    in.readFully(payload, 0, length);
+                    checksum = in.readInt();
+                } catch (EOFException ex) {
+                    throw new TornRecordException(file, offset, records);
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    throw new TornRecordException(file, offset, records);
+                }
+                consumer.accept(payload, length);
+                records++;
+                offset += 2L * Integer.BYTES + length;
+            }
+        }
+    }
+
+    /**
+     * Lists the audit log files of a directory in the order they were written
+     *
+     * @param directory The audit log directory
+     * @return The audit log files
+     * @throws IOException When the directory cannot be listed
+     */
+    public static List<Path> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Exports audit log files as JSON lines on standard output
+     *
+     * @param args Audit log files or directories
+     * @throws IOException When a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: AuditLog <file or directory>...");
+            System.exit(2);
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            files.addAll(Files.isDirectory(path) ? files(path) : List.of(path));
+        }
+
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        long total = 0;
+        for (Path file : files) {
+            try {
+                total += read(file, (payload, length) -> {
+                    out.write(payload, 0, length);
+                    out.write('\n');
+                });
+            } catch (TornRecordException ex) {
+                total += ex.getRecords();
+                System.err.println(ex.getMessage());
+            }
+        }
+        out.flush();
+        System.err.println(total + " record(s) exported from " + files.size() + " file(s)");
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Consumer of record payloads. The payload array is reused between records.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(byte[] payload, int length) throws IOException;
+    }
+
+    /**
+     * Thrown when a file ends with, or contains, a record that cannot be read back
+     */
+    public static final class TornRecordException extends IOException {
+        private final long records;
+
+        TornRecordException(Path file, long offset, long records) {
+            super(file + ": torn or corrupt record at offset " + offset + " after " + records + " record(s)");
+            this.records = records;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-windowed set of 64-bit fingerprints. The window is split into a fixed number
+ * of generations; adds go to the newest generation and the oldest generation is
+ * dropped wholesale on rotation, so entries expire without per-entry timers.
+ * A fingerprint is remembered for at least (generations - 1) / generations of the window.
+ * <p>
+ * Fingerprints are held unboxed in open-addressing long tables. The set is split into
+ * stripes by the high bits of the fingerprint, each guarded by its own monitor and
+ * rotated lazily on its next access, so there is no global lock and no rotation thread.
+ */
+public class ExpiringFingerprintSet {
+    private static final int STRIPE_BITS = 6;
+    private static final int MIN_CAPACITY = 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long generationNanos;
+    private final LongSupplier nanoTime;
+    private final long start;
+    private final Stripe[] stripes;
+
+    /**
+     * Constructor
+     *
+     * @param windowNanos How long fingerprints are remembered for
+     * @param generations The number of generations the window is split into
+     */
+    public ExpiringFingerprintSet(long windowNanos, int generations) {
+        this(windowNanos, generations, System::nanoTime);
+    }
+
+    // Visible for tests, which drive rotation with a manual clock
+    ExpiringFingerprintSet(long windowNanos, int generations, LongSupplier nanoTime) {
+        this.generationNanos = Math.max(1, windowNanos / generations);
+        this.nanoTime = nanoTime;
+        this.start = nanoTime.getAsLong();
+        this.stripes = new Stripe[1 << STRIPE_BITS];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(generations);
+        }
+    }
+
+    /**
+     * Checks whether a fingerprint was added within the window
+     *
+     * @param fingerprint The fingerprint to look up
+     * @return true if the fingerprint is present. false otherwise
+     */
+    public boolean contains(long fingerprint) {
+        long key = key(fingerprint);
+        Stripe stripe = stripes[(int) (key >>> (Long.SIZE - STRIPE_BITS))];
+        synchronized (stripe) {
+            stripe.rotate(epoch());
+            return stripe.contains(key);
+        }
+    }
+
+    /**
+     * Adds a fingerprint unless it was already added within the window
+     *
+     * @param fingerprint The fingerprint to add
+     * @return true if the fingerprint was added. false if it was already present
+     */
+    public boolean add(long fingerprint) {
+        long key = key(fingerprint);
+        Stripe stripe = stripes[(int) (key >>> (Long.SIZE - STRIPE_BITS))];
+        synchronized (stripe) {
+            stripe.rotate(epoch());
+            if (stripe.contains(key)) {
+                return false;
+            }
+            stripe.insert(key);
+            return true;
+        }
+    }
+
+    private long epoch() {
+        return (nanoTime.getAsLong() - start) / generationNanos;
+    }
+
+    // Zero marks an empty slot, so a zero fingerprint is stored as one
+    private static long key(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Computes a 64-bit fingerprint (FNV-1a followed by a MurmurHash3 finalizer) of a sequence of strings
+     *
+     * @param parts The strings to fingerprint
+     * @return The fingerprint
+     */
+    public static long fingerprint(String... parts) {
+        long hash = FNV_OFFSET;
+        for (String part : parts) {
+            for (int i = 0; i < part.length(); i++) {
+                hash ^= part.charAt(i);
+                hash *= FNV_PRIME;
+            }
+            // Separator so that ("ab", "c") and ("a", "bc") differ
+            hash = separate(hash);
+        }
+        return finish(hash);
+    }
+
+    /**
+     * Mixes a hash into a well distributed fingerprint (the MurmurHash3 finalizer)
+     *
+     * @param hash The hash to mix
+     * @return The fingerprint
+     */
+    public static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long separate(long hash) {
+        hash ^= 0xff;
+        return hash * FNV_PRIME;
+    }
+
+    /**
+     * One stripe of the set: a ring of per-generation tables and the epoch it was last rotated to
+     */
+    private static final class Stripe {
+        private final long[][] tables;
+        private final int[] counts;
+        private int current;
+        private long epoch;
+
+        Stripe(int generations) {
+            this.tables = new long[generations][];
+            this.counts = new int[generations];
+            for (int i = 0; i < generations; i++) {
+                tables[i] = new long[MIN_CAPACITY];
+            }
+        }
+
+        void rotate(long now) {
+            // Rotate once per elapsed generation, so idle periods expire everything they should
+            long elapsed = Math.min(now - epoch, tables.length);
+            for (long i = 0; i < elapsed; i++) {
+                // The slot after the current one holds the oldest generation.
+                // Its table is reused unless it is far larger than the newest generation needs
+                int next = (current + 1) % tables.length;
+                int capacity = capacity(counts[current]);
+                if (tables[next].length > capacity * 2) {
+                    tables[next] = new long[capacity];
+                } else {
+                    Arrays.fill(tables[next], 0);
+                }
+                counts[next] = 0;
+                current = next;
+            }
+            epoch = Math.max(epoch, now);
+        }
+
+        boolean contains(long key) {
+            for (long[] table : tables) {
+                int mask = table.length - 1;
+                for (int slot = (int) key & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                    if (table[slot] == key) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void insert(long key) {
+            // Grow at a load factor of 0.5 so probe sequences stay short
+            if ((counts[current] + 1) * 2 > tables[current].length) {
+                long[] grown = new long[tables[current].length * 2];
+                for (long existing : tables[current]) {
+                    if (existing != 0) {
+                        put(grown, existing);
+                    }
+                }
+                tables[current] = grown;
+            }
+            put(tables[current], key);
+            counts[current]++;
+        }
+
+        private static void put(long[] table, long key) {
+            int mask = table.length - 1;
+            int slot = (int) key & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+        }
+
+        private static int capacity(int count) {
+            return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1);
+        }
+    }
+}
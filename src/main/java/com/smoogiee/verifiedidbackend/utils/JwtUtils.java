@@ -0,0 +1,380 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.smoogiee.verifiedidbackend.model.jwt.JwsHeader;
+import com.smoogiee.verifiedidbackend.model.jwt.JwtClaims;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * JWT util class. Segments are located by index and Base64url-decoded straight
+ * into a reusable per-thread buffer, which is streamed through Jackson, so no
+ * intermediate Strings or trees are built for a token. JWS signatures are
+ * verified with the JDK providers; ES256K additionally needs a provider that
+ * supports the secp256k1 curve.
+ */
+public class JwtUtils {
+    private static final int[] BASE64URL = new int[128];
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    // DER SubjectPublicKeyInfo prefix of a raw 32 byte Ed25519 public key
+    private static final byte[] ED25519_PREFIX = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00};
+
+    static {
+        Arrays.fill(BASE64URL, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL[alphabet.charAt(i)] = i;
+        }
+    }
+
+    /**
+     * Gets the start offset of a segment of a compact JWT
+     *
+     * @param token The compact JWT
+     * @param index The segment index. 0 is the header, 1 the payload and 2 the signature
+     * @return The offset of the first character of the segment or -1 if the token has no such segment
+     */
+    public static int segmentStart(String token, int index) {
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            int dot = token.indexOf('.', start);
+            if (dot < 0) {
+                return -1;
+            }
+            start = dot + 1;
+        }
+        return start;
+    }
+
+    /**
+     * Gets the end offset of the segment starting at the provided offset
+     *
+     * @param token The compact JWT
+     * @param start The start offset of the segment
+     * @return The offset after the last character of the segment
+     */
+    public static int segmentEnd(String token, int start) {
+        int dot = token.indexOf('.', start);
+        return dot < 0 ? token.length() : dot;
+    }
+
+    /**
+     * Base64url-decodes a range of a String into a buffer, ignoring trailing padding
+     *
+     * @param source The String holding the encoded data
+     * @param start The offset of the first encoded character
+     * @param end The offset after the last encoded character
+     * @param target The buffer to decode into. Must hold at least {@link #decodedLength(int, int)} bytes
+     * @return The number of decoded bytes
+     */
+    public static int decode(String source, int start, int end, byte[] target) {
+        while (end > start && source.charAt(end - 1) == '=') {
+            end--;
+        }
+        int length = 0;
+        int i = start;
+
+        // Whole quanta: four characters into three bytes. An illegal character makes the quantum negative
+        for (int quantumsEnd = end - 3; i < quantumsEnd; i += 4) {
+            int quantum = value(source, i) << 18
+                    | value(source, i + 1) << 12
+                    | value(source, i + 2) << 6
+                    | value(source, i + 3);
+            if (quantum < 0) {
+                throw illegalCharacter(source, i, i + 4);
+            }
+            target[length++] = (byte) (quantum >> 16);
+            target[length++] = (byte) (quantum >> 8);
+            target[length++] = (byte) quantum;
+        }
+
+        // Unpadded tail: two characters decode to one byte, three to two
+        int remaining = end - i;
+        if (remaining > 0) {
+            int quantum = 0;
+            for (int j = i; j < end; j++) {
+                quantum = quantum << 6 | value(source, j);
+            }
+            if (quantum < 0) {
+                throw illegalCharacter(source, i, end);
+            }
+            if (remaining == 2) {
+                target[length++] = (byte) (quantum >> 4);
+            } else if (remaining == 3) {
+                target[length++] = (byte) (quantum >> 10);
+                target[length++] = (byte) (quantum >> 2);
+            }
+        }
+        return length;
+    }
+
+    private static int value(String source, int index) {
+        char c = source.charAt(index);
+        return c < 128 ? BASE64URL[c] : -1;
+    }
+
+    private static IllegalArgumentException illegalCharacter(String source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value(source, i) < 0) {
+                return new IllegalArgumentException("Illegal base64url character at offset " + i);
+            }
+        }
+        return new IllegalArgumentException("Illegal base64url characters between offsets " + start + " and " + end);
+    }
+
+    /**
+     * Gets the maximum decoded length of a Base64url range
+     *
+     * @param start The offset of the first encoded character
+     * @param end The offset after the last encoded character
+     * @return The maximum number of decoded bytes
+     */
+    public static int decodedLength(int start, int end) {
+        return (int) ((end - start) * 6L / 8);
+    }
+
+    /**
+     * Reads the jti, iss, sub, vc.type and vp.verifiableCredential claims from the payload of a compact JWT.
+     * The signature is not verified.
+     *
+     * @param jsonFactory The Jackson factory to create the streaming parser with
+     * @param token The compact JWT
+     * @return The claims found in the payload
+     * @throws IOException When the token has no payload or the payload is not a JSON object
+     */
+    public static JwtClaims readClaims(JsonFactory jsonFactory, String token) throws IOException {
+        int start = segmentStart(token, 1);
+        if (start < 0) {
+            throw new IOException("JWT has no payload segment");
+        }
+        int end = segmentEnd(token, start);
+        byte[] buffer = buffer(decodedLength(start, end));
+        int length = decode(token, start, end, buffer);
+
+        JwtClaims claims = new JwtClaims();
+        try (JsonParser parser = jsonFactory.createParser(buffer, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JWT payload is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "jti" -> claims.setJti(text(parser, value));
+                    case "iss" -> claims.setIss(text(parser, value));
+                    case "sub" -> claims.setSub(text(parser, value));
+                    case "vc" -> readMember(parser, value, "type", claims.getVcType());
+                    case "vp" -> readMember(parser, value, "verifiableCredential", claims.getVerifiableCredentials());
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Reads the alg and kid parameters from the protected header of a compact JWS
+     *
+     * @param jsonFactory The Jackson factory to create the streaming parser with
+     * @param token The compact JWS
+     * @return The header parameters
+     * @throws IOException When the header is not a JSON object
+     */
+    public static JwsHeader readHeader(JsonFactory jsonFactory, String token) throws IOException {
+        int end = segmentEnd(token, 0);
+        byte[] buffer = buffer(decodedLength(0, end));
+        int length = decode(token, 0, end, buffer);
+
+        JwsHeader header = new JwsHeader();
+        try (JsonParser parser = jsonFactory.createParser(buffer, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JWS header is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "alg" -> header.setAlg(text(parser, value));
+                    case "kid" -> header.setKid(text(parser, value));
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Verifies the signature of a compact JWS
+     *
+     * @param token The compact JWS
+     * @param alg The JWS algorithm from the protected header
+     * @param key The public key of the signer
+     * @return true if the signature is valid. false otherwise
+     * @throws GeneralSecurityException When the algorithm is not supported or does not match the key
+     */
+    public static boolean verify(String token, String alg, PublicKey key) throws GeneralSecurityException {
+        int signatureStart = segmentStart(token, 2);
+        if (signatureStart < 0) {
+            return false;
+        }
+        int signatureEnd = segmentEnd(token, signatureStart);
+        byte[] signature = new byte[decodedLength(signatureStart, signatureEnd)];
+        int signatureLength = decode(token, signatureStart, signatureEnd, signature);
+
+        Signature verifier = signature(alg);
+        verifier.initVerify(key);
+        // The signing input is the ASCII header and payload, encoded without copying them out of the token
+        verifier.update(StandardCharsets.US_ASCII.encode(CharBuffer.wrap(token, 0, signatureStart - 1)));
+        return verifier.verify(signature, 0, signatureLength);
+    }
+
+    /**
+     * Builds a public key from a JSON Web Key
+     *
+     * @param jwk The JSON Web Key
+     * @return The public key
+     * @throws GeneralSecurityException When the key type or curve is not supported
+     */
+    public static PublicKey publicKey(JsonNode jwk) throws GeneralSecurityException {
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        String kty = jwk.path("kty").asText();
+        String crv = jwk.path("crv").asText();
+        switch (kty) {
+            case "EC" -> {
+                String curve = switch (crv) {
+                    case "P-256" -> "secp256r1";
+                    case "P-384" -> "secp384r1";
+                    case "P-521" -> "secp521r1";
+                    case "secp256k1" -> "secp256k1";
+                    default -> throw new NoSuchAlgorithmException("Unsupported EC curve: " + crv);
+                };
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(curve));
+                ECPoint point = new ECPoint(
+                        new BigInteger(1, decoder.decode(jwk.path("x").asText())),
+                        new BigInteger(1, decoder.decode(jwk.path("y").asText())));
+                return KeyFactory
+                        .getInstance("EC")
+                        .generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+            }
+            case "RSA" -> {
+                return KeyFactory
+                        .getInstance("RSA")
+                        .generatePublic(new RSAPublicKeySpec(
+                                new BigInteger(1, decoder.decode(jwk.path("n").asText())),
+                                new BigInteger(1, decoder.decode(jwk.path("e").asText()))));
+            }
+            case "OKP" -> {
+                if (!"Ed25519".equals(crv)) {
+                    throw new NoSuchAlgorithmException("Unsupported OKP curve: " + crv);
+                }
+                byte[] x = decoder.decode(jwk.path("x").asText());
+                byte[] encoded = Arrays.copyOf(ED25519_PREFIX, ED25519_PREFIX.length + x.length);
+                System.arraycopy(x, 0, encoded, ED25519_PREFIX.length, x.length);
+                return KeyFactory
+                        .getInstance("Ed25519")
+                        .generatePublic(new X509EncodedKeySpec(encoded));
+            }
+            default -> throw new NoSuchAlgorithmException("Unsupported key type: " + kty);
+        }
+    }
+
+    private static Signature signature(String alg) throws GeneralSecurityException {
+        if (alg == null) {
+            throw new NoSuchAlgorithmException("Missing JWS algorithm");
+        }
+        return switch (alg) {
+            case "ES256", "ES256K" -> Signature.getInstance("SHA256withECDSAinP1363Format");
+            case "ES384" -> Signature.getInstance("SHA384withECDSAinP1363Format");
+            case "ES512" -> Signature.getInstance("SHA512withECDSAinP1363Format");
+            case "RS256" -> Signature.getInstance("SHA256withRSA");
+            case "RS384" -> Signature.getInstance("SHA384withRSA");
+            case "RS512" -> Signature.getInstance("SHA512withRSA");
+            case "PS256" -> pss("SHA-256", MGF1ParameterSpec.SHA256, 32);
+            case "PS384" -> pss("SHA-384", MGF1ParameterSpec.SHA384, 48);
+            case "PS512" -> pss("SHA-512", MGF1ParameterSpec.SHA512, 64);
+            case "EdDSA" -> Signature.getInstance("Ed25519");
+            default -> throw new NoSuchAlgorithmException("Unsupported JWS algorithm: " + alg);
+        };
+    }
+
+    private static Signature pss(String digest, MGF1ParameterSpec mgf, int saltLength) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("RSASSA-PSS");
+        signature.setParameter(new PSSParameterSpec(digest, "MGF1", mgf, saltLength, 1));
+        return signature;
+    }
+
+    /**
+     * Gets this thread's decode buffer, grown to at least the provided size
+     */
+    private static byte[] buffer(int size) {
+        byte[] buffer = BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * Collects the string values of one member of an object claim. The member may be a string or an array of strings
+     */
+    private static void readMember(JsonParser parser, JsonToken value, String member, List<String> target) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (!member.equals(name)) {
+                parser.skipChildren();
+            } else if (token == JsonToken.VALUE_STRING) {
+                target.add(parser.getText());
+            } else if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.VALUE_STRING) {
+                        target.add(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -1,22 +1,37 @@
 package com.smoogiee.verifiedidbackend.utils;
 
-import jakarta.servlet.http.HttpServletRequest;
-import lombok.extern.slf4j.Slf4j;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Logging util class
  */
-@Slf4j
 public class LogUtils {
+    private static final Logger PAYLOAD_LOG = LoggerFactory.getLogger("com.smoogiee.verifiedidbackend.payload");
+
     /**
-     * Logs the HTTP method and request URL
+     * Logs a pretty printed JSON payload at DEBUG level.
+     * Serialization only happens when the payload logger is enabled,
+     * so calls are free on the request path when payload logging is off.
      *
-     * @param request The HTTP request to log
+     * @param label A short description of the payload
+     * @param objectMapper The ObjectMapper used to serialize the payload
+     * @param payload The payload to log
      */
-    public static void logHttpRequest(HttpServletRequest request) {
-        log.info("{} - {}{}",
-                request.getMethod(),
-                request.getRequestURL().toString(),
-                request.getQueryString() != null ? "?" + request.getQueryString() : "");
+    public static void logPayload(String label, ObjectMapper objectMapper, Object payload) {
+        if (!PAYLOAD_LOG.isDebugEnabled()) {
+            return;
+        }
+        try {
+            PAYLOAD_LOG.debug("{}: {}",
+                    label,
+                    payload instanceof String ? payload : objectMapper
+                            .writerWithDefaultPrettyPrinter()
+                            .writeValueAsString(payload));
+        } catch (JsonProcessingException ex) {
+            PAYLOAD_LOG.debug("{}: <unserializable: {}>", label, ex.getMessage());
+        }
     }
 }
@@ -0,0 +1,493 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Off-heap string key/value store for large numbers of short-lived entries.
+ * <p>
+ * Records are binary encoded as [expiresAt:long][keyLength:int][valueLength:int][key][value]
+ * and appended to a ring of fixed-size segments held in direct or memory-mapped buffers.
+ * Each shard indexes its records with an open-addressing table of primitive arrays
+ * (64-bit key fingerprint and packed record address), so the heap cost per entry is
+ * 16 bytes and no objects are allocated per entry. When the ring wraps, the oldest
+ * segment is compacted before it is reused: records that are still indexed and unexpired are
+ * copied forward to its start and appends continue after them, while superseded and expired
+ * records are dropped. Compaction scans the shard's index once per segment reuse. A write that
+ * finds no room in any segment after compaction is refused, so a live entry is never evicted
+ * before its expiry; the caller keeps refused entries elsewhere. Expired index slots are
+ * reclaimed by {@link #sweep()}.
+ * <p>
+ * An optional {@link EvictionListener} is told about expired entries as they are dropped.
+ * It is called under the shard's monitor.
+ * <p>
+ * A mapped file only backs memory; the store does not survive restarts. Records are written
+ * to it in plaintext, so it is created owner-only where the file system supports POSIX
+ * permissions, truncated on open and deleted on close. On Unix it is unlinked as soon as
+ * it is opened, leaving no path other processes can open while the store is in use.
+ */
+public class OffHeapStore implements AutoCloseable {
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int MAX_GENERATION = (1 << 23) - 1;
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = -1L;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final Shard[] shards;
+    private final FileChannel channel;
+
+    /**
+     * Constructor
+     *
+     * @param shardCount The number of independently locked shards
+     * @param segmentsPerShard The number of segments in each shard's ring (at most 256)
+     * @param segmentSize The size of each segment in bytes
+     * @param file A file to memory-map the segments from, or null to allocate direct buffers
+     * @throws IOException When the file cannot be mapped
+     */
+    public OffHeapStore(int shardCount, int segmentsPerShard, int segmentSize, Path file) throws IOException {
+        this(shardCount, segmentsPerShard, segmentSize, file, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param shardCount The number of independently locked shards
+     * @param segmentsPerShard The number of segments in each shard's ring (at most 256)
+     * @param segmentSize The size of each segment in bytes
+     * @param file A file to memory-map the segments from, or null to allocate direct buffers
+     * @param listener A listener told about evicted and expired entries, or null
+     * @throws IOException When the file cannot be mapped
+     */
+    public OffHeapStore(int shardCount,
+                        int segmentsPerShard,
+                        int segmentSize,
+                        Path file,
+                        EvictionListener listener) throws IOException {
+        if (segmentsPerShard < 2 || segmentsPerShard > 256) {
+            throw new IllegalArgumentException("segmentsPerShard must be between 2 and 256");
+        }
+        this.channel = file == null ? null : open(file);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            ByteBuffer[] segments = new ByteBuffer[segmentsPerShard];
+            for (int j = 0; j < segmentsPerShard; j++) {
+                if (channel == null) {
+                    segments[j] = ByteBuffer.allocateDirect(segmentSize);
+                } else {
+                    long position = ((long) i * segmentsPerShard + j) * segmentSize;
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentSize);
+                    segments[j] = mapped;
+                }
+            }
+            shards[i] = new Shard(segments, segmentSize, listener);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        Set<OpenOption> options = Set.of(
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        if (!file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return FileChannel.open(file, options);
+        }
+
+        // An existing file is restricted before it is truncated and written to
+        if (Files.exists(file)) {
+            Files.setPosixFilePermissions(file, OWNER_ONLY);
+        }
+        return FileChannel.open(file, options, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+    }
+
+    /**
+     * Gets the value stored under a key
+     *
+     * @param key The key to look up
+     * @return The value or null if the key is absent, expired or evicted
+     */
+    public String get(String key) {
+        long fingerprint = ExpiringFingerprintSet.fingerprint(key);
+        return shard(fingerprint).get(fingerprint, key.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+    }
+
+    /**
+     * Stores a value under a key
+     *
+     * @param key The key to store the value under
+     * @param value The value to store
+     * @param expiresAt The expiry time in epoch milliseconds
+     * @return true if the value was stored. false if the record is larger than a segment,
+     *         or if every segment of its shard is full of live entries
+     */
+    public boolean put(String key, String value, long expiresAt) {
+        long fingerprint = ExpiringFingerprintSet.fingerprint(key);
+        return shard(fingerprint).put(
+                fingerprint,
+                key.getBytes(StandardCharsets.UTF_8),
+                value.getBytes(StandardCharsets.UTF_8),
+                expiresAt);
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key The key to remove
+     */
+    public void remove(String key) {
+        long fingerprint = ExpiringFingerprintSet.fingerprint(key);
+        shard(fingerprint).remove(fingerprint, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Removes expired and evicted entries from the indexes
+     *
+     * @return The number of entries removed
+     */
+    public int sweep() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Shard shard : shards) {
+            removed += shard.sweep(now);
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the number of indexed entries, including any not yet swept
+     *
+     * @return The number of indexed entries
+     */
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private Shard shard(long fingerprint) {
+        return shards[(int) ((fingerprint >>> 32) % shards.length)];
+    }
+
+    /**
+     * Listener of entries removed by the store itself rather than by {@link #remove(String)}
+     */
+    public interface EvictionListener {
+        /**
+         * Whether evictions should be reported. Checked before the key of an evicted entry is decoded
+         *
+         * @return true to report evictions
+         */
+        boolean isEnabled();
+
+        /**
+         * Called for an evicted or expired entry
+         *
+         * @param key The key of the entry
+         * @param cause EXPIRED, the only cause: live entries are never evicted
+         */
+        void evicted(String key, String cause);
+    }
+
+    /**
+     * A ring of segments with its own index, guarded by its own monitor
+     */
+    private static final class Shard {
+        private final ByteBuffer[] segments;
+        private final int[] generations;
+        private final int segmentSize;
+        private final EvictionListener listener;
+        private int writeSegment;
+        private int writeOffset;
+        private long[] fingerprints;
+        private long[] addresses;
+        private int size;
+        private int tombstones;
+
+        Shard(ByteBuffer[] segments, int segmentSize, EvictionListener listener) {
+            this.segments = segments;
+            this.segmentSize = segmentSize;
+            this.listener = listener;
+            this.generations = new int[segments.length];
+            Arrays.fill(generations, 1);
+            this.fingerprints = new long[1024];
+            this.addresses = new long[1024];
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized String get(long fingerprint, byte[] key, long now) {
+            int slot = find(fingerprint, key);
+            if (slot < 0) {
+                return null;
+            }
+            long address = addresses[slot];
+            ByteBuffer segment = segments[segment(address)];
+            int offset = offset(address);
+            if (segment.getLong(offset) <= now) {
+                expired(address);
+                delete(slot);
+                return null;
+            }
+            int keyLength = segment.getInt(offset + Long.BYTES);
+            int valueLength = segment.getInt(offset + Long.BYTES + Integer.BYTES);
+            byte[] value = new byte[valueLength];
+            segment.get(offset + HEADER_SIZE + keyLength, value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        synchronized boolean put(long fingerprint, byte[] key, byte[] value, long expiresAt) {
+            int recordSize = HEADER_SIZE + key.length + value.length;
+            if (recordSize > segmentSize) {
+                return false;
+            }
+            if (writeOffset + recordSize > segmentSize && !advanceSegment(recordSize)) {
+                return false;
+            }
+
+            // Append the record to the current segment
+            ByteBuffer segment = segments[writeSegment];
+            segment.putLong(writeOffset, expiresAt);
+            segment.putInt(writeOffset + Long.BYTES, key.length);
+            segment.putInt(writeOffset + Long.BYTES + Integer.BYTES, value.length);
+            segment.put(writeOffset + HEADER_SIZE, key);
+            segment.put(writeOffset + HEADER_SIZE + key.length, value);
+            long address = address(generations[writeSegment], writeSegment, writeOffset);
+            writeOffset += recordSize;
+
+            // Point the index at the new record, replacing any previous record for the key
+            int slot = find(fingerprint, key);
+            if (slot >= 0) {
+                addresses[slot] = address;
+                return true;
+            }
+            if ((size + tombstones + 1) * 10L > fingerprints.length * 7L) {
+                rebuild(System.currentTimeMillis());
+            }
+            insert(fingerprint, address);
+            return true;
+        }
+
+        synchronized void remove(long fingerprint, byte[] key) {
+            int slot = find(fingerprint, key);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized int sweep(long now) {
+            int removed = 0;
+            for (int slot = 0; slot < addresses.length; slot++) {
+                long address = addresses[slot];
+                if (address != EMPTY && address != TOMBSTONE && (!live(address) || expiresAt(address) <= now)) {
+                    if (live(address)) {
+                        expired(address);
+                    }
+                    delete(slot);
+                    removed++;
+                }
+            }
+            if (tombstones * 4L > fingerprints.length) {
+                rebuild(now);
+            }
+            return removed;
+        }
+
+        // Moves on to the next segment with room for a record, compacting each segment it reuses
+        private boolean advanceSegment(int recordSize) {
+            long now = System.currentTimeMillis();
+            for (int attempt = 0; attempt < segments.length; attempt++) {
+                writeSegment = (writeSegment + 1) % segments.length;
+                compact(writeSegment, now);
+                if (writeOffset + recordSize <= segmentSize) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Copies the live records of a segment about to be reused to its start, in their original order.
+        // Records only move towards the start of the segment, so a forward copy never overwrites one not yet moved
+        private void compact(int reused, long now) {
+            long[] moves = new long[16];
+            int count = 0;
+            for (int slot = 0; slot < addresses.length; slot++) {
+                long address = addresses[slot];
+                if (address == EMPTY || address == TOMBSTONE || segment(address) != reused) {
+                    continue;
+                }
+                if (!live(address)) {
+                    delete(slot);
+                } else if (expiresAt(address) <= now) {
+                    expired(address);
+                    delete(slot);
+                } else {
+                    if (count == moves.length) {
+                        moves = Arrays.copyOf(moves, count * 2);
+                    }
+                    moves[count++] = ((long) offset(address) << 32) | slot;
+                }
+            }
+            Arrays.sort(moves, 0, count);
+
+            generations[reused] = generations[reused] == MAX_GENERATION ? 1 : generations[reused] + 1;
+            ByteBuffer segment = segments[reused];
+            writeOffset = 0;
+            for (int i = 0; i < count; i++) {
+                int offset = (int) (moves[i] >>> 32);
+                int slot = (int) moves[i];
+                int recordSize = HEADER_SIZE
+                        + segment.getInt(offset + Long.BYTES)
+                        + segment.getInt(offset + Long.BYTES + Integer.BYTES);
+                if (offset != writeOffset) {
+                    segment.put(writeOffset, segment, offset, recordSize);
+                }
+                addresses[slot] = address(generations[reused], reused, writeOffset);
+                writeOffset += recordSize;
+            }
+        }
+
+        private void expired(long address) {
+            if (listener != null && listener.isEnabled()) {
+                listener.evicted(key(address), "EXPIRED");
+            }
+        }
+
+        private String key(long address) {
+            ByteBuffer segment = segments[segment(address)];
+            int offset = offset(address);
+            byte[] key = new byte[segment.getInt(offset + Long.BYTES)];
+            segment.get(offset + HEADER_SIZE, key);
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        private int find(long fingerprint, byte[] key) {
+            int mask = fingerprints.length - 1;
+            for (int slot = (int) fingerprint & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++) {
+                long address = addresses[slot];
+                if (address == EMPTY) {
+                    return -1;
+                }
+                if (address != TOMBSTONE && fingerprints[slot] == fingerprint) {
+                    if (!live(address)) {
+                        delete(slot);
+                    } else if (keyEquals(address, key)) {
+                        return slot;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long fingerprint, long address) {
+            int mask = fingerprints.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (addresses[slot] != EMPTY && addresses[slot] != TOMBSTONE) {
+                slot = (slot + 1) & mask;
+            }
+            if (addresses[slot] == TOMBSTONE) {
+                tombstones--;
+            }
+            fingerprints[slot] = fingerprint;
+            addresses[slot] = address;
+            size++;
+        }
+
+        private void delete(int slot) {
+            addresses[slot] = TOMBSTONE;
+            size--;
+            tombstones++;
+        }
+
+        private void rebuild(long now) {
+            long[] oldFingerprints = fingerprints;
+            long[] oldAddresses = addresses;
+            int live = 0;
+            for (long address : oldAddresses) {
+                if (address != EMPTY && address != TOMBSTONE && live(address)) {
+                    if (expiresAt(address) > now) {
+                        live++;
+                    } else {
+                        expired(address);
+                    }
+                }
+            }
+            int capacity = 1024;
+            while (capacity * 5L < (live + 1) * 10L) {
+                capacity <<= 1;
+            }
+            fingerprints = new long[capacity];
+            addresses = new long[capacity];
+            size = 0;
+            tombstones = 0;
+            for (int slot = 0; slot < oldAddresses.length; slot++) {
+                long address = oldAddresses[slot];
+                if (address != EMPTY && address != TOMBSTONE && live(address) && expiresAt(address) > now) {
+                    insert(oldFingerprints[slot], address);
+                }
+            }
+        }
+
+        private boolean live(long address) {
+            return generations[segment(address)] == generation(address);
+        }
+
+        private long expiresAt(long address) {
+            return segments[segment(address)].getLong(offset(address));
+        }
+
+        private boolean keyEquals(long address, byte[] key) {
+            ByteBuffer segment = segments[segment(address)];
+            int offset = offset(address);
+            if (segment.getInt(offset + Long.BYTES) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (segment.get(offset + HEADER_SIZE + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Address layout: [generation:23][segment:8][offset:32]; generations start at 1 so addresses are never EMPTY
+        private static long address(int generation, int segment, int offset) {
+            return ((long) generation << 40) | ((long) segment << 32) | (offset & 0xffffffffL);
+        }
+
+        private static int generation(long address) {
+            return (int) (address >>> 40);
+        }
+
+        private static int segment(long address) {
+            return (int) (address >>> 32) & 0xff;
+        }
+
+        private static int offset(long address) {
+            return (int) address;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer/multi-consumer ring buffer.
+ * Each slot carries a sequence number that tells producers and consumers
+ * whether the slot is free for the current lap, so neither side ever takes a lock.
+ *
+ * @param <T> The element type
+ */
+public class RingBuffer<T> {
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param capacity The buffer capacity, rounded up to the next power of two and at least 2
+     * @throws IllegalArgumentException If the capacity exceeds the largest power of two an int holds
+     */
+    public RingBuffer(int capacity) {
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity " + capacity + " exceeds " + (1 << 30));
+        }
+        // Two slots at least, so a full slot's sequence never matches the next lap's free one
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element if there is room
+     *
+     * @param element The element to add
+     * @return true if the element was added. false if the buffer is full
+     */
+    public boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Removes the oldest element if there is one
+     *
+     * @return The oldest element or null if the buffer is empty
+     */
+    public T poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Moves up to maxElements of the oldest elements into a list
+     *
+     * @param batch The list to add elements to
+     * @param maxElements The maximum number of elements to move
+     * @return The number of elements moved
+     */
+    public int drainTo(List<T> batch, int maxElements) {
+        int drained = 0;
+        T element;
+        while (drained < maxElements && (element = poll()) != null) {
+            batch.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Gets an estimate of the number of buffered elements
+     *
+     * @return The approximate number of buffered elements
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Gets the buffer capacity
+     *
+     * @return The buffer capacity
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.http.HttpHeaders;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
@@ -30,6 +31,37 @@ public class ServerUtils {
         return new String(Base64.getUrlDecoder().decode(base64String), StandardCharsets.UTF_8);
     }
 
+    /**
+     * Checks whether the If-None-Match header of a request matches an entity tag.
+     * The header may list several tags or be a wildcard, and tags are compared weakly
+     * as RFC 9110 requires for If-None-Match, so W/"1" and "1" match
+     *
+     * @param headers The request headers
+     * @param etag The entity tag of the current representation
+     * @return true if the client already holds the representation. false otherwise
+     */
+    public static boolean ifNoneMatch(HttpHeaders headers, String etag) {
+        List<String> candidates;
+        try {
+            candidates = headers.getIfNoneMatch();
+        } catch (IllegalArgumentException ex) {
+            // A malformed header cannot match anything
+            return false;
+        }
+        String opaqueTag = opaqueTag(etag);
+        for (String candidate : candidates) {
+            if ("*".equals(candidate.trim()) || opaqueTag(candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        String tag = etag.trim();
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
     /**
      * Checks whether a request originates from a mobile browser
      * @param request The HTTP request to check
@@ -0,0 +1,56 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+/**
+ * Event counter over a sliding time window.
+ * The window is split into a fixed ring of buckets, so memory does not grow with the
+ * number of events; a bucket is cleared lazily when the ring comes back around to it.
+ */
+public class SlidingWindowCounter {
+    private final long bucketMillis;
+    private final long[] counts;
+    private final long[] epochs;
+
+    /**
+     * Constructor
+     *
+     * @param windowMillis The length of the window in milliseconds
+     * @param buckets The number of buckets the window is split into
+     */
+    public SlidingWindowCounter(long windowMillis, int buckets) {
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.counts = new long[buckets];
+        this.epochs = new long[buckets];
+    }
+
+    /**
+     * Counts an event
+     *
+     * @param now The event time in epoch milliseconds
+     */
+    public synchronized void increment(long now) {
+        long epoch = now / bucketMillis;
+        int bucket = (int) (epoch % counts.length);
+        if (epochs[bucket] != epoch) {
+            epochs[bucket] = epoch;
+            counts[bucket] = 0;
+        }
+        counts[bucket]++;
+    }
+
+    /**
+     * Gets the number of events in the window ending now
+     *
+     * @param now The current time in epoch milliseconds
+     * @return The number of events in the window
+     */
+    public synchronized long sum(long now) {
+        long oldest = now / bucketMillis - counts.length;
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (epochs[i] > oldest) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,94 @@
+package com.smoogiee.verifiedidbackend.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.model.jwt.JwtClaims;
+import com.smoogiee.verifiedidbackend.utils.JwtUtils;
+import com.smoogiee.verifiedidbackend.utils.ServerUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the claims of a presentation receipt vp_token through JwtUtils
+ * with the previous path: String.split, padded ServerUtils.decodeBase64 and a JsonNode tree.
+ * <p>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="JwtBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Param({"1", "4"})
+    private int credentials;
+
+    private String vpToken;
+
+    @Setup
+    public void setup() {
+        StringBuilder vcs = new StringBuilder();
+        for (int i = 0; i < credentials; i++) {
+            if (i > 0) {
+                vcs.append(',');
+            }
+            String vc = token("""
+                    {"jti":"urn:pic:%s","iss":"did:web:issuer.example.com","sub":"did:web:holder.example.com",
+                    "iat":1700000000,"exp":1800000000,"vc":{"@context":["https://www.w3.org/2018/credentials/v1"],
+                    "type":["VerifiableCredential","VerifiedEmployee"],"credentialSubject":{"firstName":"Megan",
+                    "lastName":"Bowen","displayName":"Megan Bowen","mail":"megan@example.com"},
+                    "credentialStatus":{"id":"urn:uuid:%s","type":"RevocationList2021Status"}}}
+                    """.formatted(i, i));
+            vcs.append('"').append(vc).append('"');
+        }
+        vpToken = token("""
+                {"jti":"urn:vp:1","iss":"did:web:holder.example.com","aud":"did:web:verifier.example.com",
+                "nonce":"b1c2d3","iat":1700000000,"exp":1700003600,"vp":{"@context":["https://www.w3.org/2018/credentials/v1"],
+                "type":["VerifiablePresentation"],"verifiableCredential":[%s]}}
+                """.formatted(vcs));
+    }
+
+    @Benchmark
+    public void serverUtils(Blackhole blackhole) throws Exception {
+        String[] parts = vpToken.split("\\.");
+        JsonNode payload = objectMapper.readTree(ServerUtils.decodeBase64(parts[1]));
+        blackhole.consume(payload.path("jti").asText(null));
+        blackhole.consume(payload.path("iss").asText(null));
+        blackhole.consume(payload.path("sub").asText(null));
+        for (JsonNode credential : payload.path("vp").path("verifiableCredential")) {
+            blackhole.consume(credential.asText());
+        }
+    }
+
+    @Benchmark
+    public JwtClaims jwtUtils() throws Exception {
+        return JwtUtils.readClaims(objectMapper.getFactory(), vpToken);
+    }
+
+    private static String token(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        byte[] signature = new byte[64];
+        ThreadLocalRandom.current().nextBytes(signature);
+        return encoder.encodeToString("{\"alg\":\"ES256K\",\"kid\":\"did:web:issuer.example.com#key-1\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.replace("\n", "").getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(signature);
+    }
+}
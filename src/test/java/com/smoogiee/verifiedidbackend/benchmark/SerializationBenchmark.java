@@ -0,0 +1,111 @@
+package com.smoogiee.verifiedidbackend.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
+import com.smoogiee.verifiedidbackend.model.verifiedid.CallbackEvent;
+import com.smoogiee.verifiedidbackend.service.SerializationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cached readers and writers of SerializationService with ObjectMapper calls and
+ * with readers and writers created per call, with and without Blackbird and for the shared
+ * and the default thread-local buffer recycler pool. Allocation is what the cached path and
+ * the pooled buffers are meant to save, so run it with the GC profiler.
+ * <p>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SerializationBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private static final String CALLBACK_EVENT = """
+            {"requestId":"e66fc456-05e1-4313-8658-1c4319de3214","requestStatus":"presentation_verified",
+            "state":"727539c5-bcf7-42d1-853b-98c59b8a28ca","subject":"did:web:holder.example.com",
+            "verifiedCredentialsData":[{"issuer":"did:web:issuer.example.com",
+            "type":["VerifiableCredential","VerifiedEmployee"],"claims":{"firstName":"Megan","lastName":"Bowen"},
+            "credentialState":{"revocationStatus":"VALID"},
+            "domainValidation":{"url":"https://issuer.example.com/"},
+            "issuanceDate":"2024-01-01T00:00:00Z","expirationDate":"2025-01-01T00:00:00Z"}]}
+            """;
+
+    @Param({"true", "false"})
+    private boolean blackbird;
+
+    @Param({"shared", "threadLocal"})
+    private String pool;
+
+    private ObjectMapper objectMapper;
+    private SerializationService serializationService;
+    private ApiResponse apiResponse;
+
+    @Setup
+    public void setup() throws Exception {
+        // Configured like the ObjectMapper bean in AppConfig
+        JsonFactory jsonFactory = JsonFactory
+                .builder()
+                .recyclerPool("shared".equals(pool)
+                        ? JsonRecyclerPools.sharedConcurrentDequePool()
+                        : JsonRecyclerPools.threadLocalPool())
+                .build();
+        objectMapper = new ObjectMapper(jsonFactory);
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        if (blackbird) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
+        serializationService = new SerializationService(objectMapper);
+        apiResponse = objectMapper.readValue("""
+                {"requestId":"e66fc456-05e1-4313-8658-1c4319de3214",
+                "url":"openid-vc://?request_uri=https://verifiedid.did.msidentity.com/v1.0/verifiableCredentials/issuanceRequests/e66fc456",
+                "expiry":1792370994,"id":"727539c5-bcf7-42d1-853b-98c59b8a28ca","pin":"4421"}
+                """, ApiResponse.class);
+    }
+
+    @Benchmark
+    public CallbackEvent readMapper() throws Exception {
+        return objectMapper.readValue(CALLBACK_EVENT, CallbackEvent.class);
+    }
+
+    @Benchmark
+    public CallbackEvent readPerCall() throws Exception {
+        return objectMapper.readerFor(CallbackEvent.class).readValue(CALLBACK_EVENT);
+    }
+
+    @Benchmark
+    public CallbackEvent readCached() throws Exception {
+        return serializationService.read(CALLBACK_EVENT, CallbackEvent.class);
+    }
+
+    @Benchmark
+    public String writeMapper() throws Exception {
+        return objectMapper.writeValueAsString(apiResponse);
+    }
+
+    @Benchmark
+    public String writePerCall() throws Exception {
+        return objectMapper.writerFor(ApiResponse.class).writeValueAsString(apiResponse);
+    }
+
+    @Benchmark
+    public String writeCached() throws Exception {
+        return serializationService.write(apiResponse);
+    }
+}
@@ -0,0 +1,94 @@
+package com.smoogiee.verifiedidbackend.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the payload size and the encode and decode cost of the negotiated status encodings
+ * (JSON, CBOR and Smile) for the status and issuance responses. The raw and gzipped sizes
+ * of each payload are printed once per trial.
+ * <p>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="StatusEncodingBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusEncodingBenchmark {
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"presentation_verified", "issuance"})
+    private String payload;
+
+    private ObjectMapper mapper;
+    private JsonNode body;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        // Configured like the message converters in AppConfig
+        ObjectMapper objectMapper = new ObjectMapper();
+        mapper = switch (format) {
+            case "cbor" -> objectMapper.copyWith(new CBORFactory());
+            case "smile" -> objectMapper.copyWith(new SmileFactory());
+            default -> objectMapper;
+        };
+        body = objectMapper.readTree("presentation_verified".equals(payload) ? """
+                {"status":"presentation_verified","subject":"did:web:holder.example.com",
+                "payload":[{"issuer":"did:web:issuer.example.com","type":["VerifiableCredential","VerifiedEmployee"],
+                "claims":{"firstName":"Megan","lastName":"Bowen","displayName":"Megan Bowen",
+                "jobTitle":"Product Manager","mail":"megan@example.com","preferredLanguage":"en-US",
+                "revocationId":"megan@example.com"},"credentialState":{"revocationStatus":"VALID"},
+                "domainValidation":{"url":"https://issuer.example.com/"},
+                "issuanceDate":"2024-01-01T00:00:00Z","expirationDate":"2025-01-01T00:00:00Z"}],
+                "type":["VerifiableCredential","VerifiedEmployee"],"issuanceDate":"2024-01-01T00:00:00Z",
+                "expirationDate":"2025-01-01T00:00:00Z","jti":"urn:pic:4d6f3c1e-8a7b-4b8e-9f2a-1c3d5e7f9a0b",
+                "verification":"verified"}
+                """ : """
+                {"requestId":"e66fc456-05e1-4313-8658-1c4319de3214",
+                "url":"openid-vc://?request_uri=https://verifiedid.did.msidentity.com/v1.0/tenants/9c59be8b-bd18-45d9-b9d9-082bc07c094f/verifiableCredentials/issuanceRequests/e66fc456-05e1-4313-8658-1c4319de3214",
+                "expiry":1792370994,"id":"727539c5-bcf7-42d1-853b-98c59b8a28ca","pin":"4421"}
+                """);
+        encoded = mapper.writeValueAsBytes(body);
+        System.out.printf("%n%s %s: %d bytes, %d gzipped%n", format, payload, encoded.length, gzipped(encoded));
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public JsonNode decode() throws IOException {
+        return mapper.readTree(encoded);
+    }
+
+    private static int gzipped(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.size();
+    }
+}
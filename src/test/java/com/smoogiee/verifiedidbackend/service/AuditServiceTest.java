@@ -0,0 +1,159 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.AuditProperties;
+import com.smoogiee.verifiedidbackend.model.audit.AuditRecord;
+import com.smoogiee.verifiedidbackend.utils.AuditLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of audit log group commits and the retry of failed commits
+ */
+class AuditServiceTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AuditService auditService;
+
+    @TempDir
+    Path root;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (auditService != null) {
+            auditService.stop();
+        }
+    }
+
+    @Test
+    void auditedRecordsAreCommittedAndReadBack() throws Exception {
+        Path directory = root.resolve("audit");
+        auditService = start(directory, 64, 5);
+
+        auditService.record(record("s1", "presentation_verified"));
+        auditService.record(record("s2", "request_retrieved"));
+        auditService.record(record("s3", "issuance_successful"));
+        auditService.stop();
+
+        assertThat(records(directory)).containsExactly("s1 presentation_verified", "s3 issuance_successful");
+        assertThat(counter("written")).isEqualTo(2);
+        assertThat(counter("failed")).isZero();
+    }
+
+    @Test
+    void disabledAuditLogRecordsNothing() throws Exception {
+        Path directory = root.resolve("audit");
+        AuditProperties auditProperties = properties(directory, 64, 5);
+        ReflectionTestUtils.setField(auditProperties, "enabled", false);
+        auditService = new AuditService(new SerializationService(new ObjectMapper()), auditProperties, meterRegistry);
+        auditService.start();
+
+        auditService.record(record("s1", "presentation_verified"));
+
+        assertThat(auditService.records("presentation_verified")).isFalse();
+        assertThat(directory).doesNotExist();
+    }
+
+    @Test
+    void failedCommitIsRetriedInANewFile() throws Exception {
+        Path directory = root.resolve("audit");
+        // Every commit rolls to a new file, so removing the directory fails the next commit
+        auditService = start(directory, 0, 5);
+        deleteDirectory(directory);
+
+        auditService.record(record("s1", "presentation_verified"));
+        await(() -> meterRegistry.counter("audit.retries").count() >= 1);
+        Files.createDirectories(directory);
+        await(() -> counter("written") == 1);
+        auditService.stop();
+
+        assertThat(records(directory)).containsExactly("s1 presentation_verified");
+        assertThat(counter("failed")).isZero();
+    }
+
+    @Test
+    void batchIsDroppedOnceItsAttemptsAreSpent() throws Exception {
+        Path directory = root.resolve("audit");
+        auditService = start(directory, 0, 2);
+        deleteDirectory(directory);
+
+        auditService.record(record("s1", "presentation_verified"));
+        await(() -> counter("failed") == 1);
+
+        assertThat(meterRegistry.counter("audit.retries").count()).isEqualTo(1);
+        assertThat(counter("written")).isZero();
+    }
+
+    private AuditService start(Path directory, long maxFileMb, int maxAttempts) throws IOException {
+        AuditService service = new AuditService(new SerializationService(new ObjectMapper()),
+                properties(directory, maxFileMb, maxAttempts), meterRegistry);
+        service.start();
+        return service;
+    }
+
+    private static AuditProperties properties(Path directory, long maxFileMb, int maxAttempts) {
+        AuditProperties auditProperties = new AuditProperties();
+        ReflectionTestUtils.setField(auditProperties, "enabled", true);
+        ReflectionTestUtils.setField(auditProperties, "events", new String[]{"presentation_verified", "issuance_successful"});
+        ReflectionTestUtils.setField(auditProperties, "directory", directory.toString());
+        ReflectionTestUtils.setField(auditProperties, "maxFileMb", maxFileMb);
+        ReflectionTestUtils.setField(auditProperties, "queueCapacity", 16);
+        ReflectionTestUtils.setField(auditProperties, "batchSize", 8);
+        ReflectionTestUtils.setField(auditProperties, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(auditProperties, "retryBackoffMs", 20L);
+        return auditProperties;
+    }
+
+    private static AuditRecord record(String id, String requestStatus) {
+        AuditRecord record = new AuditRecord();
+        record.setId(id);
+        record.setRequestStatus(requestStatus);
+        record.setCompletedAt(1);
+        return record;
+    }
+
+    private double counter(String result) {
+        return meterRegistry.counter("audit.records", "result", result).count();
+    }
+
+    // The id and status of each record read back, in commit order
+    private static List<String> records(Path directory) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<String> records = new ArrayList<>();
+        for (Path file : AuditLog.files(directory)) {
+            AuditLog.read(file, (payload, length) -> {
+                AuditRecord record = objectMapper.readValue(payload, 0, length, AuditRecord.class);
+                records.add(record.getId() + " " + record.getRequestStatus());
+            });
+        }
+        return records;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        for (Path file : AuditLog.files(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,117 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.smoogiee.verifiedidbackend.config.CacheProperties;
+import com.smoogiee.verifiedidbackend.utils.OffHeapStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of the off-heap tier of the cache service: promotion, overflow and token placement
+ */
+class CacheServiceTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CacheService<String, String> cacheService;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (cacheService != null) {
+            cacheService.close();
+        }
+    }
+
+    @Test
+    void readsPromoteEntriesOnHeap() throws Exception {
+        cacheService = new CacheService<>(properties(null, 60), meterRegistry);
+        Cache<String, String> promoted = promoted();
+
+        cacheService.put("session", "value");
+        assertThat(promoted.getIfPresent("session")).isNull();
+        assertThat(cacheService.getIfPresent("session")).isEqualTo("value");
+        assertThat(promoted.getIfPresent("session")).isEqualTo("value");
+
+        // Writes keep the promoted copy coherent
+        assertThat(cacheService.replace("session", "value", "updated")).isTrue();
+        assertThat(promoted.getIfPresent("session")).isEqualTo("updated");
+        assertThat(cacheService.replace("session", "value", "lost")).isFalse();
+
+        cacheService.invalidate("session");
+        assertThat(cacheService.getIfPresent("session")).isNull();
+        assertThat(promoted.getIfPresent("session")).isNull();
+    }
+
+    @Test
+    void overflowIsKeptWithTheFullTtl() throws Exception {
+        cacheService = new CacheService<>(properties(null, 1), meterRegistry);
+        String large = "x".repeat(4096);
+
+        cacheService.put("session", "small");
+        cacheService.put("session", large);
+        assertThat(cacheService.getIfPresent("session")).isEqualTo(large);
+        assertThat(meterRegistry.counter("cache.off_heap.overflow").count()).isEqualTo(1.0);
+
+        // Outlives the promoted copy, and the smaller off-heap record it replaced does not resurface
+        Thread.sleep(1500);
+        assertThat(cacheService.getIfPresent("session")).isEqualTo(large);
+
+        // Once the entry fits again it moves back off-heap
+        cacheService.put("session", "small again");
+        Thread.sleep(1500);
+        assertThat(cacheService.getIfPresent("session")).isEqualTo("small again");
+    }
+
+    @Test
+    void tokensAreNeverWrittenOffHeap(@TempDir Path directory) throws Exception {
+        cacheService = new CacheService<>(properties(directory.resolve("off-heap.bin"), 60), meterRegistry);
+        OffHeapStore offHeapStore = (OffHeapStore) ReflectionTestUtils.getField(cacheService, "offHeapStore");
+        String tokenKey = CacheService.TOKEN_KEY_PREFIX + "default";
+
+        cacheService.put(tokenKey, "bearer-token");
+        cacheService.put("session", "session-data");
+        assertThat(cacheService.getIfPresent(tokenKey)).isEqualTo("bearer-token");
+        assertThat(offHeapStore.get(tokenKey)).isNull();
+        assertThat(offHeapStore.get("session")).isEqualTo("session-data");
+        assertThat(meterRegistry.counter("cache.off_heap.overflow").count()).isZero();
+    }
+
+    @Test
+    void rejectsCapacityThatDoesNotSplitIntoSegments() {
+        // 1 MB of 1 KB segments would need 1024 segments in the single shard
+        CacheProperties cacheProperties = properties(null, 60);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapSegmentSizeKb", 1);
+
+        assertThatThrownBy(() -> new CacheService<>(cacheProperties, meterRegistry))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("1024 segments per shard");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<String, String> promoted() {
+        return (Cache<String, String>) ReflectionTestUtils.getField(cacheService, "cache");
+    }
+
+    private static CacheProperties properties(Path file, long promoteTtlSeconds) {
+        CacheProperties cacheProperties = new CacheProperties();
+        ReflectionTestUtils.setField(cacheProperties, "ttlMinutes", 15L);
+        ReflectionTestUtils.setField(cacheProperties, "maximumSize", 100L);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapEnabled", true);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapCapacityMb", 1);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapShards", 1);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapSegmentSizeKb", 4);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapFile", file == null ? "" : file.toString());
+        ReflectionTestUtils.setField(cacheProperties, "offHeapSweepIntervalSeconds", 30L);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapPromoteEnabled", true);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapPromoteMaximumSize", 100L);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapPromoteTtlSeconds", promoteTtlSeconds);
+        return cacheProperties;
+    }
+}
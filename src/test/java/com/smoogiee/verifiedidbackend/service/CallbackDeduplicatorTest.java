@@ -0,0 +1,79 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.CallbackProperties;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests of callback deduplication keys and the accept/drop decisions
+ */
+class CallbackDeduplicatorTest {
+    private static final String BODY = "{\"requestStatus\":\"request_retrieved\",\"state\":\"s1\",\"requestId\":\"r1\"}";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CallbackService callbackService = new CallbackService(
+            new ObjectMapper(), null, null, null, null, null, null, mock(AuditService.class), meterRegistry);
+
+    @Test
+    void redeliveryIsDroppedOnceAccepted() throws IOException {
+        CallbackDeduplicator deduplicator = deduplicator(true);
+        long key = deduplicator.key(peek("contoso", BODY));
+
+        assertThat(deduplicator.isDuplicate(key)).isFalse();
+        assertThat(deduplicator.accept(key)).isTrue();
+        assertThat(deduplicator.isDuplicate(deduplicator.key(peek("contoso", BODY)))).isTrue();
+        assertThat(deduplicator.accept(key)).isFalse();
+        assertThat(meterRegistry.counter("callbacks.dedup.dropped").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void keyCoversTenantStatusStateAndBody() throws IOException {
+        CallbackDeduplicator deduplicator = deduplicator(true);
+        long key = deduplicator.key(peek("contoso", BODY));
+
+        assertThat(deduplicator.key(peek("fabrikam", BODY))).isNotEqualTo(key);
+        assertThat(deduplicator.key(peek("contoso", BODY.replace("request_retrieved", "issuance_successful"))))
+                .isNotEqualTo(key);
+        assertThat(deduplicator.key(peek("contoso", BODY.replace("s1", "s2")))).isNotEqualTo(key);
+        assertThat(deduplicator.key(peek("contoso", BODY.replace("r1", "r2")))).isNotEqualTo(key);
+    }
+
+    @Test
+    void peekStopsOnceStateAndStatusAreKnown() throws IOException {
+        // Everything after the two fields is left unparsed, even a truncated receipt
+        CallbackTask task = peek("contoso", "{\"requestStatus\":\"presentation_verified\",\"state\":\"s1\",\"receipt\":{\"vp_token\":");
+        assertThat(task.getState()).isEqualTo("s1");
+        assertThat(task.getRequestStatus()).isEqualTo("presentation_verified");
+    }
+
+    @Test
+    void disabledDeduplicatorAcceptsEverything() throws IOException {
+        CallbackDeduplicator deduplicator = deduplicator(false);
+        long key = deduplicator.key(peek("contoso", BODY));
+
+        assertThat(deduplicator.accept(key)).isTrue();
+        assertThat(deduplicator.accept(key)).isTrue();
+        assertThat(deduplicator.isDuplicate(key)).isFalse();
+    }
+
+    private CallbackTask peek(String tenant, String body) throws IOException {
+        return callbackService.peek(tenant, "issuance", body);
+    }
+
+    private CallbackDeduplicator deduplicator(boolean enabled) {
+        CallbackProperties callbackProperties = new CallbackProperties();
+        ReflectionTestUtils.setField(callbackProperties, "dedupEnabled", enabled);
+        ReflectionTestUtils.setField(callbackProperties, "dedupWindowSeconds", 900L);
+        ReflectionTestUtils.setField(callbackProperties, "dedupGenerations", 4);
+        return new CallbackDeduplicator(callbackProperties, meterRegistry);
+    }
+}
@@ -0,0 +1,148 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.CallbackProperties;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of callback retries, dead-lettering and shutdown
+ */
+class CallbackPipelineTest {
+    private static final String BODY =
+            "{\"requestStatus\":\"presentation_verified\",\"state\":\"%s\",\"receipt\":{\"vp_token\":\"e30.e30.c2lnbmF0dXJl\"}}";
+
+    private final CallbackService callbackService = mock(CallbackService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failedCallbackIsRetriedAfterBackoff() {
+        List<Long> attempts = new CopyOnWriteArrayList<>();
+        when(callbackService.process(any())).thenAnswer(invocation -> {
+            attempts.add(System.nanoTime());
+            return attempts.size() == 1
+                    ? CompletableFuture.failedFuture(new IllegalStateException("boom"))
+                    : CompletableFuture.completedFuture(null);
+        });
+        CallbackPipeline pipeline = pipeline(false, 3, 100, 1000);
+
+        pipeline.submit(task("s1"));
+
+        verify(callbackService, timeout(5000).times(2)).process(any());
+        assertThat(attempts.get(1) - attempts.get(0)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(meterRegistry.counter("callbacks.pipeline.retried").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.counter("callbacks.pipeline.processed").count()).isEqualTo(1.0);
+        pipeline.stop();
+        assertThat(directory.resolve("dead-letter.jsonl")).doesNotExist();
+    }
+
+    @Test
+    void exhaustedCallbackIsDeadLetteredWithoutItsReceipt() throws Exception {
+        when(callbackService.process(any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        CallbackPipeline pipeline = pipeline(false, 2, 1, 1000);
+
+        pipeline.submit(task("s1"));
+
+        verify(callbackService, timeout(5000).times(2)).process(any());
+        List<String> lines = deadLetters(1);
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).contains("s1", "presentation_verified").doesNotContain("receipt", "vp_token");
+        pipeline.stop();
+    }
+
+    @Test
+    void shutdownDeadLettersOnlyCallbacksNothingIsApplying() throws Exception {
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(callbackService.process(any())).thenAnswer(invocation -> {
+            if ("s1".equals(invocation.<CallbackTask>getArgument(0).getState())) {
+                applying.countDown();
+                release.await();
+                // Still waiting on verification when the pipeline stops
+                return new CompletableFuture<Void>();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        CallbackPipeline pipeline = pipeline(true, 3, 1, 300);
+        pipeline.start();
+
+        pipeline.submit(task("s1"));
+        assertThat(applying.await(5, TimeUnit.SECONDS)).isTrue();
+        pipeline.submit(task("s2"));
+        pipeline.submit(task("s3"));
+
+        // Released after the first deadline, while the worker is given time to finish
+        Thread stopping = new Thread(pipeline::stop);
+        stopping.start();
+        Thread.sleep(450);
+        release.countDown();
+        stopping.join(5000);
+
+        assertThat(stopping.isAlive()).isFalse();
+        verify(callbackService, times(1)).process(any());
+        List<String> lines = deadLetters(2);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).contains("\"s2\"");
+        assertThat(lines.get(1)).contains("\"s3\"");
+    }
+
+    private CallbackPipeline pipeline(boolean enabled, int maxAttempts, long backoffMs, long shutdownTimeoutMs) {
+        CallbackProperties callbackProperties = new CallbackProperties();
+        ReflectionTestUtils.setField(callbackProperties, "pipelineEnabled", enabled);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineWorkers", 1);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineRingSize", 4);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineBatchSize", 1);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineMaxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineInitialBackoffMs", backoffMs);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineShutdownTimeoutMs", shutdownTimeoutMs);
+        ReflectionTestUtils.setField(callbackProperties, "pipelineDeadLetterFile",
+                directory.resolve("dead-letter.jsonl").toString());
+        return new CallbackPipeline(callbackService, new SerializationService(new ObjectMapper()),
+                callbackProperties, meterRegistry);
+    }
+
+    private static CallbackTask task(String state) {
+        CallbackTask task = new CallbackTask();
+        task.setTenant("contoso");
+        task.setRequestType("presentation");
+        task.setState(state);
+        task.setRequestStatus("presentation_verified");
+        task.setBody(BODY.formatted(state));
+        task.setReceivedAt(System.nanoTime());
+        return task;
+    }
+
+    private List<String> deadLetters(int expected) throws IOException, InterruptedException {
+        Path file = directory.resolve("dead-letter.jsonl");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline
+                && (!Files.exists(file) || Files.readAllLines(file).size() < expected)) {
+            Thread.sleep(10);
+        }
+        return Files.readAllLines(file);
+    }
+}
@@ -0,0 +1,114 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.config.CallbackProperties;
+import com.smoogiee.verifiedidbackend.model.audit.AuditRecord;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that the audit record of a callback reflects the outcome of enforced receipt verification
+ */
+class CallbackServiceTest {
+    private static final String TENANT = "contoso";
+    private static final String STATE = "727539c5-bcf7-42d1-853b-98c59b8a28ca";
+    private static final String BODY = """
+            {"requestId":"e66fc456","requestStatus":"presentation_verified","state":"%s",
+            "subject":"did:web:holder.example","verifiedCredentialsData":[{"issuer":"did:web:issuer.example",
+            "issuanceDate":"2024-01-01T00:00:00Z","expirationDate":"2025-01-01T00:00:00Z"}],
+            "receipt":{"vp_token":"e30.e30.c2lnbmF0dXJl"}}
+            """.formatted(STATE);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AuditService auditService = mock(AuditService.class);
+    private ObjectNode session;
+    private CallbackService callbackService;
+
+    @BeforeEach
+    void setUp() {
+        CallbackProperties callbackProperties = new CallbackProperties();
+        ReflectionTestUtils.setField(callbackProperties, "projectionFields",
+                List.of("requestId", "subject", "error", "payload", "type", "issuanceDate", "expirationDate", "jti"));
+
+        // The session is pending and belongs to the tenant the callback is for
+        session = objectMapper.createObjectNode()
+                .put("tenant", TENANT)
+                .put("requestType", "presentation")
+                .put("status", "request_retrieved");
+        session.putObject("timestamps").put("created", 1L);
+        SessionService sessionService = mock(SessionService.class);
+        when(sessionService.update(eq(STATE), any())).thenAnswer(invocation -> {
+            UnaryOperator<ObjectNode> transition = invocation.getArgument(1);
+            return transition.apply(session) == null ? SessionService.Outcome.REJECTED : SessionService.Outcome.APPLIED;
+        });
+
+        // Every receipt fails verification, and verification is enforced
+        SignatureVerificationService signatureVerificationService = mock(SignatureVerificationService.class);
+        when(signatureVerificationService.isEnabled()).thenReturn(true);
+        when(signatureVerificationService.isEnforced()).thenReturn(true);
+        when(signatureVerificationService.verify(anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(SignatureVerificationService.Result.FAILED));
+
+        when(auditService.isEnabled()).thenReturn(true);
+        callbackService = new CallbackService(
+                objectMapper,
+                new SerializationService(objectMapper),
+                sessionService,
+                mock(WebhookService.class),
+                callbackProperties,
+                signatureVerificationService,
+                mock(FunnelService.class),
+                auditService,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void auditsFailedVerificationAsPresentationError() throws Exception {
+        when(auditService.records("presentation_verified")).thenReturn(true);
+        when(auditService.records("presentation_error")).thenReturn(true);
+
+        process();
+
+        ArgumentCaptor<AuditRecord> record = ArgumentCaptor.forClass(AuditRecord.class);
+        verify(auditService).record(record.capture());
+        assertThat(record.getValue().getRequestStatus()).isEqualTo("presentation_error");
+        assertThat(record.getValue().getVerification()).isEqualTo("failed");
+        assertThat(record.getValue().getSubject()).isEqualTo("did:web:holder.example");
+        assertThat(record.getValue().getIssuer()).isEqualTo("did:web:issuer.example");
+        assertThat(record.getValue().getCreatedAt()).isEqualTo(1L);
+        assertThat(session.path("status").asText()).isEqualTo("presentation_error");
+    }
+
+    @Test
+    void doesNotAuditFailedVerificationAsVerified() throws Exception {
+        // Only verified presentations are audited, so the failed one is not recorded at all
+        when(auditService.records("presentation_verified")).thenReturn(true);
+
+        process();
+
+        verify(auditService, never()).record(any());
+    }
+
+    private void process() throws Exception {
+        CallbackTask task = callbackService.peek(TENANT, "presentation", BODY);
+        callbackService.process(task).join();
+    }
+}
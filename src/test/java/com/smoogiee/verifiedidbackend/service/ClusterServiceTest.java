@@ -0,0 +1,218 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.ClusterProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of session ownership, member discovery and request forwarding between cluster nodes
+ */
+class ClusterServiceTest {
+    private static final String SECRET = "s3cret";
+
+    @TempDir
+    Path directory;
+
+    private ClusterService clusterService;
+    private HttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (clusterService != null) {
+            clusterService.stop();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void correlationIdsAreOwnedByThisNode() {
+        clusterService = start(properties(true, "node-a", ""));
+
+        String correlationId = clusterService.newCorrelationId();
+
+        assertThat(correlationId).startsWith("node-a.");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), correlationId)).isNull();
+    }
+
+    @Test
+    void sessionsOwnedByAMemberAreForwardedToIt() {
+        clusterService = start(properties(true, "node-a", ""));
+
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-b.1234"))
+                .isEqualTo("http://node-b:8080");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-c.1234"))
+                .isEqualTo("http://node-c:8080");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-x.1234")).isNull();
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "1234")).isNull();
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), ".1234")).isNull();
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), null)).isNull();
+    }
+
+    @Test
+    void disabledClusterHandlesEverythingLocally() {
+        clusterService = start(properties(false, "node-a", ""));
+
+        assertThat(clusterService.newCorrelationId()).doesNotContain(".");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-b.1234")).isNull();
+    }
+
+    @Test
+    void clusteringRequiresASecret() {
+        ClusterProperties clusterProperties = properties(true, "node-a", "");
+        ReflectionTestUtils.setField(clusterProperties, "secret", "");
+
+        assertThatThrownBy(() -> new ClusterService(clusterProperties).start())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("entra.cluster.secret");
+    }
+
+    @Test
+    void forwardedRequestsAreNotForwardedAgain() {
+        clusterService = start(properties(true, "node-a", ""));
+        MockHttpServletRequest forwarded = new MockHttpServletRequest();
+        forwarded.addHeader(ClusterService.FORWARDED_HEADER, "node-c");
+        forwarded.addHeader(ClusterService.SECRET_HEADER, SECRET);
+
+        assertThat(clusterService.forwardTarget(forwarded, "node-b.1234")).isNull();
+    }
+
+    @Test
+    void forwardedMarkWithoutTheSecretIsIgnored() {
+        clusterService = start(properties(true, "node-a", ""));
+        MockHttpServletRequest unsigned = new MockHttpServletRequest();
+        unsigned.addHeader(ClusterService.FORWARDED_HEADER, "node-c");
+        MockHttpServletRequest wrongSecret = new MockHttpServletRequest();
+        wrongSecret.addHeader(ClusterService.FORWARDED_HEADER, "node-c");
+        wrongSecret.addHeader(ClusterService.SECRET_HEADER, "guess");
+
+        assertThat(clusterService.forwardTarget(unsigned, "node-b.1234")).isEqualTo("http://node-b:8080");
+        assertThat(clusterService.forwardTarget(wrongSecret, "node-b.1234")).isEqualTo("http://node-b:8080");
+    }
+
+    @Test
+    void discoveryFileIsMergedOverStaticMembersAndReloadedWhenChanged() throws IOException {
+        Path discoveryFile = directory.resolve("members");
+        Files.write(discoveryFile, List.of(
+                "# discovered members",
+                "node-b = http://10.0.0.2:8080/",
+                "not a member",
+                "node-d=http://10.0.0.4:8080"));
+        clusterService = start(properties(true, "node-a", discoveryFile.toString()));
+
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-b.1234"))
+                .isEqualTo("http://10.0.0.2:8080");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-c.1234"))
+                .isEqualTo("http://node-c:8080");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-d.1234"))
+                .isEqualTo("http://10.0.0.4:8080");
+
+        Files.write(discoveryFile, List.of("node-d=http://10.0.0.5:8080"));
+        Files.setLastModifiedTime(discoveryFile, FileTime.from(Instant.now().plusSeconds(60)));
+
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-d.1234"))
+                .isEqualTo("http://10.0.0.5:8080");
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-b.1234"))
+                .isEqualTo("http://node-b:8080");
+    }
+
+    @Test
+    void unreadableDiscoveryFileKeepsTheLastKnownMembers() throws IOException {
+        Path discoveryFile = directory.resolve("members");
+        Files.write(discoveryFile, List.of("node-d=http://10.0.0.4:8080"));
+        clusterService = start(properties(true, "node-a", discoveryFile.toString()));
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-d.1234")).isNotNull();
+
+        Files.delete(discoveryFile);
+
+        assertThat(clusterService.forwardTarget(new MockHttpServletRequest(), "node-d.1234"))
+                .isEqualTo("http://10.0.0.4:8080");
+    }
+
+    @Test
+    void forwardMarksTheRequestAndRelaysTheResponse() throws IOException {
+        Map<String, String> received = new ConcurrentHashMap<>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/status", exchange -> {
+            exchange.getRequestHeaders().forEach((name, values) -> received.put(name.toLowerCase(), values.get(0)));
+            received.put("query", exchange.getRequestURI().getQuery());
+            byte[] body = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("ETag", "\"1\"");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        clusterService = start(properties(true, "node-a", ""));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/status");
+        request.setQueryString("id=node-b.1234");
+        request.addHeader("X-Tenant-Id", "contoso");
+        request.addHeader(ClusterService.SECRET_HEADER, "guess");
+
+        ResponseEntity<String> response = clusterService.forward(
+                "http://127.0.0.1:" + server.getAddress().getPort(), request, null, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo("{\"status\":\"ok\"}");
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"1\"");
+        assertThat(received)
+                .containsEntry("query", "id=node-b.1234")
+                .containsEntry("x-tenant-id", "contoso")
+                .containsEntry(ClusterService.FORWARDED_HEADER.toLowerCase(), "node-a")
+                .containsEntry(ClusterService.SECRET_HEADER.toLowerCase(), SECRET);
+    }
+
+    @Test
+    void unreachableMemberIsABadGateway() {
+        clusterService = start(properties(true, "node-a", ""));
+
+        ResponseEntity<String> response = clusterService.forward(
+                "http://127.0.0.1:1", new MockHttpServletRequest("GET", "/api/status"), null, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+    }
+
+    private static ClusterService start(ClusterProperties clusterProperties) {
+        ClusterService clusterService = new ClusterService(clusterProperties);
+        clusterService.start();
+        return clusterService;
+    }
+
+    private static ClusterProperties properties(boolean enabled, String nodeId, String discoveryFile) {
+        ClusterProperties clusterProperties = new ClusterProperties();
+        ReflectionTestUtils.setField(clusterProperties, "enabled", enabled);
+        ReflectionTestUtils.setField(clusterProperties, "nodeId", nodeId);
+        ReflectionTestUtils.setField(clusterProperties, "secret", SECRET);
+        ReflectionTestUtils.setField(clusterProperties, "members",
+                new String[]{"node-b=http://node-b:8080/", "node-c=http://node-c:8080"});
+        ReflectionTestUtils.setField(clusterProperties, "discoveryFile", discoveryFile);
+        ReflectionTestUtils.setField(clusterProperties, "discoveryRefreshSeconds", 0L);
+        ReflectionTestUtils.setField(clusterProperties, "maxConnections", 4);
+        ReflectionTestUtils.setField(clusterProperties, "forwardTimeoutMs", 2000L);
+        return clusterProperties;
+    }
+}
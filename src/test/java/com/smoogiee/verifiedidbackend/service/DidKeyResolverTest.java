@@ -0,0 +1,54 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that the DID resolver refuses to fetch from hosts outside its allow-list.
+ * Refused issuers fail before any request is made
+ */
+class DidKeyResolverTest {
+    private DidKeyResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        VerificationProperties verificationProperties = new VerificationProperties();
+        ReflectionTestUtils.setField(verificationProperties, "trustedIssuers", new String[]{"https://jwks.example/keys"});
+        ReflectionTestUtils.setField(verificationProperties, "allowedHosts", new String[]{"keys.example"});
+        ReflectionTestUtils.setField(verificationProperties, "didResolverUrl", "https://resolver.example/1.0/identifiers/");
+        ReflectionTestUtils.setField(verificationProperties, "timeoutMs", 1000L);
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.didAuthorities()).thenReturn(Set.of("did:web:issuer.example"));
+        resolver = new DidKeyResolver(new ObjectMapper(), verificationProperties, tenantService);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "did:web:169.254.169.254",
+            "did:web:localhost%3A8080",
+            "did:web:issuer.example%40internal.example",
+            "https://internal.example/keys",
+            "http://jwks.example/keys",
+            "did:ion:abc/../../admin",
+            "did:ion:abc?redirect=https://internal.example"})
+    void refusesIssuersOutsideTheAllowList(String issuer) {
+        assertThat(resolver.resolve(issuer))
+                .isCompletedExceptionally()
+                .failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,141 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.CacheProperties;
+import com.smoogiee.verifiedidbackend.config.FunnelProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of funnel stage counts, rates and abandonment tracking
+ */
+class FunnelServiceTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private FunnelService funnelService;
+
+    @AfterEach
+    void tearDown() {
+        if (funnelService != null) {
+            funnelService.stop();
+        }
+    }
+
+    @Test
+    void publishesStageCountsAndRates() {
+        funnelService = funnelService(15, 20, 100);
+        long now = System.currentTimeMillis();
+        for (String id : new String[]{"s1", "s2", "s3", "s4"}) {
+            funnelService.created(id, FunnelService.PRESENTATION, now - 1000);
+        }
+        funnelService.retrieved("s1", FunnelService.PRESENTATION, now - 1000, now - 800);
+        funnelService.retrieved("s2", FunnelService.PRESENTATION, now - 1000, now - 600);
+        funnelService.retrieved("s3", FunnelService.PRESENTATION, now - 1000, now - 400);
+        funnelService.completed("s1", FunnelService.PRESENTATION, now - 1000, now - 100);
+        funnelService.failed("s2", FunnelService.PRESENTATION, now - 1000, now - 100, "bad_request");
+        funnelService.expired("s3");
+        funnelService.expired("s4");
+
+        assertThat(sessions(FunnelService.PRESENTATION, "created")).isEqualTo(4);
+        assertThat(sessions(FunnelService.PRESENTATION, "retrieved")).isEqualTo(3);
+        assertThat(sessions(FunnelService.PRESENTATION, "completed")).isEqualTo(1);
+        assertThat(sessions(FunnelService.PRESENTATION, "failed")).isEqualTo(1);
+        assertThat(sessions(FunnelService.PRESENTATION, "abandoned_after_scan")).isEqualTo(1);
+        assertThat(sessions(FunnelService.PRESENTATION, "abandoned_before_scan")).isEqualTo(1);
+        assertThat(gauge("funnel.error_rate", FunnelService.PRESENTATION)).isEqualTo(0.25);
+        assertThat(gauge("funnel.abandonment_rate", FunnelService.PRESENTATION)).isEqualTo(0.5);
+        assertThat(meterRegistry.get("funnel.error_rate.by_code").tag("code", "bad_request").gauge().value())
+                .isEqualTo(0.25);
+        assertThat(meterRegistry.get("funnel.time_to_scan").tag("type", FunnelService.PRESENTATION).timer().count())
+                .isEqualTo(3);
+        assertThat(sessions(FunnelService.ISSUANCE, "created")).isZero();
+    }
+
+    @Test
+    void ratesAreZeroBeforeAnySessionEnds() {
+        funnelService = funnelService(15, 20, 100);
+        funnelService.created("s1", FunnelService.ISSUANCE, System.currentTimeMillis());
+
+        assertThat(gauge("funnel.error_rate", FunnelService.ISSUANCE)).isZero();
+        assertThat(gauge("funnel.abandonment_rate", FunnelService.ISSUANCE)).isZero();
+    }
+
+    @Test
+    void errorCodesBeyondTheLimitAreGroupedAsOther() {
+        funnelService = funnelService(15, 2, 100);
+        long now = System.currentTimeMillis();
+        funnelService.failed("s1", FunnelService.ISSUANCE, now, now, "first");
+        funnelService.failed("s2", FunnelService.ISSUANCE, now, now, null);
+        funnelService.failed("s3", FunnelService.ISSUANCE, now, now, "third");
+        funnelService.failed("s4", FunnelService.ISSUANCE, now, now, "fourth");
+
+        assertThat(meterRegistry.find("funnel.error_rate.by_code").gauges())
+                .extracting(gauge -> gauge.getId().getTag("code"))
+                .containsExactlyInAnyOrder("first", "unknown", "other");
+        assertThat(meterRegistry.get("funnel.error_rate.by_code").tag("code", "other").gauge().value())
+                .isEqualTo(0.5);
+    }
+
+    @Test
+    void openSessionsAreTrackedUpToTheLimit() {
+        funnelService = funnelService(15, 20, 1);
+        long now = System.currentTimeMillis();
+        funnelService.created("s1", FunnelService.ISSUANCE, now);
+        funnelService.created("s2", FunnelService.ISSUANCE, now);
+        funnelService.expired("s1");
+        funnelService.expired("s2");
+
+        assertThat(sessions(FunnelService.ISSUANCE, "created")).isEqualTo(2);
+        assertThat(sessions(FunnelService.ISSUANCE, "abandoned_before_scan")).isEqualTo(1);
+    }
+
+    @Test
+    void sweepAbandonsSessionsPastTheirTimeToLive() {
+        funnelService = funnelService(0, 20, 100);
+        long now = System.currentTimeMillis();
+        funnelService.created("s1", FunnelService.ISSUANCE, now - 1000);
+        funnelService.created("s2", FunnelService.ISSUANCE, now - 1000);
+        funnelService.retrieved("s2", FunnelService.ISSUANCE, now - 1000, now - 500);
+
+        ReflectionTestUtils.invokeMethod(funnelService, "sweep");
+
+        assertThat(sessions(FunnelService.ISSUANCE, "abandoned_before_scan")).isEqualTo(1);
+        assertThat(sessions(FunnelService.ISSUANCE, "abandoned_after_scan")).isEqualTo(1);
+        // Already counted, so a late expiry is not counted again
+        funnelService.expired("s1");
+        assertThat(sessions(FunnelService.ISSUANCE, "abandoned_before_scan")).isEqualTo(1);
+    }
+
+    @Test
+    void otherRequestTypesAreIgnored() {
+        funnelService = funnelService(15, 20, 100);
+        long now = System.currentTimeMillis();
+        funnelService.created("s1", "selfie", now);
+        funnelService.completed("s1", "selfie", now, now);
+
+        assertThat(meterRegistry.find("funnel.sessions").tag("type", "selfie").gauge()).isNull();
+        assertThat(meterRegistry.find("funnel.time_to_complete").timer()).isNull();
+    }
+
+    private double sessions(String requestType, String stage) {
+        return meterRegistry.get("funnel.sessions").tag("type", requestType).tag("stage", stage).gauge().value();
+    }
+
+    private double gauge(String name, String requestType) {
+        return meterRegistry.get(name).tag("type", requestType).gauge().value();
+    }
+
+    private FunnelService funnelService(long ttlMinutes, int maxErrorCodes, int maxOpenSessions) {
+        FunnelProperties funnelProperties = new FunnelProperties();
+        ReflectionTestUtils.setField(funnelProperties, "windowSeconds", 900L);
+        ReflectionTestUtils.setField(funnelProperties, "buckets", 60);
+        ReflectionTestUtils.setField(funnelProperties, "maxErrorCodes", maxErrorCodes);
+        ReflectionTestUtils.setField(funnelProperties, "maxOpenSessions", maxOpenSessions);
+        CacheProperties cacheProperties = new CacheProperties();
+        ReflectionTestUtils.setField(cacheProperties, "ttlMinutes", ttlMinutes);
+        return new FunnelService(funnelProperties, cacheProperties, meterRegistry);
+    }
+}
@@ -0,0 +1,129 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.smoogiee.verifiedidbackend.config.HedgingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of hedged upstream calls: winner selection, error precedence and the hedge budget.
+ * Calls are scripted with delayed Monos; fast warm-up calls put the hedge delay at its minimum
+ */
+class HedgingServiceTest {
+    private static final String OPERATION = "createIssuanceRequest";
+    private static final int MIN_SAMPLES = 3;
+    private static final Duration SLOW = Duration.ofMillis(300);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HedgingProperties hedgingProperties = new HedgingProperties();
+    private HedgingService hedgingService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(hedgingProperties, "enabled", true);
+        ReflectionTestUtils.setField(hedgingProperties, "percentile", 95.0);
+        ReflectionTestUtils.setField(hedgingProperties, "minDelayMs", 20L);
+        ReflectionTestUtils.setField(hedgingProperties, "maxDelayMs", 100L);
+        ReflectionTestUtils.setField(hedgingProperties, "samples", 16);
+        ReflectionTestUtils.setField(hedgingProperties, "minSamples", MIN_SAMPLES);
+        ReflectionTestUtils.setField(hedgingProperties, "budgetPercent", 100.0);
+        hedgingService = new HedgingService(hedgingProperties, meterRegistry);
+    }
+
+    @Test
+    void fastHedgeBeatsSlowPrimary() {
+        warmUp();
+        String response = execute(
+                Mono.just("primary").delayElement(SLOW),
+                Mono.just("hedge"));
+
+        assertThat(response).isEqualTo("hedge");
+        assertThat(count("sent")).isEqualTo(1.0);
+        assertThat(count("won")).isEqualTo(1.0);
+    }
+
+    @Test
+    void failingHedgeDoesNotBeatSlowPrimary() {
+        warmUp();
+        String response = execute(
+                Mono.just("primary").delayElement(SLOW),
+                Mono.error(new IllegalStateException("hedge failed")));
+
+        assertThat(response).isEqualTo("primary");
+        assertThat(count("sent")).isEqualTo(1.0);
+        assertThat(count("won")).isEqualTo(0.0);
+    }
+
+    @Test
+    void primaryErrorSurfacesWhenBothFail() {
+        warmUp();
+        assertThatThrownBy(() -> execute(
+                Mono.delay(SLOW).then(Mono.error(new IllegalStateException("primary failed"))),
+                Mono.error(new IllegalArgumentException("hedge failed"))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("primary failed");
+    }
+
+    @Test
+    void primaryFailingBeforeTheHedgeIsDueIsNotHedged() {
+        warmUp();
+        assertThatThrownBy(() -> execute(
+                Mono.error(new IllegalStateException("primary failed")),
+                Mono.just("hedge")))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(count("sent")).isEqualTo(0.0);
+    }
+
+    @Test
+    void budgetLimitsHedges() {
+        // Half a token per call: the warm-up leaves 1.5, and each hedge costs one
+        ReflectionTestUtils.setField(hedgingProperties, "budgetPercent", 50.0);
+        warmUp();
+        for (int i = 0; i < 5; i++) {
+            assertThat(execute(Mono.just("primary").delayElement(SLOW), Mono.just("hedge"))).isNotNull();
+        }
+
+        assertThat(count("sent")).isEqualTo(4.0);
+        assertThat(count("denied")).isEqualTo(1.0);
+    }
+
+    @Test
+    void deniedHedgeLeavesThePrimaryToDecide() {
+        ReflectionTestUtils.setField(hedgingProperties, "budgetPercent", 0.0);
+        warmUp();
+        String response = execute(
+                Mono.just("primary").delayElement(SLOW),
+                Mono.just("hedge"));
+
+        assertThat(response).isEqualTo("primary");
+        assertThat(count("denied")).isEqualTo(1.0);
+        assertThat(count("sent")).isEqualTo(0.0);
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < MIN_SAMPLES; i++) {
+            assertThat(execute(Mono.just("warm-up"))).isEqualTo("warm-up");
+        }
+    }
+
+    @SafeVarargs
+    private String execute(Mono<String>... calls) {
+        Queue<Mono<String>> script = new ArrayDeque<>(List.of(calls));
+        return hedgingService.execute(OPERATION, script::remove);
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("verifiedid.hedge", "operation", OPERATION, "result", result).count();
+    }
+}
@@ -0,0 +1,100 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.CoalescingProperties;
+import com.smoogiee.verifiedidbackend.exception.IdempotencyConflictException;
+import com.smoogiee.verifiedidbackend.model.verifiedid.ApiResponse;
+import com.smoogiee.verifiedidbackend.model.verifiedid.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that idempotency keys only coalesce requests of the same caller with the same claims
+ */
+class IssuanceCoalescerTest {
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final AtomicInteger executions = new AtomicInteger();
+    private TenantContext tenant;
+    private IssuanceCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        CoalescingProperties coalescingProperties = new CoalescingProperties();
+        ReflectionTestUtils.setField(coalescingProperties, "enabled", true);
+        ReflectionTestUtils.setField(coalescingProperties, "windowSeconds", 30L);
+        ReflectionTestUtils.setField(coalescingProperties, "header", IDEMPOTENCY_KEY);
+        ReflectionTestUtils.setField(coalescingProperties, "maxEntries", 100L);
+
+        // Every issued session is still pending
+        SessionService sessionService = mock(SessionService.class);
+        when(sessionService.get(anyString())).thenReturn("{\"status\":\"request_created\"}");
+        tenant = mock(TenantContext.class);
+        when(tenant.getTenantId()).thenReturn("contoso");
+        coalescer = new IssuanceCoalescer(
+                new SerializationService(new ObjectMapper()),
+                sessionService,
+                coalescingProperties,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void coalescesRetryOfSameCallerAndClaims() throws Exception {
+        ApiResponse first = execute(request("api-key-a", "key-1"), claims("Megan"));
+        ApiResponse retry = execute(request("api-key-a", "key-1"), claims("Megan"));
+
+        assertThat(retry.getId()).isEqualTo(first.getId());
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void doesNotShareKeyAcrossCallers() throws Exception {
+        ApiResponse first = execute(request("api-key-a", "key-1"), claims("Megan"));
+        ApiResponse other = execute(request("api-key-b", "key-1"), claims("Megan"));
+
+        assertThat(other.getId()).isNotEqualTo(first.getId());
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    void rejectsKeyReusedWithDifferentClaims() throws Exception {
+        execute(request("api-key-a", "key-1"), claims("Megan"));
+
+        assertThatThrownBy(() -> execute(request("api-key-a", "key-1"), claims("Alex")))
+                .isInstanceOf(IdempotencyConflictException.class);
+        assertThat(executions).hasValue(1);
+    }
+
+    private ApiResponse execute(MockHttpServletRequest request, Claims claims) throws Exception {
+        return coalescer.execute(tenant, request, claims, () -> {
+            ApiResponse response = new ApiResponse();
+            response.setId("session-" + executions.incrementAndGet());
+            return response;
+        });
+    }
+
+    private static MockHttpServletRequest request(String apiKey, String idempotencyKey) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/issuer/request");
+        request.addHeader("api-key", apiKey);
+        request.addHeader(IDEMPOTENCY_KEY, idempotencyKey);
+        return request;
+    }
+
+    private static Claims claims(String firstName) {
+        Claims claims = new Claims();
+        claims.setFirstName(firstName);
+        claims.setLastName("Bowen");
+        return claims;
+    }
+}
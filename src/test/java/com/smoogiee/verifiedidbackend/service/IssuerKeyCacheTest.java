@@ -0,0 +1,148 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the issuer key cache: single-flight loads, stale-while-revalidate and negative caching.
+ * Uses a manual ticker and a same-thread executor so refreshes happen deterministically
+ */
+class IssuerKeyCacheTest {
+    private static final String ISSUER = "did:web:issuer.example";
+    private static final long REFRESH_SECONDS = 60;
+    private static final long STALE_SECONDS = 600;
+    private static final long NEGATIVE_SECONDS = 30;
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger resolutions = new AtomicInteger();
+    private final Queue<CompletableFuture<Map<String, PublicKey>>> responses = new ArrayDeque<>();
+    private IssuerKeyCache cache;
+    private Map<String, PublicKey> first;
+    private Map<String, PublicKey> second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        VerificationProperties verificationProperties = new VerificationProperties();
+        ReflectionTestUtils.setField(verificationProperties, "resolver", "scripted");
+        ReflectionTestUtils.setField(verificationProperties, "cacheRefreshSeconds", REFRESH_SECONDS);
+        ReflectionTestUtils.setField(verificationProperties, "cacheStaleSeconds", STALE_SECONDS);
+        ReflectionTestUtils.setField(verificationProperties, "cacheNegativeSeconds", NEGATIVE_SECONDS);
+        ReflectionTestUtils.setField(verificationProperties, "cacheMaximumSize", 100L);
+
+        KeyResolver scripted = new KeyResolver() {
+            @Override
+            public String getName() {
+                return "scripted";
+            }
+
+            @Override
+            public CompletableFuture<Map<String, PublicKey>> resolve(String issuer) {
+                resolutions.incrementAndGet();
+                return responses.remove();
+            }
+        };
+        cache = new IssuerKeyCache(new ObjectMapper(), List.of(scripted), verificationProperties, now::get, Runnable::run);
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        first = Map.of("key-1", generator.generateKeyPair().getPublic());
+        second = Map.of("key-2", generator.generateKeyPair().getPublic());
+    }
+
+    @Test
+    void concurrentLookupsShareOneResolution() {
+        CompletableFuture<Map<String, PublicKey>> pending = new CompletableFuture<>();
+        responses.add(pending);
+
+        CompletableFuture<Map<String, PublicKey>> a = cache.get(ISSUER);
+        CompletableFuture<Map<String, PublicKey>> b = cache.get(ISSUER);
+        assertThat(a).isNotDone();
+        assertThat(b).isNotDone();
+        assertThat(resolutions).hasValue(1);
+
+        pending.complete(first);
+        assertThat(a.join()).isEqualTo(first);
+        assertThat(b.join()).isEqualTo(first);
+    }
+
+    @Test
+    void servesStaleKeysWhileRefreshing() {
+        responses.add(CompletableFuture.completedFuture(first));
+        assertThat(cache.get(ISSUER).join()).isEqualTo(first);
+
+        // Past the refresh interval the old keys are served without waiting for the refresh
+        CompletableFuture<Map<String, PublicKey>> refresh = new CompletableFuture<>();
+        responses.add(refresh);
+        advance(REFRESH_SECONDS + 1);
+        assertThat(cache.get(ISSUER)).isCompletedWithValue(first);
+        assertThat(cache.get(ISSUER)).isCompletedWithValue(first);
+        assertThat(resolutions).hasValue(2);
+
+        refresh.complete(second);
+        assertThat(cache.get(ISSUER)).isCompletedWithValue(second);
+        assertThat(resolutions).hasValue(2);
+    }
+
+    @Test
+    void failedRefreshKeepsKeysUntilStale() {
+        responses.add(CompletableFuture.completedFuture(first));
+        assertThat(cache.get(ISSUER).join()).isEqualTo(first);
+
+        responses.add(CompletableFuture.failedFuture(new IOException("unreachable")));
+        advance(REFRESH_SECONDS + 1);
+        assertThat(cache.get(ISSUER)).isCompletedWithValue(first);
+        assertThat(resolutions).hasValue(2);
+
+        // Once older than the stale limit the keys are dropped and resolved again
+        responses.add(CompletableFuture.completedFuture(second));
+        advance(STALE_SECONDS);
+        assertThat(cache.get(ISSUER).join()).isEqualTo(second);
+        assertThat(resolutions).hasValue(3);
+    }
+
+    @Test
+    void failedResolutionIsCachedForTheNegativeInterval() {
+        responses.add(CompletableFuture.failedFuture(new IOException("unreachable")));
+        assertThat(cache.get(ISSUER).join()).isEmpty();
+        assertThat(cache.get(ISSUER).join()).isEmpty();
+        assertThat(resolutions).hasValue(1);
+
+        responses.add(CompletableFuture.completedFuture(first));
+        advance(NEGATIVE_SECONDS + 1);
+        assertThat(cache.get(ISSUER).join()).isEqualTo(first);
+        assertThat(resolutions).hasValue(2);
+    }
+
+    @Test
+    void decodesDidJwkWithoutResolving() {
+        // P-256 example key from the did:jwk specification
+        String jwk = "{\"crv\":\"P-256\",\"kty\":\"EC\","
+                + "\"x\":\"acbIQiuMs3i8_uszEjJ2tpTtRM4EU3yz91PH6CdH2V0\","
+                + "\"y\":\"_KcyLj9vWMptnmKtm46GqDz8wf74I5LKgrl2GzH3nSE\"}";
+        String did = "did:jwk:" + Base64.getUrlEncoder().withoutPadding().encodeToString(jwk.getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.get(did).join()).containsKey("0");
+        assertThat(resolutions).hasValue(0);
+    }
+
+    private void advance(long seconds) {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
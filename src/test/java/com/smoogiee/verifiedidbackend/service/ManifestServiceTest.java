@@ -0,0 +1,197 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.ManifestProperties;
+import com.smoogiee.verifiedidbackend.config.TenantProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of manifest caching, revalidation and serving stale manifests when the source fails
+ */
+class ManifestServiceTest {
+    private static final String LAST_MODIFIED = "Wed, 01 Jan 2025 00:00:00 GMT";
+
+    // Responses to serve, in order, as [status, body]; requests beyond them get a 500
+    private final Queue<Object[]> responses = new ConcurrentLinkedQueue<>();
+    private final List<HttpExchange> requests = new CopyOnWriteArrayList<>();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile boolean blocking;
+
+    private HttpServer server;
+    private TenantContext tenant;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/manifest", exchange -> {
+            requests.add(exchange);
+            if (blocking) {
+                try {
+                    released.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Object[] response = responses.poll();
+            int status = response == null ? 500 : (int) response[0];
+            if (status == 200) {
+                byte[] body = ((String) response[1]).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.getResponseHeaders().add("ETag", "\"upstream-" + requests.size() + "\"");
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.getResponseBody().close();
+            }
+        });
+        server.start();
+        tenant = new TenantContext(TenantProperties
+                .builder()
+                .tenantId("contoso")
+                .manifestUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/manifest")
+                .build(), 4, new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        tenant.close();
+        server.stop(0);
+    }
+
+    @Test
+    void manifestIsServedFromCacheWithinItsTimeToLive() throws IOException {
+        responses.add(new Object[]{200, "{\"v\":1}"});
+        ManifestService manifestService = manifestService(300);
+
+        ManifestService.Manifest first = manifestService.get(tenant);
+        ManifestService.Manifest second = manifestService.get(tenant);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getBody()).isEqualTo("{\"v\":1}");
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    void expiredManifestIsRevalidatedWithItsValidators() throws IOException {
+        responses.add(new Object[]{200, "{\"v\":1}"});
+        responses.add(new Object[]{304, null});
+        ManifestService manifestService = manifestService(0);
+
+        ManifestService.Manifest first = manifestService.get(tenant);
+        ManifestService.Manifest revalidated = manifestService.get(tenant);
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(1).getRequestHeaders().getFirst("If-None-Match")).isEqualTo("\"upstream-1\"");
+        assertThat(requests.get(1).getRequestHeaders().getFirst("If-Modified-Since")).isEqualTo(LAST_MODIFIED);
+        assertThat(revalidated.getBody()).isEqualTo(first.getBody());
+        assertThat(revalidated.getEtag()).isEqualTo(first.getEtag());
+        assertThat(revalidated.getFetchedAt()).isGreaterThanOrEqualTo(first.getFetchedAt());
+    }
+
+    @Test
+    void changedManifestReplacesTheCachedOne() throws IOException {
+        responses.add(new Object[]{200, "{\"v\":1}"});
+        responses.add(new Object[]{200, "{\"v\":2}"});
+        ManifestService manifestService = manifestService(0);
+
+        ManifestService.Manifest first = manifestService.get(tenant);
+        ManifestService.Manifest changed = manifestService.get(tenant);
+
+        assertThat(changed.getBody()).isEqualTo("{\"v\":2}");
+        assertThat(changed.getEtag()).isNotEqualTo(first.getEtag());
+    }
+
+    @Test
+    void cachedManifestIsServedWhenTheSourceFails() throws IOException {
+        responses.add(new Object[]{200, "{\"v\":1}"});
+        ManifestService manifestService = manifestService(0);
+
+        ManifestService.Manifest first = manifestService.get(tenant);
+        ManifestService.Manifest stale = manifestService.get(tenant);
+
+        assertThat(requests).hasSize(2);
+        assertThat(stale).isSameAs(first);
+    }
+
+    @Test
+    void unreachableSourceWithoutACachedManifestFails() {
+        ManifestService manifestService = manifestService(300);
+
+        assertThatThrownBy(() -> manifestService.get(tenant))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Unable to retrieve manifest");
+    }
+
+    @Test
+    void etagIsStrongAndDerivedFromTheContent() throws IOException {
+        responses.add(new Object[]{200, "{\"v\":1}"});
+        responses.add(new Object[]{200, "{\"v\":1}"});
+
+        String etag = manifestService(300).get(tenant).getEtag();
+
+        assertThat(etag).startsWith("\"").endsWith("\"").doesNotStartWith("W/");
+        assertThat(manifestService(300).get(tenant).getEtag()).isEqualTo(etag);
+    }
+
+    @Test
+    void concurrentRevalidationsShareOneUpstreamCall() throws Exception {
+        responses.add(new Object[]{200, "{\"v\":1}"});
+        ManifestService manifestService = manifestService(300);
+        blocking = true;
+
+        List<Thread> threads = new ArrayList<>();
+        List<String> bodies = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    bodies.add(manifestService.get(tenant).getBody());
+                } catch (IOException ex) {
+                    bodies.add(ex.getMessage());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(300);
+        released.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertThat(requests).hasSize(1);
+        assertThat(bodies).containsExactly("{\"v\":1}", "{\"v\":1}", "{\"v\":1}", "{\"v\":1}");
+    }
+
+    private static ManifestService manifestService(long ttlSeconds) {
+        ManifestProperties manifestProperties = new ManifestProperties();
+        ReflectionTestUtils.setField(manifestProperties, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.setField(manifestProperties, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(manifestProperties, "clientMaxAgeSeconds", 60L);
+        return new ManifestService(manifestProperties);
+    }
+}
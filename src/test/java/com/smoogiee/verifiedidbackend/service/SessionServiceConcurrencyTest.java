@@ -0,0 +1,155 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.config.CacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Stress tests racing concurrent session updates against each other and against the initial put,
+ * on the heap cache and on the off-heap tier
+ */
+class SessionServiceConcurrencyTest {
+    private static final int SESSIONS = 200;
+    private static final int CALLBACKS_PER_SESSION = 16;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CacheService<String, String> cacheService;
+    private SessionService sessionService;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        cacheService.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void concurrentCallbacksNeverLoseUpdates(boolean offHeap) throws Exception {
+        init(offHeap);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger[] applied = new AtomicInteger[SESSIONS];
+            AtomicInteger[] unknown = new AtomicInteger[SESSIONS];
+            List<Future<?>> futures = new ArrayList<>();
+            CountDownLatch go = new CountDownLatch(1);
+            for (int i = 0; i < SESSIONS; i++) {
+                String state = "state-" + i;
+                AtomicInteger sessionApplied = applied[i] = new AtomicInteger();
+                AtomicInteger sessionUnknown = unknown[i] = new AtomicInteger();
+
+                // The initial put races the callbacks for the same state
+                futures.add(executor.submit(() -> {
+                    go.await();
+                    return sessionService.create(state, TenantService.DEFAULT_TENANT, "issuance");
+                }));
+                for (int c = 0; c < CALLBACKS_PER_SESSION; c++) {
+                    String status = c == CALLBACKS_PER_SESSION - 1 ? "issuance_successful" : "request_retrieved";
+                    futures.add(executor.submit(() -> {
+                        go.await();
+                        switch (sessionService.update(state, session -> transition(session, status))) {
+                            case APPLIED -> sessionApplied.incrementAndGet();
+                            case UNKNOWN -> sessionUnknown.incrementAndGet();
+                            default -> { }
+                        }
+                        return null;
+                    }));
+                }
+            }
+            go.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            for (int i = 0; i < SESSIONS; i++) {
+                String cachedData = sessionService.get("state-" + i);
+                JsonNode session = objectMapper.readTree(cachedData);
+                JsonNode history = session.path("history");
+
+                // Every applied transition is in the history exactly once, and each bumped the version
+                assertThat(history.size()).isEqualTo(applied[i].get());
+                assertThat(session.path("version").asLong()).isEqualTo(1L + applied[i].get());
+                assertThat(SessionService.version(cachedData)).isEqualTo(1L + applied[i].get());
+                assertThat(applied[i].get() + unknown[i].get()).isLessThanOrEqualTo(CALLBACKS_PER_SESSION);
+
+                // Nothing is applied after the terminal status
+                if (applied[i].get() > 0) {
+                    String last = history.get(history.size() - 1).asText();
+                    assertThat(session.path("status").asText()).isEqualTo(last);
+                    for (int h = 0; h < history.size() - 1; h++) {
+                        assertThat(history.get(h).asText()).isEqualTo("request_retrieved");
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void rejectedTransitionDoesNotWrite(boolean offHeap) throws Exception {
+        init(offHeap);
+        sessionService.create("state", TenantService.DEFAULT_TENANT, "issuance");
+        assertThat(sessionService.update("state", session -> transition(session, "issuance_successful")))
+                .isEqualTo(SessionService.Outcome.APPLIED);
+        String before = sessionService.get("state");
+
+        assertThat(sessionService.update("state", session -> transition(session, "request_retrieved")))
+                .isEqualTo(SessionService.Outcome.REJECTED);
+        String after = sessionService.get("state");
+        assertThat(after).isEqualTo(before);
+        if (!offHeap) {
+            // The cached entry is untouched, so its write time and TTL are not refreshed
+            assertThat(after).isSameAs(before);
+        }
+        assertThat(sessionService.update("missing", session -> session))
+                .isEqualTo(SessionService.Outcome.UNKNOWN);
+    }
+
+    private static ObjectNode transition(ObjectNode session, String status) {
+        if (SessionService.TERMINAL_STATUS.contains(session.path("status").asText())) {
+            return null;
+        }
+        session.put("status", status);
+        session.withArrayProperty("history").add(status);
+        return session;
+    }
+
+    private void init(boolean offHeap) throws Exception {
+        CacheProperties cacheProperties = new CacheProperties();
+        ReflectionTestUtils.setField(cacheProperties, "ttlMinutes", 15L);
+        ReflectionTestUtils.setField(cacheProperties, "maximumSize", 10_000L);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapEnabled", offHeap);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapCapacityMb", 8);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapShards", 4);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapSegmentSizeKb", 256);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapFile", "");
+        ReflectionTestUtils.setField(cacheProperties, "offHeapSweepIntervalSeconds", 30L);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapPromoteEnabled", true);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapPromoteMaximumSize", 100L);
+        ReflectionTestUtils.setField(cacheProperties, "offHeapPromoteTtlSeconds", 60L);
+        cacheService = new CacheService<>(cacheProperties, new SimpleMeterRegistry());
+        sessionService = new SessionService(
+                objectMapper,
+                new SerializationService(objectMapper),
+                cacheService,
+                mock(FunnelService.class));
+    }
+}
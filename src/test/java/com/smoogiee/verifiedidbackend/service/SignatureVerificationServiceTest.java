@@ -0,0 +1,220 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.smoogiee.verifiedidbackend.config.VerificationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of receipt signature verification: issuer trust, kid binding and holder binding
+ */
+class SignatureVerificationServiceTest {
+    private static final String TENANT = "contoso";
+    private static final String ISSUER = "did:web:issuer.example";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger resolutions = new AtomicInteger();
+    private final VerificationProperties verificationProperties = new VerificationProperties();
+
+    private KeyPair issuerKey;
+    private KeyPair holderKey;
+    private String holder;
+    private SignatureVerificationService service;
+
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws Exception {
+        issuerKey = generate();
+        holderKey = generate();
+        holder = didJwk(holderKey.getPublic());
+
+        // The trusted issuer publishes its key through the file resolver
+        ObjectNode jwk = jwk(issuerKey.getPublic()).put("kid", "key-1");
+        ObjectNode keyFile = objectMapper.createObjectNode();
+        keyFile.putObject(ISSUER).putArray("keys").add(jwk);
+        Path path = directory.resolve("keys.json");
+        Files.writeString(path, objectMapper.writeValueAsString(keyFile));
+
+        ReflectionTestUtils.setField(verificationProperties, "enabled", true);
+        ReflectionTestUtils.setField(verificationProperties, "trustedIssuers", new String[0]);
+        ReflectionTestUtils.setField(verificationProperties, "holderDidJwk", true);
+        ReflectionTestUtils.setField(verificationProperties, "resolver", "file");
+        ReflectionTestUtils.setField(verificationProperties, "keyFile", path.toString());
+        ReflectionTestUtils.setField(verificationProperties, "cacheRefreshSeconds", 3600L);
+        ReflectionTestUtils.setField(verificationProperties, "cacheStaleSeconds", 86400L);
+        ReflectionTestUtils.setField(verificationProperties, "cacheNegativeSeconds", 300L);
+        ReflectionTestUtils.setField(verificationProperties, "cacheMaximumSize", 100L);
+
+        FileKeyResolver fileKeyResolver = new FileKeyResolver(objectMapper, verificationProperties);
+        KeyResolver counting = new KeyResolver() {
+            @Override
+            public String getName() {
+                return "file";
+            }
+
+            @Override
+            public CompletableFuture<Map<String, PublicKey>> resolve(String issuer) {
+                resolutions.incrementAndGet();
+                return fileKeyResolver.resolve(issuer);
+            }
+        };
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.didAuthority(TENANT)).thenReturn(ISSUER);
+        service = new SignatureVerificationService(
+                objectMapper,
+                new IssuerKeyCache(objectMapper, List.of(counting), verificationProperties),
+                tenantService,
+                verificationProperties,
+                meterRegistry);
+    }
+
+    @Test
+    void verifiesCredentialFromTrustedIssuer() throws Exception {
+        String vc = vc(ISSUER, ISSUER + "#key-1", holder, issuerKey);
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.VERIFIED);
+        assertThat(meterRegistry.counter("callbacks.verification", "result", "verified").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void rejectsSelfSignedDidJwkIssuer() throws Exception {
+        // The key is embedded in the issuer DID, so the signature itself is valid
+        KeyPair attacker = generate();
+        String attackerDid = didJwk(attacker.getPublic());
+        String vc = vc(attackerDid, attackerDid + "#0", holder, attacker);
+
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.UNTRUSTED);
+        assertThat(resolutions).hasValue(0);
+    }
+
+    @Test
+    void acceptsDidJwkIssuerOnlyWhenListed() throws Exception {
+        KeyPair listed = generate();
+        String listedDid = didJwk(listed.getPublic());
+        ReflectionTestUtils.setField(verificationProperties, "trustedIssuers", new String[]{listedDid});
+
+        String vc = vc(listedDid, listedDid + "#0", holder, listed);
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.VERIFIED);
+    }
+
+    @Test
+    void rejectsKidNamingAnotherDid() throws Exception {
+        // Claims the trusted issuer but points the kid at a self-certifying key
+        KeyPair attacker = generate();
+        String vc = vc(ISSUER, didJwk(attacker.getPublic()) + "#0", holder, attacker);
+
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.FAILED);
+    }
+
+    @Test
+    void rejectsUntrustedIssuerWithoutResolvingIt() throws Exception {
+        String vc = vc("did:web:internal.example", "did:web:internal.example#key-1", holder, issuerKey);
+
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.UNTRUSTED);
+        assertThat(resolutions).hasValue(0);
+    }
+
+    @Test
+    void rejectsCredentialIssuedToAnotherHolder() throws Exception {
+        String vc = vc(ISSUER, ISSUER + "#key-1", didJwk(generate().getPublic()), issuerKey);
+
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.FAILED);
+    }
+
+    @Test
+    void rejectsDidJwkHolderWhenDisabled() throws Exception {
+        ReflectionTestUtils.setField(verificationProperties, "holderDidJwk", false);
+        String vc = vc(ISSUER, ISSUER + "#key-1", holder, issuerKey);
+
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.UNTRUSTED);
+    }
+
+    @Test
+    void failsTamperedSignature() throws Exception {
+        String vc = vc(ISSUER, ISSUER + "#key-1", holder, generate());
+
+        assertThat(verify(vp(holder, vc))).isEqualTo(SignatureVerificationService.Result.FAILED);
+    }
+
+    private SignatureVerificationService.Result verify(String vpToken) {
+        return service.verify(TENANT, vpToken).join();
+    }
+
+    private String vc(String issuer, String kid, String subject, KeyPair signer) throws Exception {
+        ObjectNode claims = objectMapper.createObjectNode()
+                .put("jti", "urn:uuid:1")
+                .put("iss", issuer)
+                .put("sub", subject);
+        claims.putObject("vc").putArray("type").add("VerifiableCredential");
+        return sign(kid, claims, signer);
+    }
+
+    private String vp(String holder, String vc) throws Exception {
+        ObjectNode claims = objectMapper.createObjectNode().put("iss", holder);
+        claims.putObject("vp").putArray("verifiableCredential").add(vc);
+        return sign(holder + "#0", claims, holderKey);
+    }
+
+    private String sign(String kid, ObjectNode claims, KeyPair signer) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        ObjectNode header = objectMapper.createObjectNode().put("alg", "ES256").put("kid", kid);
+        String signingInput = encoder.encodeToString(objectMapper.writeValueAsBytes(header))
+                + "." + encoder.encodeToString(objectMapper.writeValueAsBytes(claims));
+        Signature signature = Signature.getInstance("SHA256withECDSAinP1363Format");
+        signature.initSign(signer.getPrivate());
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + encoder.encodeToString(signature.sign());
+    }
+
+    private String didJwk(PublicKey key) throws Exception {
+        return "did:jwk:" + Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(jwk(key)));
+    }
+
+    private ObjectNode jwk(PublicKey key) {
+        ECPublicKey ec = (ECPublicKey) key;
+        return objectMapper.createObjectNode()
+                .put("kty", "EC")
+                .put("crv", "P-256")
+                .put("x", coordinate(ec.getW().getAffineX()))
+                .put("y", coordinate(ec.getW().getAffineY()));
+    }
+
+    private static String coordinate(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] fixed = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, fixed, 32 - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    private static KeyPair generate() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,140 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.TenantProperties;
+import com.smoogiee.verifiedidbackend.config.WarmupProperties;
+import com.smoogiee.verifiedidbackend.exception.UnknownTenantException;
+import com.smoogiee.verifiedidbackend.model.callback.CallbackTask;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of the warm-up steps and of their failures not blocking startup
+ */
+class WarmupServiceTest {
+    private final TenantService tenantService = mock(TenantService.class);
+    private final VerifiedIdService verifiedIdService = mock(VerifiedIdService.class);
+    private final SessionService sessionService = mock(SessionService.class);
+    private final CallbackService callbackService = mock(CallbackService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private HttpServer server;
+    private TenantContext tenant;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            connections.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        tenant = new TenantContext(TenantProperties
+                .builder()
+                .tenantId("contoso")
+                .apiEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/v1.0/")
+                .build(), 4, new ObjectMapper());
+        when(tenantService.acquire("contoso")).thenReturn(tenant);
+        when(callbackService.peek(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+            CallbackTask task = new CallbackTask();
+            task.setRequestType(invocation.getArgument(1));
+            task.setRequestStatus("request_retrieved");
+            return task;
+        });
+        when(callbackService.process(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        tenant.close();
+        server.stop(0);
+    }
+
+    @Test
+    void runsEveryStepAndRemovesTheSyntheticSession() throws Exception {
+        warmupService(properties(true, true)).run(new DefaultApplicationArguments());
+
+        verify(verifiedIdService).retrieveAccessToken(tenant);
+        assertThat(connections.get()).isEqualTo(3);
+        verify(callbackService, times(5)).process(any());
+        ArgumentCaptor<String> state = ArgumentCaptor.forClass(String.class);
+        verify(sessionService).create(state.capture(), eq(TenantService.DEFAULT_TENANT), eq("warmup"));
+        assertThat(state.getValue()).startsWith("warmup-");
+        verify(sessionService).remove(state.getValue());
+        assertThat(meterRegistry.find("startup.warmup").timers())
+                .extracting(timer -> timer.getId().getTag("step"))
+                .containsExactlyInAnyOrder("tenants", "token", "connections", "serialization", "callbacks", "status");
+    }
+
+    @Test
+    void failedStepDoesNotStopTheOthers() throws Exception {
+        when(tenantService.acquire("contoso")).thenThrow(new UnknownTenantException("Unknown tenant contoso"));
+
+        warmupService(properties(true, true)).run(new DefaultApplicationArguments());
+
+        verify(verifiedIdService, never()).retrieveAccessToken(any());
+        verify(callbackService, times(5)).process(any());
+        verify(sessionService).remove(anyString());
+        assertThat(meterRegistry.get("startup.warmup").tag("step", "serialization").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenStepIsSkippedWhenDisabled() throws Exception {
+        warmupService(properties(true, false)).run(new DefaultApplicationArguments());
+
+        verifyNoInteractions(verifiedIdService);
+        assertThat(meterRegistry.find("startup.warmup").tag("step", "token").timer()).isNull();
+    }
+
+    @Test
+    void disabledWarmupDoesNothing() {
+        warmupService(properties(false, true)).run(new DefaultApplicationArguments());
+
+        verifyNoInteractions(tenantService, verifiedIdService, sessionService, callbackService);
+        assertThat(meterRegistry.find("startup.warmup").timers()).isEmpty();
+    }
+
+    private WarmupService warmupService(WarmupProperties warmupProperties) {
+        // Without a local server port the status step has nothing to call
+        return new WarmupService(new SerializationService(new ObjectMapper()), tenantService, verifiedIdService,
+                sessionService, callbackService, warmupProperties, meterRegistry, new MockEnvironment());
+    }
+
+    private static WarmupProperties properties(boolean enabled, boolean token) {
+        WarmupProperties warmupProperties = new WarmupProperties();
+        ReflectionTestUtils.setField(warmupProperties, "enabled", enabled);
+        ReflectionTestUtils.setField(warmupProperties, "tenants", new String[]{"contoso"});
+        ReflectionTestUtils.setField(warmupProperties, "token", token);
+        ReflectionTestUtils.setField(warmupProperties, "connections", 3);
+        ReflectionTestUtils.setField(warmupProperties, "iterations", 5);
+        ReflectionTestUtils.setField(warmupProperties, "statusRequests", 2);
+        ReflectionTestUtils.setField(warmupProperties, "timeoutMs", 5000L);
+        return warmupProperties;
+    }
+}
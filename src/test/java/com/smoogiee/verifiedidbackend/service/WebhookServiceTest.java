@@ -0,0 +1,183 @@
+package com.smoogiee.verifiedidbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smoogiee.verifiedidbackend.config.WebhookProperties;
+import com.smoogiee.verifiedidbackend.model.webhook.WebhookEvent;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of webhook batching, delivery retries and dead-lettering
+ */
+class WebhookServiceTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> deliveries = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    // Responses to the first requests; every later request is accepted
+    private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private WebhookService webhookService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/hook", exchange -> {
+            int request = requests.getAndIncrement();
+            int status = request < statuses.size() ? statuses.get(request) : 204;
+            if (status < 300) {
+                deliveries.add(objectMapper.readTree(exchange.getRequestBody()));
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (webhookService != null) {
+            webhookService.stop();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void publishedEventsAreDeliveredAsJsonBatches() throws Exception {
+        webhookService = start(5);
+
+        webhookService.publish(event("s1", "presentation_verified"));
+        webhookService.publish(event("s2", "request_retrieved"));
+        webhookService.publish(event("s3", "issuance_successful"));
+        webhookService.stop();
+
+        assertThat(deliveries).allSatisfy(batch -> assertThat(batch.isArray()).isTrue());
+        assertThat(deliveries.stream().flatMap(batch -> batch.findValuesAsText("id").stream()))
+                .containsExactly("s1", "s3");
+        assertThat(deliveries.get(0).get(0).get("requestStatus").asText()).isEqualTo("presentation_verified");
+        assertThat(deadLetterFile()).doesNotExist();
+    }
+
+    @Test
+    void failedDeliveryIsRetriedWithBackoff() throws Exception {
+        statuses.addAll(List.of(503, 500));
+        webhookService = start(5);
+
+        webhookService.publish(event("s1", "presentation_verified"));
+        await(() -> deliveries.size() == 1);
+
+        assertThat(requests.get()).isEqualTo(3);
+        assertThat(deliveries.get(0).findValuesAsText("id")).containsExactly("s1");
+        assertThat(deadLetterFile()).doesNotExist();
+    }
+
+    @Test
+    void batchIsDeadLetteredOnceItsAttemptsAreSpent() throws Exception {
+        statuses.addAll(List.of(500, 500, 500));
+        webhookService = start(2);
+
+        webhookService.publish(event("s1", "presentation_verified"));
+        await(() -> deadLetters().size() == 1);
+
+        assertThat(requests.get()).isEqualTo(2);
+        String[] line = deadLetters().get(0).split("\t", 2);
+        assertThat(line[0]).isEqualTo(url());
+        assertThat(objectMapper.readTree(line[1]).get("id").asText()).isEqualTo("s1");
+    }
+
+    @Test
+    void nothingIsPublishedWithoutSubscribers() {
+        WebhookProperties webhookProperties = properties(5);
+        ReflectionTestUtils.setField(webhookProperties, "subscribers", new String[0]);
+        webhookService = new WebhookService(new SerializationService(objectMapper), webhookProperties);
+        webhookService.start();
+
+        assertThat(webhookService.publishes("presentation_verified")).isFalse();
+    }
+
+    @Test
+    void rejectsFewerThanOneAttempt() {
+        WebhookService service = new WebhookService(new SerializationService(objectMapper), properties(0));
+
+        assertThatThrownBy(service::start)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("entra.webhooks.max_attempts");
+    }
+
+    private WebhookService start(int maxAttempts) {
+        WebhookService service = new WebhookService(new SerializationService(objectMapper), properties(maxAttempts));
+        service.start();
+        return service;
+    }
+
+    private WebhookProperties properties(int maxAttempts) {
+        WebhookProperties webhookProperties = new WebhookProperties();
+        ReflectionTestUtils.setField(webhookProperties, "subscribers", new String[]{url()});
+        ReflectionTestUtils.setField(webhookProperties, "events",
+                new String[]{"presentation_verified", "issuance_successful"});
+        ReflectionTestUtils.setField(webhookProperties, "queueCapacity", 16);
+        ReflectionTestUtils.setField(webhookProperties, "subscriberBacklog", 16);
+        ReflectionTestUtils.setField(webhookProperties, "batchSize", 8);
+        ReflectionTestUtils.setField(webhookProperties, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(webhookProperties, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(webhookProperties, "initialBackoffMs", 10L);
+        ReflectionTestUtils.setField(webhookProperties, "deadLetterFile", deadLetterFile().toString());
+        ReflectionTestUtils.setField(webhookProperties, "shutdownTimeoutMs", 5000L);
+        return webhookProperties;
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+    }
+
+    private Path deadLetterFile() {
+        return directory.resolve("webhook-dead-letter.jsonl");
+    }
+
+    private List<String> deadLetters() {
+        try {
+            return Files.exists(deadLetterFile()) ? Files.readAllLines(deadLetterFile()) : List.of();
+        } catch (IOException ex) {
+            return List.of();
+        }
+    }
+
+    private static WebhookEvent event(String id, String requestStatus) {
+        WebhookEvent event = new WebhookEvent();
+        event.setId(id);
+        event.setTenant("contoso");
+        event.setRequestType("presentation");
+        event.setRequestStatus(requestStatus);
+        event.setTimestamp(1);
+        return event;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,115 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of the audit log file format and its reader
+ */
+class AuditLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsAreReadBackInOrder() throws IOException {
+        Path file = write("audit-0000000000000001.log", "{\"id\":\"1\"}", "{\"id\":\"2\"}", "");
+
+        List<String> records = new ArrayList<>();
+        long read = AuditLog.read(file, (payload, length) -> records.add(new String(payload, 0, length, StandardCharsets.UTF_8)));
+
+        assertThat(read).isEqualTo(3);
+        assertThat(records).containsExactly("{\"id\":\"1\"}", "{\"id\":\"2\"}", "");
+    }
+
+    @Test
+    void recordsLargerThanTheReadBufferAreReadWhole() throws IOException {
+        String large = "x".repeat(10_000);
+        Path file = write("audit-0000000000000001.log", "small", large);
+
+        List<String> records = new ArrayList<>();
+        AuditLog.read(file, (payload, length) -> records.add(new String(payload, 0, length, StandardCharsets.UTF_8)));
+
+        assertThat(records).containsExactly("small", large);
+    }
+
+    @Test
+    void recordIsTwelveBytesLongerThanItsPayload() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AuditLog.writeHeader(out);
+        assertThat(out.size()).isEqualTo(8);
+
+        AuditLog.writeRecord(out, "abcd".getBytes(StandardCharsets.UTF_8));
+
+        // [length:int][payload][crc32:int]
+        assertThat(out.size()).isEqualTo(8 + 4 + 4 + 4);
+        assertThat(Arrays.copyOfRange(out.toByteArray(), 8, 12)).containsExactly(0, 0, 0, 4);
+    }
+
+    @Test
+    void readingStopsAtATornTail() throws IOException {
+        Path file = write("audit-0000000000000001.log", "first", "second", "third");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        List<String> records = new ArrayList<>();
+        assertThatThrownBy(() -> AuditLog.read(file, (payload, length) -> records.add(new String(payload, 0, length, StandardCharsets.UTF_8))))
+                .isInstanceOfSatisfying(AuditLog.TornRecordException.class, ex -> assertThat(ex.getRecords()).isEqualTo(2));
+        assertThat(records).containsExactly("first", "second");
+    }
+
+    @Test
+    void readingStopsAtACorruptRecord() throws IOException {
+        Path file = write("audit-0000000000000001.log", "first", "second");
+        byte[] bytes = Files.readAllBytes(file);
+        // The first payload byte, just after the header and the length
+        bytes[12] ^= 1;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> AuditLog.read(file, (payload, length) -> { }))
+                .isInstanceOfSatisfying(AuditLog.TornRecordException.class, ex -> assertThat(ex.getRecords()).isZero())
+                .hasMessageContaining("offset 8");
+    }
+
+    @Test
+    void rejectsFilesWithoutTheHeader() throws IOException {
+        Path file = directory.resolve("audit-0000000000000001.log");
+        Files.writeString(file, "{\"id\":\"1\"}\n");
+
+        assertThatThrownBy(() -> AuditLog.read(file, (payload, length) -> { }))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("not an audit log file");
+    }
+
+    @Test
+    void filesAreListedInTheOrderTheyWereWritten() throws IOException {
+        Path second = write("audit-0000000000000002.log", "b");
+        Path first = write("audit-0000000000000001.log", "a");
+        Files.writeString(directory.resolve("notes.txt"), "not audit");
+        Files.writeString(directory.resolve("audit-0000000000000003.tmp"), "not audit");
+
+        assertThat(AuditLog.files(directory)).containsExactly(first, second);
+    }
+
+    private Path write(String name, String... payloads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AuditLog.writeHeader(out);
+        for (String payload : payloads) {
+            AuditLog.writeRecord(out, payload.getBytes(StandardCharsets.UTF_8));
+        }
+        Path file = directory.resolve(name);
+        Files.write(file, out.toByteArray());
+        return file;
+    }
+}
@@ -0,0 +1,127 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the expiring fingerprint set: generation rotation, table growth and probing, and concurrent adds.
+ * Rotation is driven by a manual clock
+ */
+class ExpiringFingerprintSetTest {
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(60);
+    private static final int GENERATIONS = 4;
+    private static final long GENERATION = WINDOW / GENERATIONS;
+
+    private final AtomicLong now = new AtomicLong();
+    private final ExpiringFingerprintSet set = new ExpiringFingerprintSet(WINDOW, GENERATIONS, now::get);
+
+    @Test
+    void addsEachFingerprintOnce() {
+        assertThat(set.contains(42)).isFalse();
+        assertThat(set.add(42)).isTrue();
+        assertThat(set.add(42)).isFalse();
+        assertThat(set.contains(42)).isTrue();
+
+        // Zero marks an empty slot internally, yet is a valid fingerprint
+        assertThat(set.add(0)).isTrue();
+        assertThat(set.contains(0)).isTrue();
+    }
+
+    @Test
+    void remembersFingerprintsForAllButOneGenerationOfTheWindow() {
+        set.add(42);
+        now.addAndGet(GENERATION * (GENERATIONS - 1));
+        assertThat(set.contains(42)).isTrue();
+
+        now.addAndGet(GENERATION);
+        assertThat(set.contains(42)).isFalse();
+        assertThat(set.add(42)).isTrue();
+    }
+
+    @Test
+    void idlePeriodExpiresEveryGeneration() {
+        for (int i = 0; i < GENERATIONS; i++) {
+            set.add(i);
+            now.addAndGet(GENERATION / 2);
+        }
+        now.addAndGet(WINDOW * 10);
+        for (int i = 0; i < GENERATIONS; i++) {
+            assertThat(set.contains(i)).isFalse();
+        }
+    }
+
+    @Test
+    void probesWrapAroundTheTableAndSurviveGrowth() {
+        // Same stripe and the same last slot of the initial table, so every insert probes past the end
+        long stripe = 0x2aL << 58;
+        List<Long> colliding = new ArrayList<>();
+        for (long i = 0; i < 40; i++) {
+            colliding.add(stripe | (i << 8) | 0x0f);
+        }
+        for (long fingerprint : colliding) {
+            assertThat(set.add(fingerprint)).isTrue();
+        }
+        for (long fingerprint : colliding) {
+            assertThat(set.contains(fingerprint)).isTrue();
+        }
+        assertThat(set.contains(stripe | (41L << 8) | 0x0f)).isFalse();
+    }
+
+    @Test
+    void holdsManyFingerprintsAcrossRotations() {
+        SplittableRandom random = new SplittableRandom(1);
+        long[] fingerprints = random.longs(20_000).toArray();
+        for (int i = 0; i < fingerprints.length; i++) {
+            set.add(fingerprints[i]);
+            if (i == fingerprints.length / 2) {
+                // Rotating reuses the oldest, empty generation and keeps the one just filled
+                now.addAndGet(GENERATION);
+            }
+        }
+        for (long fingerprint : fingerprints) {
+            assertThat(set.contains(fingerprint)).isTrue();
+        }
+    }
+
+    @Test
+    void concurrentAddsAcceptEachFingerprintOnce() throws Exception {
+        int threads = 4;
+        long[] fingerprints = new SplittableRandom(2).longs(5_000).toArray();
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    for (long fingerprint : fingerprints) {
+                        if (set.add(fingerprint)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(accepted).hasValue(fingerprints.length);
+    }
+}
@@ -0,0 +1,112 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.smoogiee.verifiedidbackend.model.jwt.JwsHeader;
+import com.smoogiee.verifiedidbackend.model.jwt.JwtClaims;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of JWT segment location and Base64url decoding
+ */
+class JwtUtilsTest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    void locatesSegments() {
+        String token = "aaa.bbbb.cc";
+        assertThat(JwtUtils.segmentStart(token, 0)).isZero();
+        assertThat(JwtUtils.segmentEnd(token, 0)).isEqualTo(3);
+        assertThat(JwtUtils.segmentStart(token, 1)).isEqualTo(4);
+        assertThat(JwtUtils.segmentEnd(token, 4)).isEqualTo(8);
+        assertThat(JwtUtils.segmentStart(token, 2)).isEqualTo(9);
+        assertThat(JwtUtils.segmentEnd(token, 9)).isEqualTo(token.length());
+        assertThat(JwtUtils.segmentStart(token, 3)).isEqualTo(-1);
+    }
+
+    @Test
+    void locatesEmptySegments() {
+        // An unsecured JWS has an empty signature, a detached payload JWS an empty payload
+        assertThat(JwtUtils.segmentStart("aaa.bbb.", 2)).isEqualTo(8);
+        assertThat(JwtUtils.segmentEnd("aaa.bbb.", 8)).isEqualTo(8);
+        assertThat(JwtUtils.segmentStart("aaa..ccc", 1)).isEqualTo(4);
+        assertThat(JwtUtils.segmentEnd("aaa..ccc", 4)).isEqualTo(4);
+        assertThat(JwtUtils.segmentStart("aaa", 1)).isEqualTo(-1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 4, 5, 6, 31, 32, 33})
+    void decodesEveryPaddingLength(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 37 + 11);
+        }
+        String unpadded = Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+        String padded = Base64.getUrlEncoder().encodeToString(data);
+
+        for (String encoded : new String[]{unpadded, padded}) {
+            byte[] target = new byte[JwtUtils.decodedLength(0, encoded.length())];
+            int length = JwtUtils.decode(encoded, 0, encoded.length(), target);
+            assertThat(length).isEqualTo(size);
+            assertThat(Arrays.copyOf(target, length)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void decodesARangeOfALongerString() {
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString("hello".getBytes(StandardCharsets.UTF_8));
+        String source = "xx." + encoded + ".yy";
+        byte[] target = new byte[JwtUtils.decodedLength(3, 3 + encoded.length())];
+        int length = JwtUtils.decode(source, 3, 3 + encoded.length(), target);
+        assertThat(new String(target, 0, length, StandardCharsets.UTF_8)).isEqualTo("hello");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ab+c", "ab/c", "ab=c", "ab c", "abé"})
+    void rejectsCharactersOutsideTheUrlAlphabet(String encoded) {
+        byte[] target = new byte[16];
+        assertThatThrownBy(() -> JwtUtils.decode(encoded, 0, encoded.length(), target))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void readsClaimsAndHeader() throws IOException {
+        String vc = token("{\"alg\":\"ES256\"}", "{\"jti\":\"urn:vc\",\"vc\":{\"type\":[\"VerifiableCredential\",\"Employee\"]}}");
+        String vp = token("{\"alg\":\"ES256\",\"kid\":\"did:web:holder#key-1\",\"x\":{\"y\":[1]}}",
+                "{\"iss\":\"did:web:holder\",\"nested\":{\"jti\":\"ignored\"},\"vp\":{\"verifiableCredential\":[\"" + vc + "\"]},\"jti\":\"urn:vp\"}");
+
+        JwsHeader header = JwtUtils.readHeader(JSON_FACTORY, vp);
+        assertThat(header.getAlg()).isEqualTo("ES256");
+        assertThat(header.getKid()).isEqualTo("did:web:holder#key-1");
+
+        JwtClaims claims = JwtUtils.readClaims(JSON_FACTORY, vp);
+        assertThat(claims.getIss()).isEqualTo("did:web:holder");
+        assertThat(claims.getJti()).isEqualTo("urn:vp");
+        assertThat(claims.getVerifiableCredentials()).containsExactly(vc);
+        assertThat(JwtUtils.readClaims(JSON_FACTORY, vc).getVcType()).containsExactly("VerifiableCredential", "Employee");
+    }
+
+    @Test
+    void rejectsTokensWithoutAJsonPayload() {
+        assertThatThrownBy(() -> JwtUtils.readClaims(JSON_FACTORY, "onlyoneSegment"))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> JwtUtils.readClaims(JSON_FACTORY, token("{}", "[1,2]")))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static String token(String header, String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + ".c2ln";
+    }
+}
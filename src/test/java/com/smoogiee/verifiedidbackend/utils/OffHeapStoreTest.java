@@ -0,0 +1,182 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the off-heap store index, segment ring, expiry and backing file handling
+ */
+class OffHeapStoreTest {
+    private static final long LATER = Long.MAX_VALUE;
+
+    @Test
+    void indexGrowsAndReplacesRecords() throws Exception {
+        try (OffHeapStore store = new OffHeapStore(1, 4, 1024 * 1024, null)) {
+            for (int i = 0; i < 5000; i++) {
+                assertThat(store.put("key-" + i, "value-" + i, LATER)).isTrue();
+            }
+            assertThat(store.size()).isEqualTo(5000);
+            for (int i = 0; i < 5000; i++) {
+                assertThat(store.get("key-" + i)).isEqualTo("value-" + i);
+            }
+
+            // Overwriting a key repoints its index slot instead of adding one
+            store.put("key-42", "updated", LATER);
+            assertThat(store.get("key-42")).isEqualTo("updated");
+            assertThat(store.size()).isEqualTo(5000);
+
+            store.remove("key-42");
+            assertThat(store.get("key-42")).isNull();
+            assertThat(store.size()).isEqualTo(4999);
+            assertThat(store.get("absent")).isNull();
+        }
+    }
+
+    @Test
+    void lookupsProbePastTombstones() throws Exception {
+        try (OffHeapStore store = new OffHeapStore(1, 4, 1024 * 1024, null)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 600; i++) {
+                    store.put("key-" + round + "-" + i, "value-" + i, LATER);
+                }
+                // Removing every other key leaves tombstones inside the probe sequences of the others
+                for (int i = 0; i < 600; i += 2) {
+                    store.remove("key-" + round + "-" + i);
+                }
+            }
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 600; i++) {
+                    assertThat(store.get("key-" + round + "-" + i)).isEqualTo(i % 2 == 0 ? null : "value-" + i);
+                }
+            }
+            assertThat(store.size()).isEqualTo(5 * 300);
+        }
+    }
+
+    @Test
+    void wrappingTheRingKeepsLiveEntries() throws Exception {
+        String value = "x".repeat(100);
+        try (OffHeapStore store = new OffHeapStore(1, 2, 1024, null)) {
+            // A pending entry is written once while other entries are updated until the ring has wrapped many times
+            assertThat(store.put("pending", "state", LATER)).isTrue();
+            for (int i = 0; i < 100; i++) {
+                for (String key : new String[]{"key-a", "key-b", "key-c"}) {
+                    assertThat(store.put(key, value + i, LATER)).isTrue();
+                }
+            }
+            assertThat(store.get("pending")).isEqualTo("state");
+            assertThat(store.get("key-a")).isEqualTo(value + 99);
+            assertThat(store.get("key-c")).isEqualTo(value + 99);
+            assertThat(store.size()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void fullRingRefusesWrites() throws Exception {
+        String value = "x".repeat(100);
+        try (OffHeapStore store = new OffHeapStore(1, 2, 1024, null)) {
+            // Each record takes 16 + 6 + 100 bytes, so eight fit in a segment and sixteen fill the ring
+            for (int i = 0; i < 16; i++) {
+                assertThat(store.put("key-" + String.format("%02d", i), value, LATER)).isTrue();
+            }
+            assertThat(store.put("key-16", value, LATER)).isFalse();
+            for (int i = 0; i < 16; i++) {
+                assertThat(store.get("key-" + String.format("%02d", i))).isEqualTo(value);
+            }
+
+            // Removing an entry frees its space at the next compaction
+            store.remove("key-00");
+            assertThat(store.put("key-16", value, LATER)).isTrue();
+            assertThat(store.get("key-16")).isEqualTo(value);
+            assertThat(store.get("key-01")).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void expiredRecordsAreHiddenAndSwept() throws Exception {
+        try (OffHeapStore store = new OffHeapStore(2, 2, 64 * 1024, null)) {
+            long now = System.currentTimeMillis();
+            store.put("expired", "value", now - 1);
+            assertThat(store.get("expired")).isNull();
+
+            for (int i = 0; i < 10; i++) {
+                store.put("short-" + i, "value", now + 50);
+            }
+            store.put("long", "value", now + 60_000);
+            assertThat(store.get("short-0")).isEqualTo("value");
+
+            Thread.sleep(100);
+            assertThat(store.sweep()).isEqualTo(10);
+            assertThat(store.size()).isEqualTo(1);
+            assertThat(store.get("long")).isEqualTo("value");
+        }
+    }
+
+    @Test
+    void reportsExpiredEntries() throws Exception {
+        Map<String, String> evicted = new HashMap<>();
+        OffHeapStore.EvictionListener listener = new OffHeapStore.EvictionListener() {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public void evicted(String key, String cause) {
+                evicted.put(key, cause);
+            }
+        };
+        String value = "x".repeat(100);
+        try (OffHeapStore store = new OffHeapStore(1, 2, 1024, null, listener)) {
+            long now = System.currentTimeMillis();
+            store.put("expired", "value", now - 1);
+            assertThat(store.get("expired")).isNull();
+            assertThat(evicted).containsEntry("expired", "EXPIRED");
+
+            // Short-lived entries fill the first segment; reusing it drops them as expired and keeps the live ones
+            for (int i = 0; i < 8; i++) {
+                store.put("short-" + i, value, now + 50);
+            }
+            Thread.sleep(100);
+            for (int i = 0; i < 9; i++) {
+                assertThat(store.put("long-" + i, value, LATER)).isTrue();
+            }
+            assertThat(evicted).containsEntry("short-0", "EXPIRED").containsEntry("short-7", "EXPIRED");
+            assertThat(evicted).hasSize(9);
+            for (int i = 0; i < 9; i++) {
+                assertThat(store.get("long-" + i)).isEqualTo(value);
+            }
+        }
+    }
+
+    @Test
+    void rejectsRecordsLargerThanASegment() throws Exception {
+        try (OffHeapStore store = new OffHeapStore(1, 2, 1024, null)) {
+            assertThat(store.put("key", "x".repeat(2048), LATER)).isFalse();
+            assertThat(store.get("key")).isNull();
+        }
+    }
+
+    @Test
+    void backingFileIsReplacedAndDeleted(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("off-heap.bin");
+        Files.writeString(file, "stale-secret");
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        try (OffHeapStore store = new OffHeapStore(1, 2, 4096, file)) {
+            store.put("key", "value", LATER);
+            assertThat(store.get("key")).isEqualTo("value");
+
+            // The mapping outlives the path, which is unlinked as soon as the file is opened
+            assertThat(file).doesNotExist();
+        }
+        assertThat(file).doesNotExist();
+    }
+}
@@ -0,0 +1,123 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of ring buffer sizing, ordering and concurrent hand-off
+ */
+class RingBufferTest {
+    private static final int PRODUCERS = 3;
+    private static final int CONSUMERS = 3;
+    private static final int PER_PRODUCER = 20_000;
+
+    @Test
+    void capacityRoundsUpToPowerOfTwo() {
+        assertThat(new RingBuffer<>(1).capacity()).isEqualTo(2);
+        assertThat(new RingBuffer<>(2).capacity()).isEqualTo(2);
+        assertThat(new RingBuffer<>(3).capacity()).isEqualTo(4);
+        assertThat(new RingBuffer<>(4).capacity()).isEqualTo(4);
+        assertThat(new RingBuffer<>(5).capacity()).isEqualTo(8);
+        assertThat(new RingBuffer<>(4096).capacity()).isEqualTo(4096);
+        assertThat(new RingBuffer<>(4097).capacity()).isEqualTo(8192);
+    }
+
+    @Test
+    void rejectsCapacityBeyondLargestPowerOfTwo() {
+        assertThatThrownBy(() -> new RingBuffer<>((1 << 30) + 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void holdsCapacityElementsInOrderAcrossLaps() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(ring.offer(lap * 4 + i)).isTrue();
+            }
+            assertThat(ring.offer(-1)).isFalse();
+            assertThat(ring.size()).isEqualTo(4);
+            for (int i = 0; i < 4; i++) {
+                assertThat(ring.poll()).isEqualTo(lap * 4 + i);
+            }
+            assertThat(ring.poll()).isNull();
+        }
+    }
+
+    @Test
+    void drainToStopsAtMaxElements() {
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i);
+        }
+        List<Integer> batch = new ArrayList<>();
+
+        assertThat(ring.drainTo(batch, 4)).isEqualTo(4);
+        assertThat(batch).containsExactly(0, 1, 2, 3);
+        assertThat(ring.drainTo(batch, 4)).isEqualTo(2);
+        assertThat(ring.size()).isZero();
+    }
+
+    @Test
+    void concurrentProducersAndConsumersHandOffEveryElementOnce() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(16);
+        AtomicIntegerArray received = new AtomicIntegerArray(PRODUCERS * PER_PRODUCER);
+        AtomicIntegerArray outOfOrder = new AtomicIntegerArray(CONSUMERS);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < PER_PRODUCER; i++) {
+                    while (!ring.offer(producer * PER_PRODUCER + i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        int total = PRODUCERS * PER_PRODUCER;
+        AtomicInteger consumed = new AtomicInteger();
+        for (int c = 0; c < CONSUMERS; c++) {
+            int consumer = c;
+            threads.add(new Thread(() -> {
+                // Each consumer sees any one producer's elements in the order they were offered
+                int[] last = new int[PRODUCERS];
+                Arrays.fill(last, -1);
+                while (consumed.get() < total) {
+                    Integer element = ring.poll();
+                    if (element == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    received.incrementAndGet(element);
+                    int producer = element / PER_PRODUCER;
+                    if (element % PER_PRODUCER <= last[producer]) {
+                        outOfOrder.incrementAndGet(consumer);
+                    }
+                    last[producer] = element % PER_PRODUCER;
+                    consumed.incrementAndGet();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(60_000);
+            assertThat(thread.isAlive()).isFalse();
+        }
+
+        assertThat(consumed.get()).isEqualTo(total);
+        for (int i = 0; i < total; i++) {
+            assertThat(received.get(i)).as("element %d", i).isEqualTo(1);
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            assertThat(outOfOrder.get(c)).isZero();
+        }
+        assertThat(ring.poll()).isNull();
+    }
+}
@@ -0,0 +1,41 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of If-None-Match evaluation
+ */
+class ServerUtilsTest {
+    @Test
+    void matchesAnyTagOfTheList() {
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("\"a\", W/\"4\", \"b\""), "W/\"4\"")).isTrue();
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("\"a\", \"b\""), "W/\"4\"")).isFalse();
+    }
+
+    @Test
+    void comparesWeakly() {
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("\"4\""), "W/\"4\"")).isTrue();
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("W/\"abc\""), "\"abc\"")).isTrue();
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("W/\"40\""), "W/\"4\"")).isFalse();
+    }
+
+    @Test
+    void matchesWildcard() {
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("*"), "\"abc\"")).isTrue();
+    }
+
+    @Test
+    void ignoresMissingOrMalformedHeader() {
+        assertThat(ServerUtils.ifNoneMatch(new HttpHeaders(), "\"abc\"")).isFalse();
+        assertThat(ServerUtils.ifNoneMatch(ifNoneMatch("\"abc"), "\"abc\"")).isFalse();
+    }
+
+    private static HttpHeaders ifNoneMatch(String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.IF_NONE_MATCH, value);
+        return headers;
+    }
+}
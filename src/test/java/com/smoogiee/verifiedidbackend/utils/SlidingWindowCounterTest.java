@@ -0,0 +1,56 @@
+package com.smoogiee.verifiedidbackend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of sliding window counting, bucket expiry and bucket reuse
+ */
+class SlidingWindowCounterTest {
+    // A multiple of the bucket length, so bucket boundaries fall on round offsets
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void countsEventsInTheWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+        counter.increment(START);
+        counter.increment(START + 50);
+        counter.increment(START + 450);
+
+        assertThat(counter.sum(START + 500)).isEqualTo(3);
+    }
+
+    @Test
+    void eventsAgeOutABucketAtATime() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+        counter.increment(START + 50);
+        counter.increment(START + 150);
+
+        assertThat(counter.sum(START + 999)).isEqualTo(2);
+        assertThat(counter.sum(START + 1000)).isEqualTo(1);
+        assertThat(counter.sum(START + 1100)).isZero();
+    }
+
+    @Test
+    void reusedBucketStartsFromZero() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1000, 10);
+        counter.increment(START + 50);
+        counter.increment(START + 60);
+
+        // Same bucket one lap later
+        counter.increment(START + 1050);
+
+        assertThat(counter.sum(START + 1050)).isEqualTo(1);
+    }
+
+    @Test
+    void windowShorterThanItsBucketsUsesMillisecondBuckets() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(5, 10);
+        counter.increment(START);
+        counter.increment(START + 9);
+
+        assertThat(counter.sum(START + 9)).isEqualTo(2);
+        assertThat(counter.sum(START + 10)).isEqualTo(1);
+    }
+}